@@ -0,0 +1,79 @@
+package com.oguzcam.searchanagram.benchmark;
+
+import com.oguzcam.searchanagram.algorithm.AnagramConquerer;
+import com.oguzcam.searchanagram.algorithm.AnagramDivider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.N_THREADS;
+
+/**
+ * Grouping the divided chunks of every bucket on one thread, writing the runs included.
+ * The dataset is divided again before every invocation since conquering removes the chunks
+ *
+ * @author Oguz Cam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConquererBenchmark {
+    private ExecutorService executorService;
+    private DatasetState data;
+    private Path runDirectory;
+    private int bucketCount;
+    private int rangeCount;
+
+    @Setup
+    public void startExecutor(DatasetState data) {
+        this.data = data;
+        executorService = Executors.newFixedThreadPool(N_THREADS);
+    }
+
+    @Setup(Level.Invocation)
+    public void divide() throws Exception {
+        runDirectory = data.createRunDirectory();
+        AnagramDivider divider = new AnagramDivider(runDirectory, data.getInputFile().toString(), executorService);
+        bucketCount = divider.divide() - 1;
+        rangeCount = divider.getRangeCount();
+    }
+
+    @Benchmark
+    public int conquer() throws Exception {
+        int groups = 0;
+        for (int i = 1; i <= bucketCount; i++) {
+            AnagramConquerer conquerer = new AnagramConquerer(runDirectory, i, rangeCount);
+            conquerer.call();
+            groups += conquerer.getGroups().size();
+        }
+        return groups;
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteRunDirectory() throws IOException {
+        DatasetState.delete(runDirectory);
+    }
+
+    @TearDown
+    public void stopExecutor() {
+        executorService.shutdown();
+    }
+}
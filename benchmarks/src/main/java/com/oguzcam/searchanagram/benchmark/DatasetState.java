@@ -0,0 +1,83 @@
+package com.oguzcam.searchanagram.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Generated input shared by the benchmarks, the states of the benchmarks get it in their setup.
+ * Override the parameters on the command line,
+ * e.g. "-p words=10000000 -p lengths=gaussian:8:3 -p anagramDensity=0.1"
+ *
+ * @author Oguz Cam
+ */
+@State(Scope.Benchmark)
+public class DatasetState {
+    @Param({"100000", "1000000"})
+    public int words;
+
+    @Param({"uniform:3-12"})
+    public String lengths;
+
+    @Param({"0.5"})
+    public double anagramDensity;
+
+    @Param({"ascii"})
+    public String alphabet;
+
+    @Param({"42"})
+    public long seed;
+
+    private WordDataset dataset;
+    private Path workDirectory;
+    private Path inputFile;
+
+    @Setup
+    public void generate() throws IOException {
+        dataset = WordDataset.generate(words, lengths, anagramDensity, alphabet, seed);
+        workDirectory = Files.createTempDirectory("anagram-benchmark");
+        inputFile = dataset.write(workDirectory.resolve("words.txt"));
+    }
+
+    @TearDown
+    public void deleteFiles() throws IOException {
+        delete(workDirectory);
+    }
+
+    public WordDataset getDataset() {
+        return dataset;
+    }
+
+    public Path getInputFile() {
+        return inputFile;
+    }
+
+    /**
+     * Creates an empty scratch directory inside the work directory
+     */
+    public Path createRunDirectory() throws IOException {
+        return Files.createTempDirectory(workDirectory, "run");
+    }
+
+    /**
+     * Deletes the directory with everything inside
+     */
+    public static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.oguzcam.searchanagram.benchmark;
+
+import com.oguzcam.searchanagram.algorithm.AnagramDivider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.N_THREADS;
+
+/**
+ * Dividing the dataset file into bucket chunks, line counting pass included
+ *
+ * @author Oguz Cam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DividerBenchmark {
+    private ExecutorService executorService;
+    private DatasetState data;
+    private Path runDirectory;
+
+    @Setup
+    public void startExecutor(DatasetState data) {
+        this.data = data;
+        executorService = Executors.newFixedThreadPool(N_THREADS);
+    }
+
+    @Setup(Level.Invocation)
+    public void createRunDirectory() throws IOException {
+        runDirectory = data.createRunDirectory();
+    }
+
+    @Benchmark
+    public int divide() throws Exception {
+        return new AnagramDivider(runDirectory, data.getInputFile().toString(), executorService).divide();
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteRunDirectory() throws IOException {
+        DatasetState.delete(runDirectory);
+    }
+
+    @TearDown
+    public void stopExecutor() {
+        executorService.shutdown();
+    }
+}
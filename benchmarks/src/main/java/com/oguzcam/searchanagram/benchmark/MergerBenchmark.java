@@ -0,0 +1,83 @@
+package com.oguzcam.searchanagram.benchmark;
+
+import com.oguzcam.searchanagram.algorithm.AnagramConquerer;
+import com.oguzcam.searchanagram.algorithm.AnagramDivider;
+import com.oguzcam.searchanagram.algorithm.AnagramMerger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.TEMP_FILE_EXTENSION;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.N_THREADS;
+
+/**
+ * Merging the conquered runs of all buckets in insertion order.
+ * The dataset is divided and conquered again before every invocation since merging removes the runs
+ *
+ * @author Oguz Cam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MergerBenchmark {
+    private ExecutorService executorService;
+    private DatasetState data;
+    private Path runDirectory;
+    private List<Path> runs;
+
+    @Setup
+    public void startExecutor(DatasetState data) {
+        this.data = data;
+        executorService = Executors.newFixedThreadPool(N_THREADS);
+    }
+
+    @Setup(Level.Invocation)
+    public void divideAndConquer() throws Exception {
+        runDirectory = data.createRunDirectory();
+        AnagramDivider divider = new AnagramDivider(runDirectory, data.getInputFile().toString(), executorService);
+        int bucketCount = divider.divide() - 1;
+
+        runs = new ArrayList<>(bucketCount);
+        for (int i = 1; i <= bucketCount; i++) {
+            new AnagramConquerer(runDirectory, i, divider.getRangeCount()).call();
+            runs.add(Paths.get(runDirectory.toString(), i + TEMP_FILE_EXTENSION));
+        }
+    }
+
+    @Benchmark
+    public void merge(Blackhole blackhole) throws Exception {
+        new AnagramMerger(runs, blackhole::consume).call();
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteRunDirectory() throws IOException {
+        DatasetState.delete(runDirectory);
+    }
+
+    @TearDown
+    public void stopExecutor() {
+        executorService.shutdown();
+    }
+}
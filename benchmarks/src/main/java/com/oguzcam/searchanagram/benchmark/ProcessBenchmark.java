@@ -0,0 +1,71 @@
+package com.oguzcam.searchanagram.benchmark;
+
+import com.oguzcam.searchanagram.algorithm.AnagramAlgorithm;
+import com.oguzcam.searchanagram.algorithm.AnagramStatistics;
+import com.oguzcam.searchanagram.algorithm.WordSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end processing of the dataset. Whether it is grouped in memory or on disk depends on the heap,
+ * run with a small -Xmx through "-jvmArgsAppend" to measure the disk path
+ *
+ * @author Oguz Cam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessBenchmark {
+    private DatasetState data;
+    private AnagramAlgorithm algorithm;
+
+    @Setup
+    public void createAlgorithm(DatasetState data) throws IOException {
+        this.data = data;
+        algorithm = new AnagramAlgorithm(data.createRunDirectory());
+    }
+
+    @Benchmark
+    public void processFile(Blackhole blackhole) throws Exception {
+        algorithm.process(data.getInputFile(), blackhole::consume);
+    }
+
+    @Benchmark
+    public long processFileStatistics() throws Exception {
+        AnagramStatistics statistics = new AnagramStatistics(10);
+        algorithm.process(data.getInputFile(), statistics);
+        return statistics.getGroupedWords();
+    }
+
+    @Benchmark
+    public void processStream(Blackhole blackhole) throws Exception {
+        try (InputStream input = Files.newInputStream(data.getInputFile());
+             WordSource source = WordSource.of(input)) {
+            algorithm.process(source, blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public void processIterator(Blackhole blackhole) throws Exception {
+        try (WordSource source = WordSource.of(data.getDataset().getWords().iterator())) {
+            algorithm.process(source, blackhole::consume);
+        }
+    }
+}
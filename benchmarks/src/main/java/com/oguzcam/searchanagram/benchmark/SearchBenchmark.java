@@ -0,0 +1,63 @@
+package com.oguzcam.searchanagram.benchmark;
+
+import com.oguzcam.searchanagram.algorithm.SignaturePolicy;
+import com.oguzcam.searchanagram.index.AnagramSearchEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sub-anagram and phrase searches over the dataset as a dictionary, the racks and phrases made of two of its words
+ *
+ * @author Oguz Cam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int QUERIES = 64;
+
+    private AnagramSearchEngine engine;
+    private String[] queries;
+    private int next;
+
+    @Setup
+    public void load(DatasetState data) throws IOException {
+        engine = AnagramSearchEngine.load(data.getInputFile(), SignaturePolicy.EXACT);
+        List<String> words = data.getDataset().getWords();
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = words.get(i * 2 % words.size()) + " " + words.get((i * 2 + 1) % words.size());
+        }
+    }
+
+    @Benchmark
+    public int findWords() {
+        return engine.findWords(nextQuery(), AnagramSearchEngine.MAX_RESULTS).size();
+    }
+
+    @Benchmark
+    public int findPhrases() {
+        return engine.findPhrases(nextQuery(), AnagramSearchEngine.DEFAULT_PHRASE_WORDS,
+                AnagramSearchEngine.MAX_RESULTS).size();
+    }
+
+    private String nextQuery() {
+        next = (next + 1) % queries.length;
+        return queries[next];
+    }
+}
@@ -0,0 +1,90 @@
+package com.oguzcam.searchanagram.benchmark;
+
+import com.oguzcam.searchanagram.algorithm.AnagramSignature;
+import com.oguzcam.searchanagram.algorithm.SignaturePolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+
+/**
+ * Signature computation of every word of the dataset, from decoded strings and from the raw bytes the divider sees,
+ * under every signature policy
+ *
+ * @author Oguz Cam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SignatureBenchmark {
+    @Param({"exact", "case-folded", "accent-insensitive", "letters-only"})
+    private String policy;
+
+    private AnagramSignature signature;
+    private List<String> words;
+    private ByteBuffer bytes;
+    private int[] offsets;
+
+    @Setup
+    public void encode(DatasetState data) {
+        signature = new AnagramSignature(SignaturePolicy.parse(policy));
+        words = data.getDataset().getWords();
+        byte[][] encoded = new byte[words.size()][];
+        int size = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = words.get(i).getBytes(CHARSET);
+            size += encoded[i].length;
+        }
+
+        bytes = ByteBuffer.allocate(size);
+        offsets = new int[encoded.length + 1];
+        for (int i = 0; i < encoded.length; i++) {
+            offsets[i] = bytes.position();
+            bytes.put(encoded[i]);
+        }
+        offsets[encoded.length] = bytes.position();
+    }
+
+    @Benchmark
+    public int computeFromString() {
+        int hash = 0;
+        for (String word : words) {
+            hash += signature.compute(word).hash();
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public int computeFromBytes() {
+        int hash = 0;
+        for (int i = 0; i < offsets.length - 1; i++) {
+            hash += signature.compute(bytes, offsets[i], offsets[i + 1] - offsets[i]).hash();
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public int toKey() {
+        int hash = 0;
+        for (String word : words) {
+            hash += signature.compute(word).toKey().hashCode();
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,124 @@
+package com.oguzcam.searchanagram.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+
+/**
+ * Generates reproducible word lists for the benchmarks, one word per line like the real inputs.
+ * The size, the distribution of word lengths and the share of words having an anagram are configurable
+ *
+ * @author Oguz Cam
+ */
+public class WordDataset {
+    private static final String ASCII_LETTERS = "abcdefghijklmnopqrstuvwxyz";
+    private static final String LATIN_LETTERS = ASCII_LETTERS + "çğıöşüéèàäßñ";
+    private static final int MAX_LENGTH = 64;
+
+    private final List<String> words;
+
+    private WordDataset(List<String> words) {
+        this.words = words;
+    }
+
+    /**
+     * @param size Count of the words
+     * @param lengths Distribution of word lengths, "uniform:min-max" or "gaussian:mean:deviation"
+     * @param anagramDensity Share of the words which are a permutation of a previous word, between 0 and 1
+     * @param alphabet "ascii" for lower case English letters, "latin" to mix in accented letters
+     * @param seed Seed of the generator, the same arguments always give the same words
+     * @return Generated dataset
+     */
+    public static WordDataset generate(int size, String lengths, double anagramDensity, String alphabet, long seed) {
+        Random random = new Random(seed);
+        LengthDistribution distribution = LengthDistribution.parse(lengths);
+        String letters = "latin".equals(alphabet) ? LATIN_LETTERS : ASCII_LETTERS;
+
+        List<String> words = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (!words.isEmpty() && random.nextDouble() < anagramDensity) {
+                words.add(shuffle(words.get(random.nextInt(words.size())), random));
+            } else {
+                char[] word = new char[distribution.next(random)];
+                for (int j = 0; j < word.length; j++) {
+                    word[j] = letters.charAt(random.nextInt(letters.length()));
+                }
+                words.add(new String(word));
+            }
+        }
+
+        return new WordDataset(words);
+    }
+
+    public List<String> getWords() {
+        return Collections.unmodifiableList(words);
+    }
+
+    /**
+     * Writes the words into the file, one word per line
+     *
+     * @param path File to write
+     * @return Given path
+     * @throws IOException May throw IOException while writing
+     */
+    public Path write(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, CHARSET)) {
+            for (String word : words) {
+                writer.write(word);
+                writer.newLine();
+            }
+        }
+        return path;
+    }
+
+    private static String shuffle(String word, Random random) {
+        char[] chars = word.toCharArray();
+        for (int i = chars.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Length of the generated words, clamped between 1 and {@link #MAX_LENGTH}
+     */
+    private static final class LengthDistribution {
+        private final boolean gaussian;
+        private final double first;
+        private final double second;
+
+        private LengthDistribution(boolean gaussian, double first, double second) {
+            this.gaussian = gaussian;
+            this.first = first;
+            this.second = second;
+        }
+
+        static LengthDistribution parse(String spec) {
+            String[] parts = spec.split("[:-]");
+            if (parts.length == 3 && "uniform".equals(parts[0])) {
+                return new LengthDistribution(false, Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+            } else if (parts.length == 3 && "gaussian".equals(parts[0])) {
+                return new LengthDistribution(true, Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+            }
+            throw new IllegalArgumentException("Unknown length distribution " + spec
+                    + ", use uniform:min-max or gaussian:mean:deviation");
+        }
+
+        int next(Random random) {
+            double length = gaussian
+                    ? first + random.nextGaussian() * second
+                    : first + random.nextInt((int) (second - first) + 1);
+            return (int) Math.max(1, Math.min(MAX_LENGTH, Math.round(length)));
+        }
+    }
+}
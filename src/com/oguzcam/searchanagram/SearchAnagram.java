@@ -1,16 +1,177 @@
 package com.oguzcam.searchanagram;
 
+import com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration;
+import com.oguzcam.searchanagram.algorithm.AnagramGroupSink;
+import com.oguzcam.searchanagram.algorithm.WordSource;
+import com.oguzcam.searchanagram.cluster.ShardWorker;
+import com.oguzcam.searchanagram.commandline.CommandLineRunner;
+import com.oguzcam.searchanagram.index.AnagramIndex;
+import com.oguzcam.searchanagram.index.AnagramQueryService;
+import com.oguzcam.searchanagram.index.AnagramSearchEngine;
 import com.oguzcam.searchanagram.userinterface.ReadFileUserInterface;
 
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.COMPRESS_PROPERTY;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.SIGNATURE_PROPERTY;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.TEMP_BUDGET_PROPERTY;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.THREADS_PROPERTY;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.THRESHOLD_PROPERTY;
+
 /**
- * Start point of the application, just triggers an event to show the UI
+ * Start point of the application, triggers an event to show the UI.
+ * "process [options] &lt;file or glob&gt;..." groups files without the UI, see {@link CommandLineRunner}.
+ * "query &lt;index directory or output file&gt; [port]" answers anagram lookups from stdin or a local socket instead.
+ * "search &lt;index directory or word file&gt;" finds the words of a rack and the phrases of a phrase from stdin.
+ * "index build &lt;word file&gt; &lt;index directory&gt;" builds an index of a word file for both,
+ * "index append &lt;word file&gt; &lt;index directory&gt;" appends the words of a file to it
+ * and writes the groups which have changed on the standard output.
+ * "worker [port] [bind address]" groups the shards of coordinators started with "process --workers=...".
+ * "--threshold=&lt;lines|auto&gt;", "--threads=&lt;count|auto&gt;", "--signature=&lt;policy&gt;",
+ * "--temp-budget=&lt;size&gt;" and "--compress" configure the algorithm for any mode
  *
  * @author Oguz Cam
  */
 public class SearchAnagram {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        args = applyOptions(args);
+        if (args.length >= 2 && "query".equals(args[0])) {
+            query(Paths.get(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : -1);
+            return;
+        } else if (args.length >= 2 && "search".equals(args[0])) {
+            search(Paths.get(args[1]));
+            return;
+        } else if (args.length >= 4 && "index".equals(args[0])
+                && ("build".equals(args[1]) || "append".equals(args[1]))) {
+            index("build".equals(args[1]), Paths.get(args[2]), Paths.get(args[3]));
+            return;
+        } else if (args.length >= 1 && "worker".equals(args[0])) {
+            work(args.length > 1 ? Integer.parseInt(args[1]) : 0, args.length > 2 ? args[2] : null);
+            return;
+        } else if (args.length >= 1 && "process".equals(args[0])) {
+            String[] processArgs = Arrays.copyOfRange(args, 1, args.length);
+            System.exit(new CommandLineRunner(System.out, System.err).run(processArgs));
+        } else if (GraphicsEnvironment.isHeadless()) {
+            System.err.println(CommandLineRunner.USAGE);
+            System.exit(2);
+        }
+
         // Show the UI
         new ReadFileUserInterface().buildUI();
     }
+
+    /**
+     * Sets the system properties of the configuration options, which the algorithm reads when created
+     *
+     * @param args Command line arguments
+     * @return Arguments which are not options
+     */
+    private static String[] applyOptions(String[] args) {
+        List<String> rest = new ArrayList<>(args.length);
+        for (String arg : args) {
+            if (arg.startsWith("--threshold=")) {
+                System.setProperty(THRESHOLD_PROPERTY, arg.substring("--threshold=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                System.setProperty(THREADS_PROPERTY, arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--signature=")) {
+                System.setProperty(SIGNATURE_PROPERTY, arg.substring("--signature=".length()));
+            } else if (arg.startsWith("--temp-budget=")) {
+                System.setProperty(TEMP_BUDGET_PROPERTY, arg.substring("--temp-budget=".length()));
+            } else if ("--compress".equals(arg)) {
+                System.setProperty(COMPRESS_PROPERTY, "true");
+            } else {
+                rest.add(arg);
+            }
+        }
+        return rest.toArray(new String[0]);
+    }
+
+    /**
+     * Loads the query service and serves lookups
+     *
+     * @param source Index directory or output file of grouped words, a file is read with the configured policy
+     * @param port Local port to listen on, negative to serve stdin
+     * @throws Exception May throw Exception while loading or serving
+     */
+    private static void query(Path source, int port) throws Exception {
+        AnagramQueryService service = Files.isDirectory(source)
+                ? AnagramQueryService.load(AnagramIndex.open(source))
+                : AnagramQueryService.load(source, AnagramAlgorithmConfiguration.fromSystemProperties()
+                .getSignaturePolicy());
+        if (port >= 0) {
+            service.serve(port);
+        } else {
+            Writer writer = new OutputStreamWriter(System.out, CHARSET);
+            service.serve(new BufferedReader(new InputStreamReader(System.in, CHARSET)), writer);
+        }
+    }
+
+    /**
+     * Builds an index of a word file, or appends the words of the file to an existing index
+     *
+     * @param build True to build a new index, replacing the one in the directory, false to append
+     * @param words Word file, one word per line
+     * @param directory Directory of the index
+     * @throws Exception May throw Exception while building or appending
+     */
+    private static void index(boolean build, Path words, Path directory) throws Exception {
+        if (build) {
+            AnagramIndex index = AnagramIndex.build(words, directory);
+            System.out.println("Indexed " + index.getNextOrdinal() + " lines of " + words + " into "
+                    + index.getBucketCount() + " buckets in " + directory);
+        } else {
+            try (WordSource source = WordSource.of(words);
+                 AnagramGroupSink changedGroups = AnagramGroupSink.of(Channels.newChannel(System.out))) {
+                AnagramIndex.open(directory).append(source, changedGroups);
+            }
+        }
+    }
+
+    /**
+     * Loads the search engine and answers the searches of stdin
+     *
+     * @param source Index directory or dictionary file, a file is read with the configured policy
+     * @throws Exception May throw Exception while loading or serving
+     */
+    private static void search(Path source) throws Exception {
+        AnagramSearchEngine engine = Files.isDirectory(source)
+                ? AnagramSearchEngine.load(AnagramIndex.open(source))
+                : AnagramSearchEngine.load(source, AnagramAlgorithmConfiguration.fromSystemProperties()
+                .getSignaturePolicy());
+        Writer writer = new OutputStreamWriter(System.out, CHARSET);
+        engine.serve(new BufferedReader(new InputStreamReader(System.in, CHARSET)), writer);
+    }
+
+    /**
+     * Serves shards until the JVM is stopped. The port is printed on the standard output once the worker listens
+     *
+     * @param port Port to listen on, 0 for a free one
+     * @param bindAddress Address to listen on, null for the loopback address
+     * @throws Exception May throw Exception while listening
+     */
+    private static void work(int port, String bindAddress) throws Exception {
+        InetAddress address = bindAddress != null
+                ? InetAddress.getByName(bindAddress)
+                : InetAddress.getLoopbackAddress();
+        try (ShardWorker worker = new ShardWorker(new InetSocketAddress(address, port), Paths.get("tempfiles"))) {
+            System.out.println(ShardWorker.READY_PREFIX + worker.getPort());
+            System.out.flush();
+            worker.serve();
+        }
+    }
 }
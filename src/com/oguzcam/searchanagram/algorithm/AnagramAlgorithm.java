@@ -1,183 +1,832 @@
 package com.oguzcam.searchanagram.algorithm;
 
-import java.io.*;
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+import com.oguzcam.searchanagram.metrics.AnagramMetricsListener;
+import com.oguzcam.searchanagram.metrics.Stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 
 import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.FILE_EXTENSION;
-import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.N_THREADS;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.IN_MEMORY_HEAP_DIVISOR;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.STREAM_SIZE_FACTOR;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.TEMP_FILE_EXTENSION;
 
 /**
  * Anagram divide-conquer algorithm
- * Create smaller files and conquer inside the files, then merges
+ * Groups the file in one pass if it fits the heap. Otherwise create smaller files partitioned by anagram signature
+ * and conquer inside the files while the next ones are divided, then merges them in one k-way pass
+ * to restore the insertion order.
+ * Besides files, any {@link WordSource} can be processed and the groups can be given to any {@link AnagramGroupSink}.
+ * Every disk based run gets its own {@link AnagramExecutor}, sized by the {@link AnagramAlgorithmConfiguration},
+ * which is shut down when the run ends. Running disk based runs can be cancelled with {@link #cancel()}.
+ * A file run checkpoints every conquered run in a {@link RunManifest} as soon as it is written, the next run of
+ * the unchanged file only conquers the buckets without a run, or merges them again if it has died while merging.
+ * Every run collects {@link AnagramMetrics}, visible through JMX while it lasts and given to the listener at the end
  *
  * @author Oguz Cam
  */
 public class AnagramAlgorithm {
     private static final Logger LOG = Logger.getLogger(AnagramAlgorithm.class.getName());
-    private static final ExecutorService EXECUTOR_SERVICE = Executors.newFixedThreadPool(N_THREADS);
 
     private final String fileToProcess;
 
     private final Path outputDirectory;
-    private Path tempDirectory;
-    private int nextFileNumber;
+    private final Path tempDirectory;
+    private final AnagramAlgorithmConfiguration configuration;
+    private final ExecutorService sharedExecutorService;
+    private final Set<AnagramExecutor> runningExecutors = ConcurrentHashMap.newKeySet();
+    private final Set<AnagramMerger> runningMergers = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+    private AnagramMetricsListener listener;
 
     public AnagramAlgorithm(String selectedFile) {
+        this(selectedFile,
+                Paths.get("." + FileSystems.getDefault().getSeparator() + "tempfiles"),
+                Paths.get("." + FileSystems.getDefault().getSeparator() + "output"));
+    }
+
+    /**
+     * @param selectedFile File to process
+     * @param tempDirectory Scratch directory, every run creates its own directory inside
+     * @param outputDirectory Directory to write the output file into
+     */
+    public AnagramAlgorithm(String selectedFile, Path tempDirectory, Path outputDirectory) {
+        this(selectedFile, tempDirectory, outputDirectory, AnagramAlgorithmConfiguration.fromSystemProperties());
+    }
+
+    /**
+     * @param selectedFile File to process
+     * @param tempDirectory Scratch directory, every run creates its own directory inside
+     * @param outputDirectory Directory to write the output file into
+     * @param configuration Threshold and thread count, values to be tuned are tuned for every run
+     */
+    public AnagramAlgorithm(String selectedFile, Path tempDirectory, Path outputDirectory,
+                            AnagramAlgorithmConfiguration configuration) {
+        this(selectedFile, tempDirectory, outputDirectory, configuration, null);
+    }
+
+    /**
+     * @param selectedFile File to process
+     * @param tempDirectory Scratch directory, every run creates its own directory inside
+     * @param outputDirectory Directory to write the output file into
+     * @param configuration Threshold and thread count, values to be tuned are tuned for every run
+     * @param sharedExecutorService Thread pool to run on, shared with other algorithms and not shut down.
+     * Null to create a pool for every disk based run. Runs must not be started from the threads of the pool
+     */
+    public AnagramAlgorithm(String selectedFile, Path tempDirectory, Path outputDirectory,
+                            AnagramAlgorithmConfiguration configuration, ExecutorService sharedExecutorService) {
         this.fileToProcess = selectedFile;
-        this.tempDirectory = Paths.get("." + FileSystems.getDefault().getSeparator() + "tempfiles");
-        this.outputDirectory = Paths.get("." + FileSystems.getDefault().getSeparator() + "output");
+        this.tempDirectory = tempDirectory;
+        this.outputDirectory = outputDirectory;
+        this.configuration = configuration;
+        this.sharedExecutorService = sharedExecutorService;
     }
 
     /**
-     * Manages the algorithm process, calls divide, conquer and merge respectively
+     * Creates an algorithm to be used as a library through {@link #process(Path, AnagramGroupSink)}
+     * and {@link #process(WordSource, AnagramGroupSink)}
      *
-     * @return A flag to warn calling method if the algorithm works successfully.
-     * @throws Exception May throw Exception while running algorithm.
+     * @param tempDirectory Scratch directory, every run creates its own directory inside
      */
-    public Path process() throws Exception {
-        // Create directories whether they are not created yet
-        tempDirectory = Paths.get(tempDirectory.toString(), getFileName(fileToProcess) + System.currentTimeMillis());
-        Files.createDirectories(tempDirectory);
-
-        long startTime = System.currentTimeMillis();
-        long diff;
-        nextFileNumber = new AnagramDivider(tempDirectory, fileToProcess).divide();
-        diff = System.currentTimeMillis() - startTime;
-        LOG.info("Divide process has been completed in " + diff + " milliseconds");
+    public AnagramAlgorithm(Path tempDirectory) {
+        this(tempDirectory, AnagramAlgorithmConfiguration.fromSystemProperties());
+    }
 
-        startTime = System.currentTimeMillis();
-        conquer();
-        diff = System.currentTimeMillis() - startTime;
-        LOG.info("Conquer process has been completed in " + diff + " milliseconds");
+    /**
+     * Creates an algorithm to be used as a library with the given configuration
+     *
+     * @param tempDirectory Scratch directory, every run creates its own directory inside
+     * @param configuration Threshold and thread count, values to be tuned are tuned for every run
+     */
+    public AnagramAlgorithm(Path tempDirectory, AnagramAlgorithmConfiguration configuration) {
+        this(null, tempDirectory, null, configuration);
+    }
 
-        startTime = System.currentTimeMillis();
-        int lastFileNumber = merge(1, nextFileNumber);
-        diff = System.currentTimeMillis() - startTime;
-        LOG.info("Merge process has been completed in " + diff + " milliseconds");
+    /**
+     * Manages the algorithm process for the selected file and writes the groups to a new file in output directory
+     *
+     * @return Path of the output file
+     * @throws Exception May throw Exception while running algorithm.
+     */
+    public Path process() throws Exception {
+        Path input = Paths.get(fileToProcess);
+        if (!Files.isRegularFile(input)) {
+            throw new Exception(fileToProcess + " does not exist, choose another file");
+        }
 
-        Path pathToRead = Paths.get(tempDirectory.toString(), lastFileNumber + FILE_EXTENSION);
+        Files.createDirectories(outputDirectory);
         Path pathForOutput = Paths.get(
                 outputDirectory.toString(),
                 getFileName(fileToProcess) + "_" + System.currentTimeMillis() + FILE_EXTENSION);
 
-        output(pathToRead, pathForOutput);
+        try (AnagramGroupSink sink = AnagramGroupSink.of(FileChannel.open(pathForOutput,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            process(input, sink);
+        }
 
         return pathForOutput;
     }
 
     /**
-     * Starts an executorService to execute algorithm per file.
+     * Manages the algorithm process for a file. Groups the file in memory if it is estimated to fit the heap,
+     * otherwise, or if it turns out not to fit while it is read, calls divide, conquer and merge respectively
      *
-     * @throws Exception May throw an InterruptedException while waiting termination of all tasks.
-     * May throw IOException from tasks.
+     * @param input File to process, one word per line
+     * @param sink Sink to receive the groups in insertion order, it is not closed
+     * @return Count of lines read, empty lines included
+     * @throws Exception May throw Exception while running algorithm.
      */
-    private void conquer() throws Exception {
-        List<Callable<Void>> serviceList = new ArrayList<>(nextFileNumber - 1);
-        for (int i = 1; i < nextFileNumber; i++) {
-            serviceList.add(new AnagramConquerer(tempDirectory, i + FILE_EXTENSION));
+    public long process(Path input, AnagramGroupSink sink) throws Exception {
+        AnagramMetrics metrics = startRun();
+        try {
+            metrics.setInputBytes(Files.size(input));
+            AnagramGroupSink countingSink = countGroups(sink, metrics);
+            if (fitsInMemory(input, metrics.getInputBytes())) {
+                long lineCount = processInMemory(input, countingSink, metrics);
+                if (lineCount >= 0) {
+                    return lineCount;
+                }
+            }
+            return processOnDisk(input, countingSink, null, metrics);
+        } finally {
+            metrics.runCompleted();
         }
+    }
 
+    /**
+     * Summarizes the groups of a file without writing them. A file grouped on disk is summarized by
+     * the conquerers of its buckets, so neither runs are written nor merged and the run cannot be resumed
+     *
+     * @param input File to process, one word per line
+     * @param statistics Statistics to add the groups to
+     * @return Count of lines read, empty lines included
+     * @throws Exception May throw Exception while running algorithm.
+     */
+    public long summarize(Path input, AnagramStatistics statistics) throws Exception {
+        AnagramMetrics metrics = startRun();
         try {
-            EXECUTOR_SERVICE.invokeAll(serviceList);
-        } catch (InterruptedException ex) {
-            throw new Exception("Process has been interrupted while executing algorithm.", ex);
+            metrics.setInputBytes(Files.size(input));
+            if (fitsInMemory(input, metrics.getInputBytes())) {
+                long lineCount = processInMemory(input, countGroups(statistics, metrics), metrics);
+                if (lineCount >= 0) {
+                    return lineCount;
+                }
+            }
+            return processOnDisk(input, null, statistics, metrics);
+        } finally {
+            metrics.runCompleted();
         }
     }
 
     /**
-     * Merges the small files into one big file recursively.
+     * Summarizes the groups of a file on disk whatever its size, even if it would fit the heap
      *
-     * @throws Exception May throw an InterruptedException while waiting termination of all tasks.
-     * May throw IOException from tasks.
+     * @param input File to process, one word per line
+     * @param statistics Statistics to add the groups to
+     * @return Count of lines read, empty lines included
+     * @throws Exception May throw Exception while running algorithm.
      */
-    private int merge(int firstFileNumber, int nextFileNumber) throws Exception {
-        // If there is just one file, it is done
-        if (nextFileNumber - 1 == firstFileNumber) {
-            return firstFileNumber;
+    long summarizeOnDisk(Path input, AnagramStatistics statistics) throws Exception {
+        AnagramMetrics metrics = startRun();
+        try {
+            metrics.setInputBytes(Files.size(input));
+            return processOnDisk(input, null, statistics, metrics);
+        } finally {
+            metrics.runCompleted();
         }
+    }
 
-        int newFirstFileNumber = nextFileNumber;
-        List<Callable<Void>> serviceList = new ArrayList<>();
-        Path inputPath1, inputPath2, outputPath;
-        for (int i = firstFileNumber; i + 1 < nextFileNumber; i += 2) {
-            inputPath1 = Paths.get(tempDirectory.toString(), i + FILE_EXTENSION);
-            inputPath2 = Paths.get(tempDirectory.toString(), (i + 1) + FILE_EXTENSION);
-            outputPath = Paths.get(tempDirectory.toString(), (nextFileNumber + serviceList.size()) + FILE_EXTENSION);
-            serviceList.add(new AnagramMerger(inputPath1, inputPath2, outputPath));
+    /**
+     * Groups a file in one pass, giving up once its words exceed the in-memory budget
+     *
+     * @param input File to process
+     * @param sink Sink to receive the groups
+     * @param metrics Metrics of the run
+     * @return Count of lines read, -1 if the file does not fit the heap and nothing has been emitted
+     * @throws Exception May throw Exception while reading the file
+     */
+    private long processInMemory(Path input, AnagramGroupSink sink, AnagramMetrics metrics) throws Exception {
+        metrics.stageStarted(Stage.IN_MEMORY);
+        AnagramInMemoryGrouper grouper =
+                new AnagramInMemoryGrouper(getInMemoryBudget(), configuration.getSignaturePolicy());
+        boolean complete;
+        try (WordSource source = WordSource.of(input)) {
+            complete = grouper.addAll(source);
+        } catch (IOException ex) {
+            throw new Exception("An I/O error has been occurred while executing the algorithm", ex);
+        }
+        if (!complete) {
+            metrics.stageCompleted(Stage.IN_MEMORY);
+            LOG.info(input + " does not fit the heap after " + grouper.getNextOrdinal() + " lines, processing on disk");
+            return -1;
         }
+        metrics.linesRead(grouper.getNextOrdinal());
+        grouper.emit(sink);
+        long diff = metrics.stageCompleted(Stage.IN_MEMORY);
+        LOG.info("In memory process has been completed in " + diff + " milliseconds");
+        return grouper.getNextOrdinal();
+    }
 
-        // If last file is not processed, move it to the last again
-        int existingFileCount = nextFileNumber - firstFileNumber;
-        if (existingFileCount % 2 != 0) {
-            inputPath1 = Paths.get(tempDirectory.toString(), (nextFileNumber - 1) + FILE_EXTENSION);
-            outputPath = Paths.get(tempDirectory.toString(), (nextFileNumber + serviceList.size()) + FILE_EXTENSION);
-            Files.move(inputPath1, outputPath);
-            // Keep nextFileNumber sync to give it to new call
-            nextFileNumber++;
+    /**
+     * Manages the algorithm process for a source of unknown size, like a stream.
+     * Words are grouped in memory, the groups are emitted when the source ends within the heap budget.
+     * Otherwise the grouped words and the rest of the source are divided into chunks, conquered and merged
+     *
+     * @param source Source of the words, it is not closed
+     * @param sink Sink to receive the groups in insertion order, it is not closed
+     * @return Count of lines read, empty lines included
+     * @throws Exception May throw Exception while running algorithm.
+     */
+    public long process(WordSource source, AnagramGroupSink sink) throws Exception {
+        AnagramMetrics metrics = startRun();
+        try {
+            AnagramGroupSink countingSink = countGroups(sink, metrics);
+            metrics.stageStarted(Stage.IN_MEMORY);
+            AnagramInMemoryGrouper grouper =
+                    new AnagramInMemoryGrouper(getInMemoryBudget(), configuration.getSignaturePolicy());
+            if (grouper.addAll(source)) {
+                metrics.setInputBytes(grouper.getBytesRead());
+                metrics.linesRead(grouper.getNextOrdinal());
+                grouper.emit(countingSink);
+                long diff = metrics.stageCompleted(Stage.IN_MEMORY);
+                LOG.info("In memory process has been completed in " + diff + " milliseconds");
+                return grouper.getNextOrdinal();
+            } else {
+                return processSpilled(grouper, source, countingSink, metrics);
+            }
+        } finally {
+            metrics.runCompleted();
         }
-        // Keep nextFileNumber sync to give it to new call
-        nextFileNumber += serviceList.size();
+    }
+
+    /**
+     * Sets the listener of the next runs, which is also given the metrics of every run when it ends
+     *
+     * @param listener Listener to notify, null for none
+     */
+    public void setMetricsListener(AnagramMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Creates the metrics of a run and makes them visible through JMX
+     */
+    private AnagramMetrics startRun() {
+        AnagramMetrics metrics = new AnagramMetrics(listener);
+        metrics.register();
+        return metrics;
+    }
+
+    /**
+     * Counts the groups on their way to the sink
+     */
+    private static AnagramGroupSink countGroups(AnagramGroupSink sink, AnagramMetrics metrics) {
+        return new AnagramGroupSink() {
+            @Override
+            public void accept(List<String> words) throws IOException {
+                metrics.groupEmitted(words);
+                sink.accept(words);
+            }
+        };
+    }
 
+    /**
+     * Runs divide, conquer and merge for a file whatever its size, even if it would fit the heap
+     *
+     * @param input File to process, one word per line
+     * @param sink Sink to receive the groups in insertion order, it is not closed
+     * @return Count of lines read, empty lines included
+     * @throws Exception May throw Exception while running algorithm.
+     */
+    long processOnDisk(Path input, AnagramGroupSink sink) throws Exception {
+        AnagramMetrics metrics = startRun();
         try {
-            EXECUTOR_SERVICE.invokeAll(serviceList);
-        } catch (InterruptedException ex) {
-            throw new Exception("Process has been interrupted while executing algorithm.", ex);
+            metrics.setInputBytes(Files.size(input));
+            return processOnDisk(input, countGroups(sink, metrics), null, metrics);
+        } finally {
+            metrics.runCompleted();
         }
+    }
 
-        // Call recursively the same method till just one file remains
-        return merge(newFirstFileNumber, nextFileNumber);
+    /**
+     * Runs divide, conquer and merge through temporary files for the inputs exceeding the heap
+     *
+     * @param input File to process
+     * @param sink Sink to receive the groups, null if they are summarized
+     * @param statistics Statistics the conquerers add the groups to instead of writing runs, null to merge the runs
+     * into the sink
+     * @param metrics Metrics of the run
+     * @return Count of lines read
+     * @throws Exception May throw Exception while running algorithm.
+     */
+    private long processOnDisk(Path input, AnagramGroupSink sink, AnagramStatistics statistics,
+                               AnagramMetrics metrics) throws Exception {
+        RunDirectory.collectGarbage(tempDirectory);
+        RunDirectory runDirectory = RunDirectory.forInput(tempDirectory, getFileName(input.toString()), input);
+        boolean checkpointed = false;
+        boolean completed = false;
+        try {
+            RunManifest manifest = statistics == null ? runDirectory.readManifest() : null;
+            boolean resumed = manifest != null && manifest.matches(input, configuration.getSignaturePolicy());
+            if (resumed) {
+                boolean verified = manifest.verifyRuns(runDirectory.getPath());
+                if (verified && manifest.isComplete()) {
+                    checkpointed = true;
+                    if (cancelled) {
+                        throw new Exception("Process has been cancelled.");
+                    }
+                    LOG.info("Resuming " + input + " from the conquered runs in " + runDirectory.getPath());
+                    metrics.linesRead(manifest.getLineCount());
+                    merge(runDirectory.getPath(), manifest.getBucketCount(), manifest.isCompressed(), sink, metrics);
+                    completed = true;
+                    return manifest.getLineCount();
+                }
+                resumed = manifest.getRunCount() > 0;
+            }
+            if (resumed) {
+                runDirectory.clear(manifest);
+            } else {
+                runDirectory.clear();
+                manifest = null;
+            }
+
+            AnagramAlgorithmConfiguration tuned = configuration.tune(input);
+            if (resumed) {
+                // The runs already written must be merged with the ones written now
+                tuned = tuned.withCompressedTempFiles(manifest.isCompressed());
+            }
+            LOG.info("Processing " + input + " on disk with " + tuned);
+
+            AnagramExecutor executor = createExecutor(tuned);
+            metrics.setExecutorService(executor.getCpuPool());
+            try {
+                metrics.stageStarted(Stage.DIVIDE_AND_CONQUER);
+                TempDiskBudget budget = new TempDiskBudget(tuned.getTempBudget(), metrics);
+                if (!resumed) {
+                    tuned = budget.fit(input.toString(), Files.size(input), tuned);
+                }
+                AnagramDivider divider = new AnagramDivider(runDirectory.getPath(), input.toString(),
+                        executor.getIoExecutor(), tuned, resumed ? manifest.getBucketCount() : 0, metrics, budget);
+                int bucketCount = divider.prepare(resumed ? manifest.getRangeCount() : 0) - 1;
+                if (resumed) {
+                    LOG.info("Resuming " + input + " from " + manifest.getRunCount() + " of " + bucketCount
+                            + " conquered runs in " + runDirectory.getPath());
+                    divider.skipBuckets(getConqueredBuckets(manifest));
+                } else if (statistics == null) {
+                    manifest = RunManifest.of(input, tuned.getSignaturePolicy(), tuned.isCompressTempFiles(),
+                            bucketCount, divider.getRangeCount());
+                    manifest.write(runDirectory.getPath());
+                }
+                if (manifest != null) {
+                    manifest.openLog(runDirectory.getPath());
+                }
+                divideAndConquer(divider, runDirectory.getPath(), bucketCount, tuned, executor, metrics, budget,
+                        statistics, manifest);
+                long diff = metrics.stageCompleted(Stage.DIVIDE_AND_CONQUER);
+                LOG.info("Divide and conquer process has been completed in " + diff + " milliseconds");
+                if (statistics != null) {
+                    completed = true;
+                    logTempBytes(input.toString(), metrics);
+                    return divider.getLineCount();
+                }
+
+                manifest.completed(runDirectory.getPath(), divider.getLineCount());
+                checkpointed = true;
+
+                merge(runDirectory.getPath(), bucketCount, tuned.isCompressTempFiles(), sink, metrics);
+                completed = true;
+                logTempBytes(input.toString(), metrics);
+                return divider.getLineCount();
+            } catch (Exception ex) {
+                if (executor.isCancelled()) {
+                    checkpointed = false;
+                    throw new Exception("Process has been cancelled.", ex);
+                }
+                // The runs logged before the failure are kept
+                checkpointed = manifest != null && manifest.getRunCount() > 0;
+                throw ex;
+            } finally {
+                try {
+                    releaseExecutor(executor);
+                } finally {
+                    if (manifest != null) {
+                        manifest.close();
+                    }
+                }
+            }
+        } finally {
+            releaseRunDirectory(runDirectory, checkpointed && !completed && !cancelled);
+        }
     }
 
     /**
-     * Gives fileName without extension
+     * @return Buckets whose runs the manifest has logged, numbered from 1
+     */
+    private static BitSet getConqueredBuckets(RunManifest manifest) {
+        BitSet buckets = new BitSet();
+        for (int bucket = 1; bucket <= manifest.getBucketCount(); bucket++) {
+            if (manifest.hasRun(bucket)) {
+                buckets.set(bucket);
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Continues a source which exceeded the heap on disk. The grouped words become the chunks of the first range,
+     * the rest of the source the chunks of the second one. A source can only be read sequentially,
+     * so the second range is divided by the calling thread
      *
-     * @param fileName Filename can be absolute path or relative path
-     * @return Returns fileName without extension
+     * @param grouper Grouper which stopped because of its budget
+     * @param source Rest of the source
+     * @param sink Sink to receive the groups
+     * @param metrics Metrics of the run
+     * @return Count of lines read
+     * @throws Exception May throw Exception while running algorithm.
      */
-    private String getFileName(String fileName) {
-        return new File(fileName).getName().split("\\.")[0];
+    private long processSpilled(AnagramInMemoryGrouper grouper, WordSource source, AnagramGroupSink sink,
+                                AnagramMetrics metrics) throws Exception {
+        RunDirectory.collectGarbage(tempDirectory);
+        RunDirectory runDirectory = RunDirectory.create(tempDirectory, "stream");
+
+        long estimatedSize = grouper.getBytesRead() * STREAM_SIZE_FACTOR;
+        int lineLength = (int) Math.min(Integer.MAX_VALUE,
+                grouper.getBytesRead() / Math.max(1, grouper.getNextOrdinal()));
+        boolean rotational = AnagramAlgorithmConfiguration.isRotational(runDirectory.getPath());
+        AnagramAlgorithmConfiguration tuned = configuration.tune(estimatedSize, lineLength, rotational);
+        LOG.info("Processing the stream on disk with " + tuned);
+
+        AnagramExecutor executor = createExecutor(tuned);
+        metrics.setExecutorService(executor.getCpuPool());
+        try {
+            int bucketCount = tuned.getBucketCount(estimatedSize);
+            TempDiskBudget budget = new TempDiskBudget(tuned.getTempBudget(), metrics);
+            long lineCount =
+                    runSpilled(grouper, source, sink, metrics, runDirectory.getPath(), bucketCount, executor, budget);
+            logTempBytes("The stream", metrics);
+            return lineCount;
+        } catch (Exception ex) {
+            throw executor.isCancelled() ? new Exception("Process has been cancelled.", ex) : ex;
+        } finally {
+            try {
+                releaseExecutor(executor);
+            } finally {
+                // Streams cannot be read again, so their runs are never resumed
+                runDirectory.delete();
+            }
+        }
+    }
+
+    /**
+     * Divides the spilled words and the rest of the source, then conquers and merges the buckets
+     */
+    private long runSpilled(AnagramInMemoryGrouper grouper, WordSource source, AnagramGroupSink sink,
+                            AnagramMetrics metrics, Path runDirectory, int bucketCount, AnagramExecutor executor,
+                            TempDiskBudget budget) throws Exception {
+        metrics.stageStarted(Stage.DIVIDE);
+        long startNanos = System.nanoTime();
+        try (AnagramChunkWriter writer = new AnagramChunkWriter(runDirectory, 0, bucketCount, metrics,
+                configuration.getSignaturePolicy(), budget, configuration.isCompressTempFiles(), new BitSet())) {
+            grouper.spill(writer);
+        }
+        metrics.rangeDivided(grouper.getBytesRead(), grouper.getNextOrdinal(), startNanos);
+
+        startNanos = System.nanoTime();
+        long ordinal = grouper.getNextOrdinal();
+        long bytes = 0;
+        try (AnagramChunkWriter writer = new AnagramChunkWriter(runDirectory, 1, bucketCount, metrics,
+                configuration.getSignaturePolicy(), budget, configuration.isCompressTempFiles(), new BitSet())) {
+            while (source.next()) {
+                if (executor.isCancelled()) {
+                    throw new CancellationException();
+                }
+                if (source.getLength() > 0) {
+                    writer.write(ordinal, source.getBuffer(), source.getOffset(), source.getLength());
+                }
+                ordinal++;
+                bytes += source.getLength() + 1;
+            }
+        } catch (IOException ex) {
+            throw new Exception("An I/O error occurred, please try again", ex);
+        }
+        metrics.setInputBytes(grouper.getBytesRead() + bytes);
+        metrics.rangeDivided(bytes, ordinal - grouper.getNextOrdinal(), startNanos);
+        long diff = metrics.stageCompleted(Stage.DIVIDE);
+        LOG.info("Divide process has been completed in " + diff + " milliseconds");
+
+        metrics.stageStarted(Stage.CONQUER);
+        List<CompletableFuture<Void>> buckets = new ArrayList<>(bucketCount);
+        for (int i = 1; i <= bucketCount; i++) {
+            AnagramConquerer conquerer = new AnagramConquerer(runDirectory, i, 2, metrics,
+                    configuration.getSignaturePolicy(), budget, configuration.isCompressTempFiles());
+            buckets.add(supply(conquerer, executor.getCpuExecutor(), executor));
+        }
+        await(buckets);
+        diff = metrics.stageCompleted(Stage.CONQUER);
+        LOG.info("Conquer process has been completed in " + diff + " milliseconds");
+
+        merge(runDirectory, bucketCount, configuration.isCompressTempFiles(), sink, metrics);
+        return ordinal;
     }
 
     /**
-     * Reading the last merged file, eliminates non-algorithm words and transfer the data to output directory
+     * Cancels the disk based runs of this algorithm, the ones started afterwards included.
+     * Their tasks are stopped and their temporary files removed, the calls running them throw an Exception.
+     * Runs grouping in memory are not affected
+     */
+    public void cancel() {
+        cancelled = true;
+        for (AnagramExecutor executor : runningExecutors) {
+            executor.cancel();
+        }
+        for (AnagramMerger merger : runningMergers) {
+            merger.cancel();
+        }
+    }
+
+    /**
+     * Gives an executor on the shared thread pool, or one with its own pools for the run
+     */
+    private AnagramExecutor createExecutor(AnagramAlgorithmConfiguration tuned) {
+        AnagramExecutor executor = sharedExecutorService != null
+                ? new AnagramExecutor(sharedExecutorService)
+                : new AnagramExecutor(tuned.getThreads());
+        runningExecutors.add(executor);
+        if (cancelled) {
+            executor.cancel();
+        }
+        return executor;
+    }
+
+    /**
+     * Ends the run: stops its tasks and shuts its own pools down
+     */
+    private void releaseExecutor(AnagramExecutor executor) {
+        runningExecutors.remove(executor);
+        executor.close();
+    }
+
+    /**
+     * Logs the most temporary disk space the run has taken
+     */
+    private static void logTempBytes(String input, AnagramMetrics metrics) {
+        LOG.info(input + " has taken " + metrics.getTempBytesHighWaterMark() + " bytes of temporary files at most");
+    }
+
+    /**
+     * Removes the run directory with whatever a failed run has left in it,
+     * unless the run has failed after its checkpoint and can be resumed
+     */
+    private static void releaseRunDirectory(RunDirectory runDirectory, boolean resumable) {
+        if (resumable) {
+            LOG.info("The conquered runs in " + runDirectory.getPath() + " are kept, the next run of the file resumes");
+            runDirectory.close();
+        } else {
+            runDirectory.delete();
+        }
+    }
+
+    /**
+     * Decides whether the file can be grouped in memory, comparing its estimated footprint with the free heap.
+     * The line count is estimated from the average line length of the head of the file
      *
-     * @param pathToRead Path to read data from
-     * @param pathForOutput Path to write data to
-     * @throws Exception May throw IOException
+     * @param input File to process
+     * @param fileSize Size of the file in bytes
+     * @return True if the file is estimated to fit the heap
+     * @throws IOException May throw IOException while sampling the file
      */
-    private void output(Path pathToRead, Path pathForOutput) throws Exception {
-        Files.createDirectories(outputDirectory);
+    static boolean fitsInMemory(Path input, long fileSize) throws IOException {
+        long lines = fileSize / AnagramAlgorithmConfiguration.getAverageLineLength(input) + 1;
+        return AnagramAlgorithmConfiguration.estimateInMemoryHeap(fileSize, lines) <= getInMemoryBudget();
+    }
+
+    /**
+     * @return Heap bytes the words grouped in memory may take
+     */
+    static long getInMemoryBudget() {
+        return AnagramAlgorithmConfiguration.getFreeHeap() / IN_MEMORY_HEAP_DIVISOR;
+    }
+
+    /**
+     * Divides the ranges and conquers the buckets as a pipeline instead of stage barriers.
+     * The buckets are conquered in as many lanes as the run has threads, a lane conquers its buckets one after
+     * the other, so only that many grouping tables are alive at a time whatever the size of the input.
+     * The bucket a lane is on consumes the chunk of a range as soon as the range is divided, in range order,
+     * the chunks of the buckets still waiting stay on disk until their turn.
+     * The ranges being divided together are limited, which bounds the open chunk files.
+     * Every run is logged in the manifest as soon as its bucket is finished, the buckets it has logged already
+     * are not conquered again.
+     *
+     * @param divider Prepared divider
+     * @param runDirectory Scratch directory of the run
+     * @param bucketCount Bucket count of the divider
+     * @param tuned Configuration of the run, its threads are the count of the buckets conquered at the same time
+     * @param executor Pools of the run, ranges are divided on the I/O pool and conquered on the CPU pool
+     * @param metrics Metrics of the run
+     * @param budget Temporary disk budget, the chunks and the runs are reserved from it as they are written
+     * @param statistics Statistics every bucket adds its groups to instead of writing its run, null to write runs
+     * @param manifest Checkpoint of the run with its log open, null if the groups are summarized
+     * @throws Exception May throw an InterruptedException while waiting termination of all tasks.
+     * May throw IOException from tasks.
+     */
+    private void divideAndConquer(AnagramDivider divider, Path runDirectory, int bucketCount,
+                                  AnagramAlgorithmConfiguration tuned, AnagramExecutor executor,
+                                  AnagramMetrics metrics, TempDiskBudget budget, AnagramStatistics statistics,
+                                  RunManifest manifest) throws Exception {
+        int lanes = tuned.getThreads();
+        int rangeCount = divider.getRangeCount();
+        List<CompletableFuture<Void>> divided = new ArrayList<>(rangeCount);
+        for (int range = 0; range < rangeCount; range++) {
+            divided.add(executor.track(new CompletableFuture<Void>()));
+        }
+
+        List<CompletableFuture<Void>> buckets = new ArrayList<>(bucketCount);
+        for (int bucket = 1; bucket <= bucketCount; bucket++) {
+            if (manifest != null && manifest.hasRun(bucket)) {
+                continue;
+            }
+            int bucketNumber = bucket;
+            AnagramConquerer conquerer = new AnagramConquerer(runDirectory, bucket, rangeCount, metrics,
+                    tuned.getSignaturePolicy(), budget, tuned.isCompressTempFiles());
+            // A bucket takes the lane of the bucket conquered before it in the lane
+            int i = buckets.size();
+            CompletableFuture<Void> consumed = i < lanes
+                    ? CompletableFuture.completedFuture(null)
+                    : buckets.get(i - lanes);
+            for (int range = 0; range < rangeCount; range++) {
+                int chunk = range;
+                consumed = executor.track(consumed.thenCombineAsync(divided.get(range), (previous, ignored) -> {
+                    run(() -> conquerer.consume(chunk));
+                    return null;
+                }, executor.getCpuExecutor()));
+            }
+            Step finish = statistics != null ? () -> conquerer.summarize(statistics) : () -> {
+                conquerer.finish();
+                manifest.runWritten(bucketNumber, conquerer.getRunSize(), conquerer.getRunChecksum());
+            };
+            buckets.add(executor.track(consumed.thenRunAsync(() -> run(finish), executor.getCpuExecutor())));
+        }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(pathToRead.toFile()));
-             PrintWriter writer = new PrintWriter(pathForOutput.toFile())) {
-            String line;
-            while((line = reader.readLine()) != null) {
-                List<String> words = Arrays.asList(line.split(" "));
-                if (words.size() > 1) {
-                    Collections.sort(words);
-                    for (String word : words) {
-                        writer.print(word + " ");
+        Semaphore inFlight = new Semaphore(divider.getMaxRangesInFlight());
+        int range = 0;
+        try {
+            for (; range < rangeCount && getFailure(divided) == null && getFailure(buckets) == null; range++) {
+                inFlight.acquire();
+                Callable<Void> rangeDivider = divider.getRangeDivider(range);
+                CompletableFuture<Void> rangeDivided = divided.get(range);
+                supply(rangeDivider, executor.getIoExecutor(), executor).whenComplete((ignored, ex) -> {
+                    inFlight.release();
+                    if (ex != null) {
+                        rangeDivided.completeExceptionally(ex);
+                    } else {
+                        rangeDivided.complete(null);
                     }
-                    writer.println();
+                });
+            }
+        } catch (InterruptedException ex) {
+            throw new Exception("Process has been interrupted while executing algorithm.", ex);
+        } finally {
+            // Ranges never divided fail the buckets waiting for them with the failure which stopped dividing
+            if (range < rangeCount) {
+                Throwable failure = getFailure(divided);
+                if (failure == null) {
+                    failure = getFailure(buckets);
+                }
+                if (failure == null) {
+                    failure = new CancellationException();
                 }
+                for (; range < rangeCount; range++) {
+                    divided.get(range).completeExceptionally(failure);
+                }
+            }
+        }
+        await(buckets);
+    }
+
+    /**
+     * Runs a task on the executor, tracked by the run
+     */
+    private static CompletableFuture<Void> supply(Callable<Void> task, Executor pool, AnagramExecutor executor) {
+        return executor.track(CompletableFuture.runAsync(() -> run(task::call), pool));
+    }
+
+    /**
+     * Waits for the tasks, throwing the failure of the first failed one
+     *
+     * @param futures Tasks to wait for
+     * @throws Exception Failure of a task, or an Exception if the run has been cancelled or interrupted
+     */
+    private static void await(List<CompletableFuture<Void>> futures) throws Exception {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
             }
-            writer.flush();
+            throw cause instanceof Exception ? (Exception) cause : ex;
+        } catch (CancellationException ex) {
+            throw new Exception("Process has been cancelled.", ex);
+        } catch (InterruptedException ex) {
+            throw new Exception("Process has been interrupted while executing algorithm.", ex);
+        }
+    }
+
+    /**
+     * Runs a throwing step inside a pipeline stage, checked exceptions fail the stage
+     */
+    private static void run(Step step) {
+        try {
+            step.run();
+        } catch (RuntimeException ex) {
+            throw ex;
         } catch (Exception ex) {
-            throw new Exception("An error occurred while transfering the result to output.", ex);
+            throw new CompletionException(ex);
         }
+    }
 
-        Files.deleteIfExists(pathToRead);
-        Files.deleteIfExists(tempDirectory);
+    /**
+     * @return Failure of the first failed future, null if none has failed
+     */
+    private static Throwable getFailure(List<CompletableFuture<Void>> futures) {
+        for (CompletableFuture<Void> future : futures) {
+            if (future.isCompletedExceptionally()) {
+                try {
+                    future.join();
+                } catch (CompletionException | CancellationException ex) {
+                    return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A pipeline step which may throw checked exceptions
+     */
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    /**
+     * Merges all conquered buckets in one k-way pass into the sink as the merge stage of the run.
+     *
+     * @param runDirectory Scratch directory of the run
+     * @param bucketCount Count of the conquered buckets
+     * @param compressed True if the runs are compressed
+     * @param sink Sink to receive the groups
+     * @param metrics Metrics of the run
+     * @throws Exception May throw IOException from the merger.
+     */
+    private void merge(Path runDirectory, int bucketCount, boolean compressed, AnagramGroupSink sink,
+                       AnagramMetrics metrics) throws Exception {
+        List<Path> inputPaths = new ArrayList<>(bucketCount);
+        for (int i = 1; i <= bucketCount; i++) {
+            inputPaths.add(Paths.get(runDirectory.toString(), i + TEMP_FILE_EXTENSION));
+        }
+        metrics.stageStarted(Stage.MERGE);
+        AnagramMerger merger = new AnagramMerger(inputPaths, sink, metrics, compressed);
+        runningMergers.add(merger);
+        try {
+            if (cancelled) {
+                merger.cancel();
+            }
+            merger.call();
+        } finally {
+            runningMergers.remove(merger);
+        }
+        long diff = metrics.stageCompleted(Stage.MERGE);
+        LOG.info("Merge process has been completed in " + diff + " milliseconds");
+    }
+
+    /**
+     * Gives fileName without extension
+     *
+     * @param fileName Filename can be absolute path or relative path
+     * @return Returns fileName without extension
+     */
+    private String getFileName(String fileName) {
+        return new File(fileName).getName().split("\\.")[0];
     }
 }
@@ -1,11 +1,415 @@
 package com.oguzcam.searchanagram.algorithm;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
- * Configuration can be done using this class according to potential data
+ * Configuration can be done using this class according to potential data.
+ * The constants are the defaults, the threshold and the thread count can be changed per run
+ * through an instance, the system properties {@value #THRESHOLD_PROPERTY} and {@value #THREADS_PROPERTY},
+ * or be tuned to the input, the heap and the machine with {@value #AUTO_VALUE}.
+ * The {@link SignaturePolicy} deciding which words are anagrams is set the same way, by {@value #SIGNATURE_PROPERTY},
+ * and so is the budget of temporary disk space of a run, by {@value #TEMP_BUDGET_PROPERTY}
  */
 public class AnagramAlgorithmConfiguration {
-    public static final int THRESHOLD = 50_000;
+    // Lines per bucket, a conquered bucket takes about GROUPING_TABLE_LINE_OVERHEAD heap bytes per line
+    public static final int THRESHOLD = 500_000;
     public static final int N_THREADS = 10;
+    // Average bytes per line including line separator, used to pick the bucket count before reading the file
+    public static final int ESTIMATED_LINE_LENGTH = 10;
+    // Heap bytes a line takes when grouped in memory besides two per byte of it: key, map entry, group and string,
+    // measured on lines of 4 to 32 ASCII letters
+    public static final int IN_MEMORY_LINE_OVERHEAD = 176;
+    // Grouping in memory takes this fraction of the free heap at most, the rest is left to the sink and the collector
+    public static final int IN_MEMORY_HEAP_DIVISOR = 2;
+    // Heap bytes per line of a bucket being conquered at most, the words themselves are kept off-heap
+    public static final int GROUPING_TABLE_LINE_OVERHEAD = 48;
+    // Streams of unknown size exceeding the heap are assumed this many times larger than what fit, to size buckets
+    public static final int STREAM_SIZE_FACTOR = 16;
+    // Smallest byte range a divider thread gets, smaller files are divided into fewer ranges
+    public static final long MIN_RANGE_SIZE = 1024 * 1024;
+    // Ranges per thread, more ranges let conquering start earlier but create more chunk files
+    public static final int RANGES_PER_THREAD = 4;
+    // Upper limit of chunk files kept open together while dividing, it also bounds the ranges in flight
+    public static final int MAX_OPEN_FILES = 4096;
+    // Run directories kept to resume an interrupted run are removed by later runs after this long
+    public static final long STALE_RUN_MILLIS = 7L * 24 * 60 * 60 * 1000;
 
     public static final String FILE_EXTENSION = ".txt";
+    // Chunks and runs are binary files, see TempFileOutput
+    public static final String TEMP_FILE_EXTENSION = ".bin";
+    // Encoding of input, temporary and output files
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    public static final String THRESHOLD_PROPERTY = "searchanagram.threshold";
+    public static final String THREADS_PROPERTY = "searchanagram.threads";
+    public static final String SIGNATURE_PROPERTY = "searchanagram.signature";
+    public static final String TEMP_BUDGET_PROPERTY = "searchanagram.tempBudget";
+    public static final String COMPRESS_PROPERTY = "searchanagram.compress";
+    public static final String AUTO_VALUE = "auto";
+    // Threshold or thread count to be tuned when the input is known
+    public static final int AUTO = 0;
+    // Temporary disk space without a limit
+    public static final long UNLIMITED = 0;
+
+    // Bytes read from the head of a file to measure its average line length
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    // Tuned buckets are never smaller than this many lines, tiny chunks cost more in files than they save in heap
+    private static final int MIN_THRESHOLD = 1_000;
+    // Rotating disks get slower with many readers and writers seeking at once
+    private static final int MAX_ROTATIONAL_THREADS = 4;
+
+    private final int threshold;
+    private final int threads;
+    private final int lineLength;
+    private final SignaturePolicy signaturePolicy;
+    private final long tempBudget;
+    private final boolean compressTempFiles;
+
+    /**
+     * @param threshold Lines per bucket, {@link #AUTO} to tune it
+     * @param threads Thread count, {@link #AUTO} to tune it
+     */
+    public AnagramAlgorithmConfiguration(int threshold, int threads) {
+        this(threshold, threads, SignaturePolicy.EXACT);
+    }
+
+    /**
+     * @param signaturePolicy Policy deciding which words are anagrams
+     */
+    public AnagramAlgorithmConfiguration(int threshold, int threads, SignaturePolicy signaturePolicy) {
+        this(threshold, threads, signaturePolicy, UNLIMITED);
+    }
+
+    /**
+     * @param tempBudget Bytes of temporary files a run may keep on disk at most, {@link #UNLIMITED} for no limit
+     */
+    public AnagramAlgorithmConfiguration(int threshold, int threads, SignaturePolicy signaturePolicy,
+                                         long tempBudget) {
+        this(threshold, threads, signaturePolicy, tempBudget, false);
+    }
+
+    /**
+     * @param compressTempFiles True to deflate temporary files in blocks, trading CPU time for less temporary disk
+     * space and I/O
+     */
+    public AnagramAlgorithmConfiguration(int threshold, int threads, SignaturePolicy signaturePolicy,
+                                         long tempBudget, boolean compressTempFiles) {
+        this(threshold, threads, ESTIMATED_LINE_LENGTH, signaturePolicy, tempBudget, compressTempFiles);
+    }
+
+    private AnagramAlgorithmConfiguration(int threshold, int threads, int lineLength,
+                                          SignaturePolicy signaturePolicy, long tempBudget,
+                                          boolean compressTempFiles) {
+        if (threshold < 0 || threads < 0) {
+            throw new IllegalArgumentException("Threshold and thread count cannot be negative");
+        }
+        if (tempBudget < 0) {
+            throw new IllegalArgumentException("Temporary disk budget cannot be negative");
+        }
+        this.threshold = threshold;
+        this.threads = threads;
+        this.lineLength = Math.max(1, lineLength);
+        this.signaturePolicy = signaturePolicy;
+        this.tempBudget = tempBudget;
+        this.compressTempFiles = compressTempFiles;
+    }
+
+    /**
+     * @return Configuration of the constants
+     */
+    public static AnagramAlgorithmConfiguration getDefault() {
+        return new AnagramAlgorithmConfiguration(THRESHOLD, N_THREADS);
+    }
+
+    /**
+     * Reads the system properties, the constants are used for the ones not set
+     *
+     * @return Configuration of the system properties
+     */
+    public static AnagramAlgorithmConfiguration fromSystemProperties() {
+        return parse(System.getProperty(THRESHOLD_PROPERTY), System.getProperty(THREADS_PROPERTY),
+                System.getProperty(SIGNATURE_PROPERTY), System.getProperty(TEMP_BUDGET_PROPERTY),
+                System.getProperty(COMPRESS_PROPERTY));
+    }
+
+    /**
+     * @param threshold Lines per bucket, {@value #AUTO_VALUE} or null for the default
+     * @param threads Thread count, {@value #AUTO_VALUE} or null for the default
+     * @return Parsed configuration
+     */
+    public static AnagramAlgorithmConfiguration parse(String threshold, String threads) {
+        return parse(threshold, threads, null);
+    }
+
+    /**
+     * @param signature Name of the signature policy, null for the exact one
+     */
+    public static AnagramAlgorithmConfiguration parse(String threshold, String threads, String signature) {
+        return parse(threshold, threads, signature, null);
+    }
+
+    /**
+     * @param tempBudget Temporary disk budget in bytes, or with a k, m or g suffix like "20g", null for no limit
+     */
+    public static AnagramAlgorithmConfiguration parse(String threshold, String threads, String signature,
+                                                      String tempBudget) {
+        return parse(threshold, threads, signature, tempBudget, null);
+    }
+
+    /**
+     * @param compressTempFiles "true" to compress temporary files, null for uncompressed ones
+     */
+    public static AnagramAlgorithmConfiguration parse(String threshold, String threads, String signature,
+                                                      String tempBudget, String compressTempFiles) {
+        return new AnagramAlgorithmConfiguration(parse(threshold, THRESHOLD), parse(threads, N_THREADS),
+                SignaturePolicy.parse(signature), parseSize(tempBudget), Boolean.parseBoolean(compressTempFiles));
+    }
+
+    private static long parseSize(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return UNLIMITED;
+        }
+        String size = value.trim().toLowerCase();
+        long unit = 1;
+        int suffix = "kmg".indexOf(size.charAt(size.length() - 1));
+        if (suffix >= 0) {
+            unit = 1L << (10 * (suffix + 1));
+            size = size.substring(0, size.length() - 1);
+        }
+        try {
+            return Math.multiplyExact(Long.parseLong(size), unit);
+        } catch (NumberFormatException | ArithmeticException ex) {
+            throw new IllegalArgumentException(value + " is not a size like 512m or 20g", ex);
+        }
+    }
+
+    private static int parse(String value, int defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        } else if (AUTO_VALUE.equalsIgnoreCase(value)) {
+            return AUTO;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(value + " is neither a number nor " + AUTO_VALUE, ex);
+        }
+    }
+
+    /**
+     * @return Lines per bucket, {@link #AUTO} if not tuned yet
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return Thread count, {@link #AUTO} if not tuned yet
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return Thread count, the available cores if it is to be tuned
+     */
+    public int getPoolSize() {
+        return threads == AUTO ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * @return Average bytes per line including line separator
+     */
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    /**
+     * @return Policy deciding which words are anagrams
+     */
+    public SignaturePolicy getSignaturePolicy() {
+        return signaturePolicy;
+    }
+
+    /**
+     * @return Bytes of temporary files a run may keep on disk at most, {@link #UNLIMITED} for no limit
+     */
+    public long getTempBudget() {
+        return tempBudget;
+    }
+
+    /**
+     * @return True if temporary files are deflated in blocks
+     */
+    public boolean isCompressTempFiles() {
+        return compressTempFiles;
+    }
+
+    public boolean isTuned() {
+        return threshold != AUTO && threads != AUTO;
+    }
+
+    /**
+     * Tunes the values set to {@link #AUTO} for a file. The line length is measured at the head of the file
+     * and the disk type is looked up from the file store of the file, where the platform tells it
+     *
+     * @param input File to process
+     * @return Tuned configuration, this one if nothing is to be tuned
+     * @throws IOException May throw IOException while sampling the file
+     */
+    public AnagramAlgorithmConfiguration tune(Path input) throws IOException {
+        if (isTuned()) {
+            return this;
+        }
+        return tune(Files.size(input), getAverageLineLength(input), isRotational(input));
+    }
+
+    /**
+     * Tunes the values set to {@link #AUTO}.
+     * The threads follow the available cores, limited on rotating disks.
+     * The threshold is picked so that the buckets conquered together, one per thread, fit the free heap,
+     * counting the words kept off-heap too since direct memory is limited to the heap size by default,
+     * while the file does not need more buckets than the open file limit
+     *
+     * @param inputSize Size of the input in bytes
+     * @param averageLineLength Average bytes per line including line separator
+     * @param rotational Whether the input and temporary files are on a rotating disk
+     * @return Tuned configuration
+     */
+    public AnagramAlgorithmConfiguration tune(long inputSize, int averageLineLength, boolean rotational) {
+        int tunedThreads = threads;
+        if (tunedThreads == AUTO) {
+            tunedThreads = Runtime.getRuntime().availableProcessors();
+            if (rotational) {
+                tunedThreads = Math.min(tunedThreads, MAX_ROTATIONAL_THREADS);
+            }
+        }
+
+        int tunedThreshold = threshold;
+        if (tunedThreshold == AUTO) {
+            long lineLength = Math.max(1, averageLineLength);
+            long byHeap = getFreeHeap() / ((GROUPING_TABLE_LINE_OVERHEAD + lineLength) * tunedThreads);
+            long byOpenFiles = inputSize / lineLength / MAX_OPEN_FILES + 1;
+            tunedThreshold = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_THRESHOLD, Math.max(byHeap, byOpenFiles)));
+        }
+
+        return new AnagramAlgorithmConfiguration(tunedThreshold, tunedThreads, averageLineLength, signaturePolicy,
+                tempBudget, compressTempFiles);
+    }
+
+    /**
+     * @return Same configuration with temporary files compressed
+     */
+    public AnagramAlgorithmConfiguration withCompressedTempFiles() {
+        return withCompressedTempFiles(true);
+    }
+
+    /**
+     * @param compressed True to compress the temporary files, like the runs of a resumed run
+     * @return Same configuration with the given compression of the temporary files
+     */
+    public AnagramAlgorithmConfiguration withCompressedTempFiles(boolean compressed) {
+        return new AnagramAlgorithmConfiguration(threshold, threads, lineLength, signaturePolicy, tempBudget,
+                compressed);
+    }
+
+    /**
+     * Estimates the bucket count so that every bucket holds about threshold lines.
+     * Every bucket is a chunk file of each range being divided and a run file open during the merge,
+     * so the count is limited to {@link #MAX_OPEN_FILES}, the buckets then holding more lines than the threshold
+     *
+     * @param inputSize Size of the input in bytes
+     * @return Bucket count, from one to {@link #MAX_OPEN_FILES}
+     */
+    public int getBucketCount(long inputSize) {
+        long lines = inputSize / lineLength;
+        int linesPerBucket = threshold == AUTO ? THRESHOLD : threshold;
+        return (int) Math.min(MAX_OPEN_FILES, Math.max(1, (lines + linesPerBucket - 1) / linesPerBucket));
+    }
+
+    @Override
+    public String toString() {
+        return "threshold=" + (threshold == AUTO ? AUTO_VALUE : threshold)
+                + ", threads=" + (threads == AUTO ? AUTO_VALUE : threads)
+                + ", lineLength=" + lineLength
+                + ", signature=" + signaturePolicy.getOptionName()
+                + (tempBudget == UNLIMITED ? "" : ", tempBudget=" + tempBudget)
+                + (compressTempFiles ? ", compressed" : "");
+    }
+
+    /**
+     * @return Free heap in bytes, the memory the JVM may still allocate included
+     */
+    static long getFreeHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * Estimates the heap taken by grouping lines in memory, see {@link #IN_MEMORY_LINE_OVERHEAD}
+     *
+     * @param bytes Bytes of the lines, line separators included
+     * @param lines Count of the lines
+     * @return Estimated heap bytes
+     */
+    public static long estimateInMemoryHeap(long bytes, long lines) {
+        return lines * IN_MEMORY_LINE_OVERHEAD + 2 * bytes;
+    }
+
+    /**
+     * Measures the bytes per line of the head of the file
+     */
+    static int getAverageLineLength(Path input) throws IOException {
+        byte[] sample = new byte[SAMPLE_SIZE];
+        int size = 0;
+        try (InputStream stream = Files.newInputStream(input)) {
+            int read;
+            while (size < sample.length && (read = stream.read(sample, size, sample.length - size)) > 0) {
+                size += read;
+            }
+        }
+
+        int lines = 0;
+        int lastLineEnd = 0;
+        for (int i = 0; i < size; i++) {
+            if (sample[i] == '\n') {
+                lines++;
+                lastLineEnd = i + 1;
+            }
+        }
+        return lines == 0 ? Math.max(ESTIMATED_LINE_LENGTH, size) : Math.max(1, lastLineEnd / lines);
+    }
+
+    /**
+     * Looks the disk of the file up in sysfs, other platforms are treated as solid state
+     */
+    static boolean isRotational(Path input) {
+        try {
+            FileStore store = Files.getFileStore(input);
+            Path device = Paths.get(store.name()).getFileName();
+            if (device == null) {
+                return false;
+            }
+            Path block = Paths.get("/sys/class/block", device.toString());
+            if (!Files.exists(block)) {
+                return false;
+            }
+            block = block.toRealPath();
+            Path flag = block.resolve("queue/rotational");
+            if (!Files.exists(flag)) {
+                // Partitions keep the flag in their disk
+                flag = block.getParent().resolve("queue/rotational");
+            }
+            return Files.exists(flag) && "1".equals(new String(Files.readAllBytes(flag), CHARSET).trim());
+        } catch (IOException | RuntimeException ex) {
+            return false;
+        }
+    }
 }
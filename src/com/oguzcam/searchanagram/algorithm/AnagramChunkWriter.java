@@ -0,0 +1,124 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+
+/**
+ * Writes the chunks of one range, routing every word to the chunk of its bucket by the hash of its signature.
+ * Each chunk record is written as the gap to the ordinal of the previous record, the length of the word
+ * and the word bytes as they are. Ordinals of a chunk never decrease, so the gaps are small.
+ * Buckets whose runs a resumed run already has get no chunks, their words are dropped
+ *
+ * @author Oguz Cam
+ */
+class AnagramChunkWriter implements Closeable {
+    private final TempFileOutput[] outputs;
+    private final long[] lastOrdinals;
+    private final TempFileOutput.Compressor compressor;
+    private final AnagramSignature signature;
+    private final AnagramMetrics metrics;
+
+    AnagramChunkWriter(Path tempDirectory, int range, int bucketCount, AnagramMetrics metrics,
+                       SignaturePolicy policy) throws IOException {
+        this(tempDirectory, range, bucketCount, metrics, policy, null, false, new BitSet());
+    }
+
+    /**
+     * @param budget Temporary disk budget of the run, every block of the chunks is reserved from it,
+     * null for no limit
+     * @param compressed True to compress the chunks
+     * @param skippedBuckets Buckets from 1 which get no chunks
+     */
+    AnagramChunkWriter(Path tempDirectory, int range, int bucketCount, AnagramMetrics metrics,
+                       SignaturePolicy policy, TempDiskBudget budget, boolean compressed, BitSet skippedBuckets)
+            throws IOException {
+        this.metrics = metrics;
+        this.compressor = TempFileOutput.Compressor.create(compressed);
+        this.signature = new AnagramSignature(policy);
+        outputs = new TempFileOutput[bucketCount];
+        lastOrdinals = new long[bucketCount];
+        try {
+            for (int i = 0; i < bucketCount; i++) {
+                if (skippedBuckets.get(i + 1)) {
+                    continue;
+                }
+                outputs[i] = new TempFileOutput(
+                        Paths.get(tempDirectory.toString(), AnagramDivider.getChunkFileName(i + 1, range)), compressor,
+                        budget);
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Writes the encoded word in the given byte slice into the chunk of its bucket,
+     * unless the signature policy leaves nothing of it
+     */
+    void write(long ordinal, ByteBuffer buffer, int offset, int length) throws IOException {
+        if (signature.compute(buffer, offset, length).isEmpty()) {
+            return;
+        }
+        int bucket = Math.floorMod(signature.hash(), outputs.length);
+        TempFileOutput output = outputs[bucket];
+        if (output == null) {
+            return;
+        }
+        output.writeVarLong(ordinal - lastOrdinals[bucket]);
+        output.writeVarLong(length);
+        output.write(buffer, offset, length);
+        lastOrdinals[bucket] = ordinal;
+    }
+
+    /**
+     * Writes the word into the chunk of its bucket
+     */
+    void write(long ordinal, String word) throws IOException {
+        ByteBuffer encoded = CHARSET.encode(word);
+        write(ordinal, encoded, encoded.position(), encoded.remaining());
+    }
+
+    /**
+     * @return Bytes written into the chunks so far
+     */
+    long getBytesWritten() {
+        long bytes = 0;
+        for (TempFileOutput output : outputs) {
+            if (output != null) {
+                bytes += output.getBytesWritten();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (TempFileOutput output : outputs) {
+            if (output != null) {
+                try {
+                    output.close();
+                    metrics.chunkWritten(output.getBytesWritten());
+                    output.release();
+                } catch (IOException ex) {
+                    failure = ex;
+                }
+            }
+        }
+        if (compressor != null) {
+            compressor.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -1,77 +1,246 @@
 package com.oguzcam.searchanagram.algorithm;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
 
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.TEMP_FILE_EXTENSION;
+
 /**
- * Reads the given file and runs the algorithm to group algorithm words
+ * Reads the chunks of the given bucket in range order and runs the algorithm to group algorithm words.
+ * Since the divider puts all anagrams of a word into the same bucket, the groups found here are final.
+ * The bucket is rewritten as a run of the groups having more than one word, ordered by their first line index.
+ * Words are grouped in an {@link AnagramGroupTable}, which keeps them off-heap,
+ * so a bucket needs a fraction of the heap a map of strings would need.
  *
  * @author Oguz Cam
  */
 public class AnagramConquerer implements Callable<Void> {
+    private final Path directory;
     private final Path filePath;
-    private final Map<String, Set<String>> map = new LinkedHashMap<>();
+    private final int bucketNumber;
+    private final int rangeCount;
+    private final AnagramMetrics metrics;
+    private final AnagramGroupTable table = new AnagramGroupTable();
+    private final AnagramSignature signature;
+    private final TempDiskBudget budget;
+    private final boolean compressed;
+    private byte[] wordBytes = new byte[64];
+    private ByteBuffer wordBuffer = ByteBuffer.wrap(wordBytes);
+    private long runSize;
+    private long runChecksum;
+
+    /**
+     * @param directoryName Directory of the chunks
+     * @param bucketNumber Bucket to conquer, its run is written to "bucketNumber.bin"
+     * @param rangeCount Count of the ranges the divider has used, so the chunks of the bucket
+     */
+    public AnagramConquerer(Path directoryName, int bucketNumber, int rangeCount) {
+        this(directoryName, bucketNumber, rangeCount, new AnagramMetrics());
+    }
+
+    /**
+     * @param directoryName Directory of the chunks
+     * @param bucketNumber Bucket to conquer, its run is written to "bucketNumber.bin"
+     * @param rangeCount Count of the ranges the divider has used, so the chunks of the bucket
+     * @param metrics Metrics of the run, counting the conquered chunks and the written run
+     */
+    public AnagramConquerer(Path directoryName, int bucketNumber, int rangeCount, AnagramMetrics metrics) {
+        this(directoryName, bucketNumber, rangeCount, metrics, SignaturePolicy.EXACT);
+    }
+
+    /**
+     * @param directoryName Directory of the chunks
+     * @param bucketNumber Bucket to conquer, its run is written to "bucketNumber.bin"
+     * @param rangeCount Count of the ranges the divider has used, so the chunks of the bucket
+     * @param metrics Metrics of the run, counting the conquered chunks and the written run
+     * @param policy Policy deciding which words are anagrams, the one the chunks have been divided by
+     */
+    public AnagramConquerer(Path directoryName, int bucketNumber, int rangeCount, AnagramMetrics metrics,
+                            SignaturePolicy policy) {
+        this(directoryName, bucketNumber, rangeCount, metrics, policy, null);
+    }
+
+    /**
+     * @param directoryName Directory of the chunks
+     * @param bucketNumber Bucket to conquer, its run is written to "bucketNumber.bin"
+     * @param rangeCount Count of the ranges the divider has used, so the chunks of the bucket
+     * @param metrics Metrics of the run, counting the conquered chunks and the written run
+     * @param policy Policy deciding which words are anagrams, the one the chunks have been divided by
+     * @param budget Temporary disk budget of the run, every block of the run is reserved from it, null for no limit
+     */
+    public AnagramConquerer(Path directoryName, int bucketNumber, int rangeCount, AnagramMetrics metrics,
+                            SignaturePolicy policy, TempDiskBudget budget) {
+        this(directoryName, bucketNumber, rangeCount, metrics, policy, budget, false);
+    }
 
-    public AnagramConquerer(Path directoryName, String fileName) {
-        filePath = Paths.get(directoryName.toString(), fileName);
+    /**
+     * @param directoryName Directory of the chunks
+     * @param bucketNumber Bucket to conquer, its run is written to "bucketNumber.bin"
+     * @param rangeCount Count of the ranges the divider has used, so the chunks of the bucket
+     * @param metrics Metrics of the run, counting the conquered chunks and the written run
+     * @param policy Policy deciding which words are anagrams, the one the chunks have been divided by
+     * @param budget Temporary disk budget of the run, every block of the run is reserved from it, null for no limit
+     * @param compressed True if the chunks are compressed, the run is compressed then too
+     */
+    public AnagramConquerer(Path directoryName, int bucketNumber, int rangeCount, AnagramMetrics metrics,
+                            SignaturePolicy policy, TempDiskBudget budget, boolean compressed) {
+        this.metrics = metrics;
+        this.budget = budget;
+        this.compressed = compressed;
+        this.signature = new AnagramSignature(policy);
+        this.directory = directoryName;
+        this.filePath = Paths.get(directoryName.toString(), bucketNumber + TEMP_FILE_EXTENSION);
+        this.bucketNumber = bucketNumber;
+        this.rangeCount = rangeCount;
     }
 
     /**
-     * Gets the given file and executing algorithm algorithm on it, then put algorithm words together in one line,
-     * and the other words also to a new line.
+     * Gets the chunks of the bucket and executing algorithm algorithm on them, then put algorithm words together
+     * in one line.
      *
      * @return Void
      * @throws Exception Throws exception when IOException occurred
      */
     @Override
     public Void call() throws Exception {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath.toFile()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                char[] charArray = line.toCharArray();
-                Arrays.sort(charArray);
-                String patternString = String.valueOf(charArray);
-                if (!map.containsKey(patternString)) {
-                    map.put(patternString, new HashSet<String>());
+        for (int range = 0; range < rangeCount; range++) {
+            consume(range);
+        }
+        finish();
+
+        return null;
+    }
+
+    /**
+     * Groups the words of one chunk of the bucket and removes the chunk.
+     * Chunks must be consumed in range order, so groups keep their first line index
+     *
+     * @param range Range of the chunk
+     * @throws Exception Throws exception when IOException occurred
+     */
+    public void consume(int range) throws Exception {
+        Path chunkPath = Paths.get(directory.toString(), AnagramDivider.getChunkFileName(bucketNumber, range));
+        long startNanos = System.nanoTime();
+        long chunkSize;
+        try (TempFileInput input = new TempFileInput(chunkPath, compressed)) {
+            long ordinal = 0;
+            while (input.hasMore()) {
+                // Chunk records are the ordinal gap, the word length and the word, in ascending ordinal order
+                ordinal += input.readVarLong();
+                int length = input.readVarInt();
+                if (wordBytes.length < length) {
+                    wordBytes = new byte[Math.max(length, wordBytes.length * 2)];
+                    wordBuffer = ByteBuffer.wrap(wordBytes);
                 }
-                map.get(patternString).add(line);
+                input.readFully(wordBytes, 0, length);
+
+                signature.compute(wordBuffer, 0, length);
+                table.add(signature, ordinal, wordBytes, 0, length);
             }
-            Files.deleteIfExists(filePath);
+            chunkSize = Files.size(chunkPath);
         } catch (Exception ex) {
             throw new Exception("An I/O error has been occurred while executing the algorithm", ex);
         }
+        Files.deleteIfExists(chunkPath);
+        metrics.chunkConquered(chunkSize, startNanos);
+    }
+
+    /**
+     * @return Every group of the consumed chunks in order of first occurrence, single words included
+     */
+    public Collection<AnagramGroup> getGroups() {
+        List<AnagramGroup> groups = new ArrayList<>(table.getGroupCount());
+        for (int group = 0; group < table.getGroupCount(); group++) {
+            groups.add(table.toGroup(group));
+        }
+        return groups;
+    }
+
+    /**
+     * @return Path of the run of the bucket
+     */
+    public Path getRunPath() {
+        return filePath;
+    }
+
+    /**
+     * @return Size of the run, once it is written
+     */
+    public long getRunSize() {
+        return runSize;
+    }
+
+    /**
+     * @return CRC-32 of the run, once it is written
+     */
+    public long getRunChecksum() {
+        return runChecksum;
+    }
 
+    /**
+     * Writes the run of the bucket after all of its chunks are consumed
+     *
+     * @throws IOException May throw IOException while writing the run
+     */
+    public void finish() throws IOException {
         printAllAnagrams();
+        table.clear();
+    }
 
-        return null;
+    /**
+     * Adds the groups having anagram words to the statistics instead of writing the run, after all chunks of
+     * the bucket are consumed. The statistics are shared by the conquerers of a run, so they are locked per group
+     *
+     * @param statistics Statistics of the run
+     */
+    public void summarize(AnagramStatistics statistics) {
+        for (int group = 0; group < table.getGroupCount(); group++) {
+            if (table.hasAnagrams(group)) {
+                List<String> words = table.getSortedWords(group);
+                synchronized (statistics) {
+                    statistics.add(table.getOrdinal(group), words);
+                }
+                metrics.groupEmitted(words);
+            }
+        }
+        table.clear();
     }
 
     /**
-     * Prints all words, algorithm words as grouped in one line and the single words in one line
+     * Writes the groups having anagram words in order of first occurrence into the run
+     *
+     * @throws IOException May throw IOException while writing the run
      */
-    private void printAllAnagrams() {
-        try {
-            Files.createFile(filePath);
-            PrintWriter writer = new PrintWriter(filePath.toFile());
-            for (String word : map.keySet()) {
-                List<String> anagramWords = new ArrayList<>(map.get(word));
-
-                for(String anagramWord : anagramWords) {
-                    writer.print(anagramWord + " ");
+    private void printAllAnagrams() throws IOException {
+        try (TempFileOutput.Compressor compressor = TempFileOutput.Compressor.create(compressed)) {
+            TempFileOutput output = new TempFileOutput(filePath, compressor, budget);
+            long groupCount = 0;
+            try {
+                long previousOrdinal = 0;
+                for (int group = 0; group < table.getGroupCount(); group++) {
+                    if (table.hasAnagrams(group)) {
+                        long ordinal = table.getOrdinal(group);
+                        AnagramGroup.write(output, ordinal, previousOrdinal, table.getSortedWords(group));
+                        previousOrdinal = ordinal;
+                        groupCount++;
+                    }
                 }
-                writer.println();
+            } finally {
+                output.close();
             }
-            writer.flush();
-            writer.close();
-        } catch (IOException ex) {
-            ex.printStackTrace();
+            runSize = output.getBytesWritten();
+            runChecksum = output.getChecksum();
+            metrics.runWritten(runSize, groupCount);
+            output.release();
         }
     }
 }
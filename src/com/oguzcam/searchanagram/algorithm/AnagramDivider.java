@@ -1,66 +1,368 @@
 package com.oguzcam.searchanagram.algorithm;
 
-import java.io.*;
-import java.nio.file.FileSystems;
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
-import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.FILE_EXTENSION;
-import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.THRESHOLD;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.TEMP_FILE_EXTENSION;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.MAX_OPEN_FILES;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.MIN_RANGE_SIZE;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.RANGES_PER_THREAD;
 
 /**
- * Create small files by dividing big file into pieces
+ * Create small files by dividing big file into buckets.
+ * Every word is routed to a bucket by the hash of its signature, so all anagrams of a word land in the same bucket.
+ * Each chunk record holds the word and its ordinal, which orders the words as their lines in the big file:
+ * the index of the range of the word above {@value #RANGE_ORDINAL_SHIFT} bits and its line index inside
+ * the range below them, so a range needs no line count of the ranges before it.
+ * Words are copied from the mapped file as raw bytes, they are never decoded into Strings.
+ * The big file is split into byte ranges aligned to line boundaries, which are divided in parallel.
+ * Every range writes its own chunk per bucket, so a bucket consists of its chunks in range order.
+ * Nothing is read before the ranges are divided but the line boundaries of the ranges,
+ * and a range can be conquered as soon as it is divided, see {@link #prepare()} and {@link #getRangeDivider(int)}.
  *
  * @author Oguz Cam
  */
 public class AnagramDivider {
+    /**
+     * Bits of the line index inside a range in an ordinal, a range may hold up to 2^40 lines
+     */
+    public static final int RANGE_ORDINAL_SHIFT = 40;
+
     private final Path tempDirectory;
     private final String fileToProcess;
+    private final ExecutorService executorService;
+    private final AnagramMetrics metrics;
+    private final TempDiskBudget budget;
+    private AnagramAlgorithmConfiguration configuration;
+    private int bucketCount;
+    private long[] boundaries;
+    // Buckets, numbered from 1, whose lines are not written into chunks
+    private BitSet skippedBuckets = new BitSet();
+    // Lines of the divided ranges, written once by the task dividing the range
+    private long[] rangeLineCounts;
+
+    public AnagramDivider(Path tempDirectory, String fileToProcess, ExecutorService executorService) {
+        this(tempDirectory, fileToProcess, executorService, AnagramAlgorithmConfiguration.getDefault(), 0);
+    }
+
+    /**
+     * @param tempDirectory Directory to write the chunks into
+     * @param fileToProcess Big file
+     * @param executorService Executor to divide ranges on
+     * @param configuration Threshold and thread count, values to be tuned are tuned for the big file
+     * @param bucketCount Bucket count to use, 0 to estimate it from the file size
+     */
+    public AnagramDivider(Path tempDirectory, String fileToProcess, ExecutorService executorService,
+                          AnagramAlgorithmConfiguration configuration, int bucketCount) {
+        this(tempDirectory, fileToProcess, executorService, configuration, bucketCount, new AnagramMetrics());
+    }
+
+    /**
+     * @param tempDirectory Directory to write the chunks into
+     * @param fileToProcess Big file
+     * @param executorService Executor to divide ranges on
+     * @param configuration Threshold and thread count, values to be tuned are tuned for the big file
+     * @param bucketCount Bucket count to use, 0 to estimate it from the file size
+     * @param metrics Metrics of the run, counting the divided ranges and the written chunks
+     */
+    public AnagramDivider(Path tempDirectory, String fileToProcess, ExecutorService executorService,
+                          AnagramAlgorithmConfiguration configuration, int bucketCount, AnagramMetrics metrics) {
+        this(tempDirectory, fileToProcess, executorService, configuration, bucketCount, metrics, null);
+    }
 
-    public AnagramDivider(Path tempDirectory, String fileToProcess) {
+    /**
+     * @param tempDirectory Directory to write the chunks into
+     * @param fileToProcess Big file
+     * @param executorService Executor to divide ranges on
+     * @param configuration Threshold and thread count, values to be tuned are tuned for the big file
+     * @param bucketCount Bucket count to use, 0 to estimate it from the file size
+     * @param metrics Metrics of the run, counting the divided ranges and the written chunks
+     * @param budget Temporary disk budget of the run, every block of the chunks is reserved from it,
+     * null for no limit
+     */
+    public AnagramDivider(Path tempDirectory, String fileToProcess, ExecutorService executorService,
+                          AnagramAlgorithmConfiguration configuration, int bucketCount, AnagramMetrics metrics,
+                          TempDiskBudget budget) {
         this.tempDirectory = tempDirectory;
+        this.metrics = metrics;
+        this.budget = budget;
         this.fileToProcess = fileToProcess;
+        this.executorService = executorService;
+        this.configuration = configuration;
+        this.bucketCount = bucketCount;
     }
 
     /**
-     * Create small files, divide big file into pieces
+     * Create small files, divide big file into buckets
      *
+     * @return Next file number, buckets are numbered from 1 to the returned number exclusively
      * @throws Exception Throws an exception with message if any exception is thrown.
-     * Throws FileNotFoundException, if the given file cannot be opened.
+     * Throws NoSuchFileException, if the given file cannot be opened.
      * Throws IOException, if any I/O problem occurs.
      */
     public int divide() throws Exception {
-        int nextFileNumber = 1;
-
-        // Read file and create smaller files
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileToProcess))) {
-            String line;
-            int i = 0;
-            PrintWriter writer = new PrintWriter(
-                    Paths.get(tempDirectory.toString(),
-                            FileSystems.getDefault().getSeparator() + nextFileNumber++ + FILE_EXTENSION)
-                            .toFile());
-
-            while ((line = reader.readLine()) != null) {
-                if (++i > THRESHOLD) {
-                    writer.flush();
-                    writer.close();
-                    i = 1;
-
-                    writer = new PrintWriter(
-                            new File(tempDirectory + FileSystems.getDefault().getSeparator() + nextFileNumber++ + FILE_EXTENSION));
-                }
-                writer.println(line);
+        int nextFileNumber = prepare();
+
+        Semaphore inFlight = new Semaphore(getMaxRangesInFlight());
+        List<Future<Void>> futures = new ArrayList<>(getRangeCount());
+        try {
+            for (int range = 0; range < getRangeCount(); range++) {
+                inFlight.acquire();
+                final Callable<Void> rangeDivider = getRangeDivider(range);
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            return rangeDivider.call();
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+                }));
             }
-            writer.flush();
-            writer.close();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException ex) {
+            throw wrap(ex.getCause());
+        } catch (InterruptedException ex) {
+            throw new Exception("Process has been interrupted while executing algorithm.", ex);
+        }
+
+        return nextFileNumber;
+    }
 
-        } catch (FileNotFoundException ex) {
-            throw new Exception(fileToProcess + " does not exist, choose another file", ex);
+    /**
+     * Picks the bucket count and the ranges, aligning every range boundary to a line beginning.
+     * Ranges can be divided after this call
+     *
+     * @return Next file number, buckets are numbered from 1 to the returned number exclusively
+     * @throws Exception Throws an exception with message if any exception is thrown.
+     */
+    public int prepare() throws Exception {
+        return prepare(0);
+    }
+
+    /**
+     * Picks the bucket count and aligns the given count of ranges, like a resumed run which must give the lines
+     * the ordinals of the run it resumes
+     *
+     * @param rangeCount Count of ranges, 0 to pick it from the file size and the threads
+     * @return Next file number, buckets are numbered from 1 to the returned number exclusively
+     * @throws Exception Throws an exception with message if any exception is thrown.
+     */
+    public int prepare(int rangeCount) throws Exception {
+        Path path = Paths.get(fileToProcess);
+        long fileSize = new File(fileToProcess).length();
+
+        try {
+            configuration = configuration.tune(path);
+            if (bucketCount == 0) {
+                bucketCount = configuration.getBucketCount(fileSize);
+            }
+            boundaries = getRangeBoundaries(path, fileSize, rangeCount > 0 ? rangeCount : getRangeCount(fileSize));
+            rangeLineCounts = new long[getRangeCount()];
         } catch (IOException ex) {
-            throw new Exception("An I/O error occurred, please try again", ex);
+            throw wrap(ex);
         }
 
-        return nextFileNumber;
+        return bucketCount + 1;
+    }
+
+    /**
+     * Leaves the lines of the given buckets out of the chunks, like the buckets a resumed run has conquered
+     *
+     * @param skippedBuckets Buckets numbered from 1
+     */
+    public void skipBuckets(BitSet skippedBuckets) {
+        this.skippedBuckets = skippedBuckets;
+    }
+
+    /**
+     * Gives the task writing the chunks of a range, which can run once {@link #prepare()} is done
+     *
+     * @param range Range index starting from 0
+     * @return Task dividing the range
+     */
+    public Callable<Void> getRangeDivider(int range) {
+        return new RangeDivider(Paths.get(fileToProcess), boundaries[range], boundaries[range + 1], range,
+                bucketCount);
+    }
+
+    /**
+     * Gives the ordinal of a line, see {@link #RANGE_ORDINAL_SHIFT}
+     *
+     * @param range Range index starting from 0
+     * @param line Line index inside the range
+     * @return Ordinal of the line
+     */
+    public static long getOrdinal(int range, long line) {
+        return ((long) range << RANGE_ORDINAL_SHIFT) + line;
+    }
+
+    /**
+     * @return Count of lines of the big file, empty lines included, once every range is divided
+     */
+    public long getLineCount() {
+        long lineCount = 0;
+        for (long rangeLineCount : rangeLineCounts) {
+            lineCount += rangeLineCount;
+        }
+        return lineCount;
+    }
+
+    /**
+     * @return Ordinal after the one of the last line, once every range is divided
+     */
+    public long getNextOrdinal() {
+        int lastRange = getRangeCount() - 1;
+        return getOrdinal(lastRange, rangeLineCounts[lastRange]);
+    }
+
+    /**
+     * @return Count of ranges the last division has used, every bucket has one chunk per range
+     */
+    public int getRangeCount() {
+        return boundaries.length - 1;
+    }
+
+    /**
+     * Limits the ranges being divided together, every one keeps a chunk per bucket open.
+     * The temporary disk space is not limited here, the chunks are reserved from the budget as they are written
+     *
+     * @return Count of ranges which may be divided at the same time
+     */
+    public int getMaxRangesInFlight() {
+        return Math.max(1, Math.min(configuration.getThreads(), MAX_OPEN_FILES / bucketCount));
+    }
+
+    /**
+     * Wraps the failure of a range with a message
+     */
+    Exception wrap(Throwable cause) {
+        if (cause instanceof NoSuchFileException) {
+            return new Exception(fileToProcess + " does not exist, choose another file", cause);
+        }
+        return new Exception("An I/O error occurred, please try again", cause);
+    }
+
+    /**
+     * Gives the name of the chunk which a range has written for a bucket
+     *
+     * @param bucketNumber Bucket number starting from 1
+     * @param range Range index starting from 0
+     * @return File name of the chunk
+     */
+    public static String getChunkFileName(int bucketNumber, int range) {
+        return bucketNumber + "_" + range + TEMP_FILE_EXTENSION;
+    }
+
+    /**
+     * Picks a few ranges per thread, so divided ranges can be conquered while the next ones are divided,
+     * unless ranges get too small
+     */
+    private int getRangeCount(long fileSize) {
+        long bySize = Math.max(1, fileSize / MIN_RANGE_SIZE);
+        return (int) Math.min((long) configuration.getThreads() * RANGES_PER_THREAD, bySize);
+    }
+
+    /**
+     * Splits the file into ranges of about the same size, moving every boundary to the next line beginning
+     *
+     * @return Boundaries of the ranges, range i spans from boundaries[i] to boundaries[i + 1]
+     */
+    private static long[] getRangeBoundaries(Path path, long fileSize, int rangeCount) throws IOException {
+        long[] boundaries = new long[rangeCount + 1];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            for (int range = 1; range < rangeCount; range++) {
+                long position = Math.max(boundaries[range - 1], fileSize / rangeCount * range);
+                boundaries[range] = alignToLine(channel, buffer, position, fileSize);
+            }
+        }
+        boundaries[rangeCount] = fileSize;
+        return boundaries;
+    }
+
+    /**
+     * Gives the beginning of the first line starting at or after the given position
+     */
+    private static long alignToLine(FileChannel channel, ByteBuffer buffer, long position, long fileSize)
+            throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        // A position right after a line separator is already a line beginning
+        long index = position - 1;
+        while (index < fileSize) {
+            buffer.clear();
+            int read = channel.read(buffer, index);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return index + i + 1;
+                }
+            }
+            index += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * Routes the words of one range into its chunks
+     */
+    private class RangeDivider implements Callable<Void> {
+        private final Path path;
+        private final long start;
+        private final long end;
+        private final int range;
+        private final int bucketCount;
+
+        RangeDivider(Path path, long start, long end, int range, int bucketCount) {
+            this.path = path;
+            this.start = start;
+            this.end = end;
+            this.range = range;
+            this.bucketCount = bucketCount;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            long startNanos = System.nanoTime();
+            long firstOrdinal = getOrdinal(range, 0);
+            long ordinal = firstOrdinal;
+            try (MappedLineReader reader = new MappedLineReader(path, start, end);
+                 AnagramChunkWriter writer = new AnagramChunkWriter(tempDirectory, range, bucketCount, metrics,
+                         configuration.getSignaturePolicy(), budget, configuration.isCompressTempFiles(),
+                         skippedBuckets)) {
+                while (reader.next()) {
+                    if (reader.getLength() > 0) {
+                        writer.write(ordinal, reader.getBuffer(), reader.getOffset(), reader.getLength());
+                    }
+                    ordinal++;
+                }
+            }
+            rangeLineCounts[range] = ordinal - firstOrdinal;
+            metrics.rangeDivided(end - start, ordinal - firstOrdinal, startNanos);
+            return null;
+        }
     }
 }
@@ -0,0 +1,272 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Threads of one run. Dividing reads the input and writes chunks, so it mostly waits for the disk
+ * and runs on a fixed pool of its own. Conquering mostly hashes and compares words in memory
+ * and runs on a bounded ForkJoinPool, so waiting divide tasks never hold back the grouping and the other way round.
+ * Threads are daemons, a forgotten run does not keep the JVM alive.
+ * Futures of the run are tracked, cancelling the run cancels them, so nothing waits for tasks which never start.
+ * A run given a shared pool runs both kinds of tasks on it through a view of its own, which counts the tasks
+ * of the run and interrupts them when the run is cancelled, and leaves the shutdown of the pool to the owner.
+ * Either way, closing the run waits for its tasks, so none of them writes after the run directory is removed
+ *
+ * @author Oguz Cam
+ */
+public class AnagramExecutor implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(AnagramExecutor.class.getName());
+    // Time given to the running tasks to react to the interrupt when the run is closed
+    private static final long TERMINATION_SECONDS = 30;
+    private static final AtomicInteger RUN_NUMBER = new AtomicInteger();
+
+    private final ExecutorService ioExecutor;
+    private final ExecutorService cpuExecutor;
+    private final ExecutorService cpuPool;
+    private final Set<CompletableFuture<?>> futures = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    /**
+     * Creates the pools of a run
+     *
+     * @param threads Threads of each pool
+     */
+    public AnagramExecutor(int threads) {
+        final int run = RUN_NUMBER.incrementAndGet();
+        final AtomicInteger ioThreadNumber = new AtomicInteger();
+        this.ioExecutor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "anagram-" + run + "-io-" + ioThreadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final AtomicInteger cpuThreadNumber = new AtomicInteger();
+        this.cpuExecutor = new ForkJoinPool(Math.max(1, threads), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("anagram-" + run + "-cpu-" + cpuThreadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, null, true);
+        this.cpuPool = cpuExecutor;
+    }
+
+    /**
+     * Runs on a pool owned by someone else, which is not shut down by {@link #close()}
+     *
+     * @param sharedExecutorService Pool to run all tasks on
+     */
+    public AnagramExecutor(ExecutorService sharedExecutorService) {
+        this.ioExecutor = new RunTasks(sharedExecutorService);
+        this.cpuExecutor = ioExecutor;
+        this.cpuPool = sharedExecutorService;
+    }
+
+    /**
+     * @return Executor of the tasks reading the input and writing chunks
+     */
+    public ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * @return Executor of the tasks grouping words
+     */
+    public ExecutorService getCpuExecutor() {
+        return cpuExecutor;
+    }
+
+    /**
+     * @return Pool the grouping tasks are queued on, shared with other runs or of this run only
+     */
+    public ExecutorService getCpuPool() {
+        return cpuPool;
+    }
+
+    /**
+     * Tracks a future of the run, so that cancelling the run completes it
+     *
+     * @param future Future to track
+     * @return The future
+     */
+    public <T extends CompletableFuture<?>> T track(T future) {
+        if (cancelled) {
+            future.cancel(false);
+        } else {
+            futures.add(future);
+            future.whenComplete((ignored, ex) -> futures.remove(future));
+        }
+        return future;
+    }
+
+    /**
+     * Cancels the tracked futures and interrupts the running tasks of the run.
+     * Waiting callers get a {@link CancellationException} instead of waiting for tasks which never run
+     */
+    public void cancel() {
+        cancelled = true;
+        for (CompletableFuture<?> future : futures) {
+            future.cancel(false);
+        }
+        ioExecutor.shutdownNow();
+        cpuExecutor.shutdownNow();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Ends the run: cancels whatever is still pending and waits for the tasks of the run to end,
+     * so no task writes into the run directory after it has been removed. A shared pool keeps running.
+     * If the calling thread is interrupted while waiting, it stops waiting and keeps its interrupt flag
+     */
+    @Override
+    public void close() {
+        for (CompletableFuture<?> future : futures) {
+            future.cancel(false);
+        }
+        ioExecutor.shutdownNow();
+        cpuExecutor.shutdownNow();
+        try {
+            if (!ioExecutor.awaitTermination(TERMINATION_SECONDS, TimeUnit.SECONDS)
+                    || !cpuExecutor.awaitTermination(TERMINATION_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warning("Tasks of the run are still running after " + TERMINATION_SECONDS + " seconds");
+            }
+        } catch (InterruptedException ex) {
+            LOG.warning("Interrupted while waiting for the tasks of the run to stop");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Tasks of one run on a shared pool. Shutting it down only concerns the tasks of the run: the running ones
+     * are interrupted, the queued ones are cancelled when their turn comes instead of running,
+     * and it terminates once none of them is left on the pool
+     */
+    private static final class RunTasks extends AbstractExecutorService {
+        private final ExecutorService pool;
+        // Threads running tasks of the run and tasks handed to the pool which have not ended yet, guarded by this
+        private final Set<Thread> running = new HashSet<>();
+        private int pending;
+        private volatile boolean shutdown;
+
+        RunTasks(ExecutorService pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            synchronized (this) {
+                if (shutdown) {
+                    throw new RejectedExecutionException("The run has ended");
+                }
+                pending++;
+            }
+            try {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runTask(command);
+                    }
+                });
+            } catch (RuntimeException ex) {
+                taskEnded();
+                throw ex;
+            }
+        }
+
+        private void runTask(Runnable command) {
+            Thread thread = Thread.currentThread();
+            boolean cancelled;
+            synchronized (this) {
+                cancelled = shutdown;
+                if (!cancelled) {
+                    running.add(thread);
+                }
+            }
+            try {
+                if (cancelled) {
+                    if (command instanceof Future) {
+                        ((Future<?>) command).cancel(false);
+                    }
+                } else {
+                    command.run();
+                }
+            } finally {
+                synchronized (this) {
+                    running.remove(thread);
+                    if (shutdown) {
+                        // The interrupt of the run must not reach the next task of the pool thread
+                        Thread.interrupted();
+                    }
+                    taskEnded();
+                }
+            }
+        }
+
+        private synchronized void taskEnded() {
+            if (--pending == 0) {
+                notifyAll();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public synchronized List<Runnable> shutdownNow() {
+            shutdown = true;
+            for (Thread thread : running) {
+                thread.interrupt();
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public synchronized boolean isTerminated() {
+            return shutdown && pending == 0;
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (pending > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+
+/**
+ * One anagram class inside a run file: the line index of its first occurrence and its words.
+ * A group of one word keeps only the word, further words go into a list which is sorted once,
+ * when the words are asked for. Groups read from runs are sorted already and never sorted again.
+ * Runs are binary, see {@link #write(TempFileOutput, long)}
+ *
+ * @author Oguz Cam
+ */
+public class AnagramGroup {
+    private final long ordinal;
+    // The only word of the group until another one is added, then every word is in the list
+    private String firstWord;
+    private List<String> words;
+    private boolean sorted = true;
+
+    public AnagramGroup(long ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * @param sortedWords Words sorted lexicographically without duplicates, kept by the group
+     */
+    private AnagramGroup(long ordinal, List<String> sortedWords) {
+        this.ordinal = ordinal;
+        this.words = sortedWords;
+    }
+
+    public long getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Adds a word, a word already in the group is dropped once the words are sorted
+     *
+     * @param word Word to add
+     */
+    public void add(String word) {
+        if (words == null && firstWord == null) {
+            firstWord = word;
+            return;
+        }
+        if (words == null) {
+            words = new ArrayList<>(4);
+            words.add(firstWord);
+            firstWord = null;
+        }
+        sorted = sorted && (words.isEmpty() || words.get(words.size() - 1).compareTo(word) < 0);
+        words.add(word);
+    }
+
+    /**
+     * @return True if the group has more than one distinct word
+     */
+    public boolean hasAnagrams() {
+        return getWords().size() > 1;
+    }
+
+    /**
+     * @return Words of the group sorted lexicographically without duplicates, not to be modified
+     */
+    public List<String> getWords() {
+        if (words == null) {
+            return firstWord == null ? Collections.<String>emptyList() : Collections.singletonList(firstWord);
+        }
+        if (!sorted) {
+            Collections.sort(words);
+            int distinct = 0;
+            for (int i = 0; i < words.size(); i++) {
+                if (distinct == 0 || !words.get(distinct - 1).equals(words.get(i))) {
+                    words.set(distinct++, words.get(i));
+                }
+            }
+            words.subList(distinct, words.size()).clear();
+            sorted = true;
+        }
+        return Collections.unmodifiableList(words);
+    }
+
+    /**
+     * @return Copy of the words of the group sorted lexicographically, as they are written to the output
+     */
+    public List<String> getSortedWords() {
+        return new ArrayList<>(getWords());
+    }
+
+    /**
+     * Writes the group into a run: the gap to the ordinal of the previous group, the word count
+     * and the sorted words, every word as the length of the prefix it shares with the previous word,
+     * the length of the rest and the rest
+     *
+     * @param output Run to write into
+     * @param previousOrdinal Ordinal of the previous group of the run, 0 for the first one
+     * @throws IOException May throw IOException while writing
+     */
+    void write(TempFileOutput output, long previousOrdinal) throws IOException {
+        write(output, ordinal, previousOrdinal, getWords());
+    }
+
+    /**
+     * Writes a group kept elsewhere in the format of {@link #write(TempFileOutput, long)}
+     *
+     * @param output Run to write into
+     * @param ordinal Ordinal of the group
+     * @param previousOrdinal Ordinal of the previous group of the run, 0 for the first one
+     * @param sortedWords Words of the group sorted lexicographically
+     * @throws IOException May throw IOException while writing
+     */
+    static void write(TempFileOutput output, long ordinal, long previousOrdinal, List<String> sortedWords)
+            throws IOException {
+        output.writeVarLong(ordinal - previousOrdinal);
+        output.writeVarLong(sortedWords.size());
+        byte[] previous = new byte[0];
+        for (String word : sortedWords) {
+            byte[] bytes = word.getBytes(CHARSET);
+            int prefix = 0;
+            int limit = Math.min(previous.length, bytes.length);
+            while (prefix < limit && previous[prefix] == bytes[prefix]) {
+                prefix++;
+            }
+            output.writeVarLong(prefix);
+            output.writeVarLong(bytes.length - prefix);
+            output.write(bytes, prefix, bytes.length - prefix);
+            previous = bytes;
+        }
+    }
+
+    /**
+     * Reads a group written by {@link #write(TempFileOutput, long)}
+     *
+     * @param input Run to read from
+     * @param previousOrdinal Ordinal of the previous group of the run, 0 for the first one
+     * @return Read group, its words in sorted order
+     * @throws IOException May throw IOException while reading
+     */
+    static AnagramGroup read(TempFileInput input, long previousOrdinal) throws IOException {
+        long ordinal = previousOrdinal + input.readVarLong();
+        int count = input.readVarInt();
+        List<String> words = new ArrayList<>(count);
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < count; i++) {
+            int prefix = input.readVarInt();
+            int length = prefix + input.readVarInt();
+            if (bytes.length < length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length, bytes.length * 2));
+            }
+            // The shared prefix is still in the buffer from the previous word
+            input.readFully(bytes, prefix, length - prefix);
+            words.add(new String(bytes, 0, length, CHARSET));
+        }
+        return new AnagramGroup(ordinal, words);
+    }
+}
@@ -0,0 +1,39 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * Receives the anagram groups as they are finalized, in insertion order.
+ * The words of a group are sorted lexicographically.
+ *
+ * @author Oguz Cam
+ */
+public interface AnagramGroupSink extends Closeable {
+
+    /**
+     * Receives one group
+     *
+     * @param words Sorted words of the group, at least two
+     * @throws IOException May throw IOException while passing the group on
+     */
+    void accept(List<String> words) throws IOException;
+
+    /**
+     * Called after the last group
+     *
+     * @throws IOException May throw IOException while flushing
+     */
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * Writes every group as a line of space separated words into the channel, the channel is closed with the sink
+     */
+    static AnagramGroupSink of(WritableByteChannel channel) {
+        return new ChannelGroupSink(channel);
+    }
+}
@@ -0,0 +1,328 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+
+/**
+ * Open addressing table grouping the words of a bucket by their signatures, without objects per word or group.
+ * Groups are numbered in insertion order and kept in parallel arrays: the first line index, the signature,
+ * its hash and its first member. Packed signatures are kept as they are, sorted ones are kept in the arena
+ * and referred to by a negative high word, which packed signatures never have.
+ * Words are kept as length prefixed UTF-8 in an off-heap arena, the members of a group are linked
+ * in arrival order through an int array, so a word is appended without walking its group.
+ * Each group is sorted once when its words are asked for, duplicates are dropped then.
+ * The heap needed per word is about {@value AnagramAlgorithmConfiguration#GROUPING_TABLE_LINE_OVERHEAD} bytes
+ * in the worst case of every word being a group of its own.
+ * One instance must be used by one thread at a time.
+ *
+ * @author Oguz Cam
+ */
+class AnagramGroupTable {
+    // Buckets of a pipelined run are grouped at the same time, so empty tables should stay small
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_ARENA_SIZE = 1024;
+    private static final int NONE = -1;
+
+    // Group numbers plus one of the slots, 0 for free slots
+    private int[] slots;
+    private long[] ordinals;
+    private long[] highs;
+    private long[] lows;
+    private int[] hashes;
+    private int[] firstMembers;
+    private int[] lastMembers;
+    // True for the groups having a word other than their first one
+    private boolean[] anagrams;
+    private int groupCount;
+
+    // Arena offsets of the words and the next members of their groups
+    private int[] wordOffsets;
+    private int[] nextMembers;
+    private int wordCount;
+
+    private ByteBuffer arena;
+    private byte[] wordBytes = new byte[64];
+
+    AnagramGroupTable() {
+        clear();
+    }
+
+    /**
+     * Adds a word to the group of its signature. A word repeating the last one of its group is not added again,
+     * other duplicates are dropped when the group is sorted
+     *
+     * @param signature Signature computed on the word, see {@link AnagramSignature#getDecodedWord()}
+     * @param ordinal Line index of the word, the group keeps the one of its first word
+     * @param bytes Buffer holding the UTF-8 word
+     * @param offset Index of the first byte of the word
+     * @param length Byte length of the word
+     */
+    void add(AnagramSignature signature, long ordinal, byte[] bytes, int offset, int length) {
+        if (!isAscii(bytes, offset, length)) {
+            // Malformed input is kept as its replacement characters, like the decoded words are
+            bytes = signature.getDecodedWord().toString().getBytes(CHARSET);
+            offset = 0;
+            length = bytes.length;
+        }
+
+        int mask = slots.length - 1;
+        int slot = signature.hash() & mask;
+        int group;
+        while ((group = slots[slot] - 1) != NONE) {
+            if (hashes[group] == signature.hash() && matches(group, signature)) {
+                append(group, bytes, offset, length);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        group = addGroup(signature, ordinal);
+        firstMembers[group] = addWord(bytes, offset, length);
+        lastMembers[group] = firstMembers[group];
+        slots[slot] = group + 1;
+        if (groupCount * 2 > slots.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * @return Count of the groups, numbered from 0 in insertion order
+     */
+    int getGroupCount() {
+        return groupCount;
+    }
+
+    long getOrdinal(int group) {
+        return ordinals[group];
+    }
+
+    /**
+     * @return True if the group has more than one distinct word
+     */
+    boolean hasAnagrams(int group) {
+        return anagrams[group];
+    }
+
+    /**
+     * @return Words of the group sorted lexicographically without duplicates
+     */
+    List<String> getSortedWords(int group) {
+        List<String> words = new ArrayList<>();
+        for (int word = firstMembers[group]; word != NONE; word = nextMembers[word]) {
+            words.add(getWord(word));
+        }
+        if (anagrams[group]) {
+            Collections.sort(words);
+            int distinct = 1;
+            for (int i = 1; i < words.size(); i++) {
+                if (!words.get(distinct - 1).equals(words.get(i))) {
+                    words.set(distinct++, words.get(i));
+                }
+            }
+            words.subList(distinct, words.size()).clear();
+        }
+        return words;
+    }
+
+    /**
+     * @return Group as an object, for the callers keeping groups around
+     */
+    AnagramGroup toGroup(int group) {
+        AnagramGroup anagramGroup = new AnagramGroup(ordinals[group]);
+        for (String word : getSortedWords(group)) {
+            anagramGroup.add(word);
+        }
+        return anagramGroup;
+    }
+
+    /**
+     * Removes every group and gives the memory back, the arena is freed once it is collected
+     */
+    void clear() {
+        slots = new int[INITIAL_CAPACITY * 2];
+        ordinals = new long[INITIAL_CAPACITY];
+        highs = new long[INITIAL_CAPACITY];
+        lows = new long[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        firstMembers = new int[INITIAL_CAPACITY];
+        lastMembers = new int[INITIAL_CAPACITY];
+        anagrams = new boolean[INITIAL_CAPACITY];
+        groupCount = 0;
+        wordOffsets = new int[INITIAL_CAPACITY];
+        nextMembers = new int[INITIAL_CAPACITY];
+        wordCount = 0;
+        arena = ByteBuffer.allocateDirect(INITIAL_ARENA_SIZE);
+    }
+
+    private boolean matches(int group, AnagramSignature signature) {
+        if (signature.isPacked()) {
+            return highs[group] == signature.getHigh() && lows[group] == signature.getLow();
+        }
+        if (highs[group] >= 0 || lows[group] != signature.getLength()) {
+            return false;
+        }
+        int position = (int) -(highs[group] + 1);
+        byte[] buffer = signature.getBuffer();
+        for (int i = 0; i < signature.getLength(); i++) {
+            if (arena.get(position + i) != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the word after the last member of the group, unless it repeats that member
+     */
+    private void append(int group, byte[] bytes, int offset, int length) {
+        int last = lastMembers[group];
+        if (equals(last, bytes, offset, length)) {
+            return;
+        }
+        int added = addWord(bytes, offset, length);
+        nextMembers[last] = added;
+        lastMembers[group] = added;
+        anagrams[group] = anagrams[group] || !equals(firstMembers[group], bytes, offset, length);
+    }
+
+    private boolean equals(int word, byte[] bytes, int offset, int length) {
+        int position = wordOffsets[word];
+        int wordLength = readLength(position);
+        if (wordLength != length) {
+            return false;
+        }
+        position += lengthSize(wordLength);
+        for (int i = 0; i < length; i++) {
+            if (arena.get(position + i) != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int addGroup(AnagramSignature signature, long ordinal) {
+        if (groupCount == ordinals.length) {
+            int capacity = grow(groupCount);
+            ordinals = Arrays.copyOf(ordinals, capacity);
+            highs = Arrays.copyOf(highs, capacity);
+            lows = Arrays.copyOf(lows, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            firstMembers = Arrays.copyOf(firstMembers, capacity);
+            lastMembers = Arrays.copyOf(lastMembers, capacity);
+            anagrams = Arrays.copyOf(anagrams, capacity);
+        }
+        int group = groupCount++;
+        ordinals[group] = ordinal;
+        anagrams[group] = false;
+        hashes[group] = signature.hash();
+        if (signature.isPacked()) {
+            highs[group] = signature.getHigh();
+            lows[group] = signature.getLow();
+        } else {
+            ensureArena(signature.getLength());
+            highs[group] = -(long) arena.position() - 1;
+            lows[group] = signature.getLength();
+            arena.put(signature.getBuffer(), 0, signature.getLength());
+        }
+        return group;
+    }
+
+    private int addWord(byte[] bytes, int offset, int length) {
+        if (wordCount == wordOffsets.length) {
+            int capacity = grow(wordCount);
+            wordOffsets = Arrays.copyOf(wordOffsets, capacity);
+            nextMembers = Arrays.copyOf(nextMembers, capacity);
+        }
+        ensureArena(lengthSize(length) + length);
+        int word = wordCount++;
+        wordOffsets[word] = arena.position();
+        nextMembers[word] = NONE;
+        // The length is a varint, one byte for words shorter than 128 bytes
+        int value = length;
+        while ((value & ~0x7F) != 0) {
+            arena.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        arena.put((byte) value);
+        arena.put(bytes, offset, length);
+        return word;
+    }
+
+    private String getWord(int word) {
+        int position = wordOffsets[word];
+        int length = readLength(position);
+        position += lengthSize(length);
+        if (wordBytes.length < length) {
+            wordBytes = new byte[Math.max(length, wordBytes.length * 2)];
+        }
+        arena.get(position, wordBytes, 0, length);
+        return new String(wordBytes, 0, length, CHARSET);
+    }
+
+    private int readLength(int position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = arena.get(position++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int lengthSize(int length) {
+        int size = 1;
+        while ((length >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int group = 0; group < groupCount; group++) {
+            int slot = hashes[group] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = group + 1;
+        }
+        slots = newSlots;
+    }
+
+    /**
+     * Doubles the arena when the bytes do not fit, the old arena is freed once it is collected
+     */
+    private void ensureArena(int bytes) {
+        if (arena.remaining() < bytes) {
+            long capacity = Math.max((long) arena.capacity() * 2, (long) arena.position() + bytes);
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Words of the bucket exceed the arena, please lower the threshold");
+            }
+            ByteBuffer newArena = ByteBuffer.allocateDirect((int) capacity);
+            arena.flip();
+            newArena.put(arena);
+            arena = newArena;
+        }
+    }
+
+    private static int grow(int capacity) {
+        return capacity + (capacity >> 1);
+    }
+
+    private static boolean isAscii(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,113 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Groups anagram words in one pass, without any temporary file.
+ * Groups are kept in insertion order by their signatures and emitted straight to a sink.
+ * Reading stops once the heap the words are estimated to take exceeds the budget,
+ * see {@link AnagramAlgorithmConfiguration#estimateInMemoryHeap(long, long)}.
+ * The grouped words can then be spilled to chunks.
+ *
+ * @author Oguz Cam
+ */
+public class AnagramInMemoryGrouper {
+    private final Map<SignatureKey, AnagramGroup> map = new LinkedHashMap<>();
+    private final AnagramSignature signature;
+    private final long budget;
+    private long nextOrdinal;
+    private long bytesRead;
+    private long estimatedHeap;
+
+    /**
+     * @param budget Heap bytes the grouped words may take, Long.MAX_VALUE to read sources completely
+     */
+    public AnagramInMemoryGrouper(long budget) {
+        this(budget, SignaturePolicy.EXACT);
+    }
+
+    /**
+     * @param budget Heap bytes the grouped words may take, Long.MAX_VALUE to read sources completely
+     * @param policy Policy deciding which words are anagrams
+     */
+    public AnagramInMemoryGrouper(long budget, SignaturePolicy policy) {
+        this.budget = budget;
+        this.signature = new AnagramSignature(policy);
+    }
+
+    /**
+     * Reads the words of the source into the map
+     *
+     * @param source Source to read from
+     * @return True if the source is exhausted, false if reading stopped because of the budget
+     * @throws IOException Throws exception when IOException occurred
+     */
+    public boolean addAll(WordSource source) throws IOException {
+        while (estimatedHeap <= budget) {
+            if (!source.next()) {
+                return true;
+            }
+            if (source.getLength() > 0
+                    && !signature.compute(source.getBuffer(), source.getOffset(), source.getLength()).isEmpty()) {
+                SignatureKey key = signature.toKey();
+                AnagramGroup group = map.get(key);
+                if (group == null) {
+                    group = new AnagramGroup(nextOrdinal);
+                    map.put(key, group);
+                }
+                group.add(signature.getDecodedWord().toString());
+            }
+            bytesRead += source.getLength() + 1;
+            estimatedHeap += AnagramAlgorithmConfiguration.estimateInMemoryHeap(source.getLength() + 1, 1);
+            nextOrdinal++;
+        }
+        return false;
+    }
+
+    /**
+     * Emits the groups having anagram words in insertion order
+     *
+     * @param sink Sink to receive the groups, it is not closed
+     * @throws IOException May throw IOException from the sink
+     */
+    public void emit(AnagramGroupSink sink) throws IOException {
+        for (AnagramGroup group : map.values()) {
+            if (group.hasAnagrams()) {
+                sink.accept(group.getSortedWords());
+            }
+        }
+    }
+
+    /**
+     * Writes every grouped word into the chunks of a range and clears the map.
+     * Members are written with the first line index of their group, groups in insertion order,
+     * so conquering the chunks gives the same groups again
+     *
+     * @param writer Writer of the range
+     * @throws IOException May throw IOException while writing the chunks
+     */
+    void spill(AnagramChunkWriter writer) throws IOException {
+        for (AnagramGroup group : map.values()) {
+            for (String word : group.getWords()) {
+                writer.write(group.getOrdinal(), word);
+            }
+        }
+        map.clear();
+    }
+
+    /**
+     * @return Line index of the next word to read
+     */
+    public long getNextOrdinal() {
+        return nextOrdinal;
+    }
+
+    /**
+     * @return Bytes of the words read so far, line separators included
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+}
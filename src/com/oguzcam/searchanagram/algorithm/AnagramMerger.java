@@ -1,133 +1,143 @@
 package com.oguzcam.searchanagram.algorithm;
 
-import java.io.*;
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 
 /**
- * Gets two input files, finds anagrams between them and puts them to output file.
- * Old input files will be removed
+ * Gets the conquered buckets, every one ordered by first line index, and merges them in one streaming k-way pass
+ * into the sink, so the groups are emitted in insertion order. Old input files will be removed
  *
  * @author Oguz Cam
  */
 public class AnagramMerger implements Callable<Void> {
-    private final Path inputPath1;
-    private final Path inputPath2;
-    private final Path outputPath;
+    private static final Comparator<AnagramRunReader> BY_ORDINAL = new Comparator<AnagramRunReader>() {
+        @Override
+        public int compare(AnagramRunReader r1, AnagramRunReader r2) {
+            return Long.compare(r1.peek().getOrdinal(), r2.peek().getOrdinal());
+        }
+    };
+
+    private final List<Path> inputPaths;
+    private final AnagramGroupSink sink;
+    private final AnagramMetrics metrics;
+    private final boolean compressed;
+    private volatile boolean cancelled;
 
     /**
-     * Gets input and output paths to do the operation,
-     * Given input files will be removed and merged into output file
+     * Gets input paths and the sink to do the operation,
+     * Given input files will be removed and merged into the sink
      *
-     * @param inputPath1 First conquered input path
-     * @param inputPath2 Second conquered input path
-     * @param outputPath Output path to write into merged result
+     * @param inputPaths Conquered input paths, every one ordered by first line index
+     * @param sink Sink to receive merged result, it is not closed by the merger
      */
-    public AnagramMerger(Path inputPath1, Path inputPath2, Path outputPath) {
-        this.inputPath1 = inputPath1;
-        this.inputPath2 = inputPath2;
-        this.outputPath = outputPath;
+    public AnagramMerger(List<Path> inputPaths, AnagramGroupSink sink) {
+        this(inputPaths, sink, new AnagramMetrics());
     }
 
-    @Override
-    public Void call() throws Exception {
-        // Create output file
-        Files.createFile(outputPath);
-
-        writeToFile(inputPath1, inputPath2, true, false);
-        writeToFile(inputPath2, inputPath1, false, true);
-
-        deleteInputFiles();
-
-        return null;
+    /**
+     * @param inputPaths Conquered input paths, every one ordered by first line index
+     * @param sink Sink to receive merged result, it is not closed by the merger
+     * @param metrics Metrics of the run, counting the merged groups and the read runs
+     */
+    public AnagramMerger(List<Path> inputPaths, AnagramGroupSink sink, AnagramMetrics metrics) {
+        this(inputPaths, sink, metrics, false);
     }
 
     /**
-     * Compare words from path1 with path2 and add words to outputPath
-     *
-     * @param path1 Base path
-     * @param path2 Path for comparison
-     * @param addMatches If there is a match, add them together and write to the file
-     * @param append Append to output path
-     * @throws Exception May throw exception during I/O operation
+     * @param inputPaths Conquered input paths, every one ordered by first line index
+     * @param sink Sink to receive merged result, it is not closed by the merger
+     * @param metrics Metrics of the run, counting the merged groups and the read runs
+     * @param compressed True if the runs have been written compressed
      */
-    private void writeToFile(Path path1, Path path2, boolean addMatches, boolean append) throws Exception {
-        // Read from input files and write to output file
-        try (BufferedReader reader1 = new BufferedReader(new FileReader(path1.toFile()));
-             PrintWriter writer = new PrintWriter(new FileOutputStream(outputPath.toFile(), append))) {
-
-            // To go to the beginning of the file, inputStream is necessary
-            FileInputStream inputStream = new FileInputStream(path2.toFile());
-            BufferedReader reader2 = null;
-            String lineFromReader1, lineFromReader2;
-            HashSet<String> anagramWords;
+    public AnagramMerger(List<Path> inputPaths, AnagramGroupSink sink, AnagramMetrics metrics, boolean compressed) {
+        this.inputPaths = inputPaths;
+        this.sink = sink;
+        this.metrics = metrics;
+        this.compressed = compressed;
+    }
 
-            while ((lineFromReader1 = reader1.readLine()) != null) {
-                anagramWords = new HashSet<>();
-                anagramWords.addAll(Arrays.asList(lineFromReader1.split(" ")));
-                String searchPattern = getPattern(lineFromReader1);
-                if (searchPattern != null) {
-                    inputStream.getChannel().position(0);
-                    reader2 = new BufferedReader(new InputStreamReader(inputStream));
-                    while ((lineFromReader2 = reader2.readLine()) != null) {
-                        String foundPattern = getPattern(lineFromReader2);
-                        if (searchPattern.equals(foundPattern)) {
-                            if (addMatches) {
-                                anagramWords.addAll(Arrays.asList(lineFromReader2.split(" ")));
-                            } else {
-                                anagramWords = null;
-                            }
-                            break;
-                        }
-                    }
+    @Override
+    public Void call() throws Exception {
+        long startNanos = System.nanoTime();
+        PriorityQueue<AnagramRunReader> heap = new PriorityQueue<>(Math.max(1, inputPaths.size()), BY_ORDINAL);
+        try {
+            for (Path inputPath : inputPaths) {
+                offer(heap, new AnagramRunReader(inputPath, compressed));
+            }
 
-                    if (anagramWords != null) {
-                        for (String word : anagramWords) {
-                            writer.print(word + " ");
-                        }
-                        writer.println();
-                    }
+            while (!heap.isEmpty()) {
+                if (cancelled) {
+                    throw new CancellationException();
                 }
-            }
-            // Flush and close the output file
-            writer.flush();
-            writer.close();
+                AnagramRunReader reader = heap.poll();
+                AnagramGroup group;
+                try {
+                    group = reader.next();
+                } catch (IOException | RuntimeException ex) {
+                    // The reader is out of the heap, so the finally block would not close it
+                    reader.close();
+                    throw ex;
+                }
+                offer(heap, reader);
 
-            // Close reading resources
-            if (reader2 != null) {
-                reader2.close();
+                sink.accept(group.getSortedWords());
+                metrics.groupMerged();
             }
-            inputStream.close();
+        } catch (CancellationException ex) {
+            throw new Exception("Process has been cancelled.", ex);
         } catch (Exception ex) {
             throw new Exception("An I/O error occurred while merging process", ex);
+        } finally {
+            for (AnagramRunReader reader : heap) {
+                reader.close();
+            }
         }
+
+        metrics.runsMerged(deleteInputFiles(), startNanos);
+
+        return null;
     }
 
     /**
-     * Gets first word and gives pattern as String which consists of sorted chars of the word.
-     *
-     * @param line Line of the file
-     * @return Returns sorted charArray as String
+     * Stops the merge before its next group, the call merging throws an Exception and keeps the input files
      */
-    private String getPattern(String line) {
-        if (!line.trim().isEmpty()) {
-            char[] charArray = line.split(" ", 2)[0].toCharArray();
-            Arrays.sort(charArray);
-            return String.valueOf(charArray);
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Puts the reader back into the heap or closes it when its run is exhausted
+     */
+    private static void offer(PriorityQueue<AnagramRunReader> heap, AnagramRunReader reader) throws IOException {
+        if (reader.peek() != null) {
+            heap.add(reader);
+        } else {
+            reader.close();
         }
-        return null;
     }
 
     /**
      * Delete input files after merge process
      *
+     * @return Bytes of the removed files
      * @throws IOException May throw IOException while trying to remove the files
      */
-    private void deleteInputFiles() throws IOException {
-        Files.deleteIfExists(inputPath1);
-        Files.deleteIfExists(inputPath2);
+    private long deleteInputFiles() throws IOException {
+        long bytes = 0;
+        for (Path inputPath : inputPaths) {
+            if (Files.exists(inputPath)) {
+                bytes += Files.size(inputPath);
+            }
+            Files.deleteIfExists(inputPath);
+        }
+        return bytes;
     }
 }
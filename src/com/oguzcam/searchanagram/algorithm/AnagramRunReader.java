@@ -0,0 +1,68 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Sequential reader of a run file, keeps the next group visible so that runs can be merged through a heap
+ *
+ * @author Oguz Cam
+ */
+public class AnagramRunReader implements Closeable {
+    private final Path path;
+    private final TempFileInput input;
+    private AnagramGroup head;
+
+    public AnagramRunReader(Path path) throws IOException {
+        this(path, false);
+    }
+
+    /**
+     * @param path Run file
+     * @param compressed True if the run has been written compressed
+     * @throws IOException May throw IOException while opening the run or reading its first group
+     */
+    public AnagramRunReader(Path path, boolean compressed) throws IOException {
+        this.path = path;
+        this.input = new TempFileInput(path, compressed);
+        try {
+            advance();
+        } catch (IOException | RuntimeException ex) {
+            input.close();
+            throw ex;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return Next group of the run without consuming it, null if the run is exhausted
+     */
+    public AnagramGroup peek() {
+        return head;
+    }
+
+    /**
+     * Consumes the next group of the run
+     *
+     * @return Next group, null if the run is exhausted
+     * @throws IOException May throw IOException while reading the following group
+     */
+    public AnagramGroup next() throws IOException {
+        AnagramGroup current = head;
+        advance();
+        return current;
+    }
+
+    private void advance() throws IOException {
+        head = input.hasMore() ? AnagramGroup.read(input, head == null ? 0 : head.getOrdinal()) : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
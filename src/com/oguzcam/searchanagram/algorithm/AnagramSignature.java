@@ -0,0 +1,341 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+
+/**
+ * Computes anagram signatures without creating garbage per word.
+ * Lowercase ASCII words are counted into a packed 128-bit key, 4 bits per letter.
+ * Longer or other words are counting sorted into a reused buffer, Latin-1 words one byte per character,
+ * the remaining ones two bytes per character, or three bytes per code point if they have supplementary characters,
+ * so surrogate pairs are never split. The buffer is only copied when a key is requested.
+ * Encoded words are read straight from byte buffers, ASCII bytes are widened without any decoder.
+ * Words are mapped by a {@link SignaturePolicy} first, which maps Latin-1 words through a table without garbage.
+ * One instance must be used by one thread at a time.
+ *
+ * @author Oguz Cam
+ */
+public final class AnagramSignature {
+    private static final int LETTERS = 26;
+    private static final int BITS_PER_LETTER = 4;
+    private static final int MAX_PACKED_COUNT = (1 << BITS_PER_LETTER) - 1;
+    private static final int LETTERS_IN_LOW = Long.SIZE / BITS_PER_LETTER;
+
+    private static final byte LATIN_1 = 1;
+    private static final byte UTF_16 = 2;
+    private static final byte CODE_POINTS = 3;
+
+    private final CharsetDecoder decoder = CHARSET.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final SignaturePolicy policy;
+    private final int[] latin1Counts = new int[256];
+    private CharBuffer mapped = CharBuffer.allocate(32);
+    private int[] codePoints = new int[16];
+    private CharBuffer decoded = CharBuffer.allocate(32);
+    private char[] sortBuffer = new char[32];
+    private byte[] buffer = new byte[64];
+    private int length;
+    private boolean packed;
+    private long high;
+    private long low;
+    private int hash;
+
+    /**
+     * Creates a signature counting every code point as it is
+     */
+    public AnagramSignature() {
+        this(SignaturePolicy.EXACT);
+    }
+
+    /**
+     * @param policy Policy deciding which words are anagrams
+     */
+    public AnagramSignature(SignaturePolicy policy) {
+        this.policy = policy;
+    }
+
+    public SignaturePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Computes the signature of the given word, the previous signature is overwritten
+     *
+     * @param word Word to compute signature of
+     * @return This instance to chain hash or key access
+     */
+    public AnagramSignature compute(CharSequence word) {
+        if (policy != SignaturePolicy.EXACT) {
+            mapped = policy.map(word, mapped);
+            word = mapped;
+        }
+        int wordLength = word.length();
+        if (!computePacked(word, wordLength)) {
+            computeSorted(word, wordLength);
+        }
+        return this;
+    }
+
+    /**
+     * Computes the signature of the encoded word in the given byte slice, the previous signature is overwritten
+     *
+     * @param bytes Buffer holding the word
+     * @param offset Index of the first byte of the word
+     * @param length Byte length of the word
+     * @return This instance to chain hash or key access
+     */
+    public AnagramSignature compute(ByteBuffer bytes, int offset, int length) {
+        if (decoded.capacity() < length) {
+            decoded = CharBuffer.allocate(Math.max(length, decoded.capacity() * 2));
+        }
+        decoded.clear();
+        for (int i = 0; i < length; i++) {
+            byte b = bytes.get(offset + i);
+            if (b < 0) {
+                decodeMultiByte(bytes, offset, length);
+                break;
+            }
+            decoded.put((char) b);
+        }
+        decoded.flip();
+        return compute(decoded);
+    }
+
+    /**
+     * @return Characters of the word given to the last byte slice computation, valid until the next one
+     */
+    public CharSequence getDecodedWord() {
+        return decoded;
+    }
+
+    private void decodeMultiByte(ByteBuffer bytes, int offset, int length) {
+        ByteBuffer input = bytes.duplicate();
+        input.limit(offset + length).position(offset);
+        decoded.clear();
+        decoder.reset();
+        decoder.decode(input, decoded, true);
+        decoder.flush(decoded);
+    }
+
+    /**
+     * @return Hash of the last computed signature, same as the hash of its key
+     */
+    public int hash() {
+        return hash;
+    }
+
+    /**
+     * @return True if the policy has left nothing of the last computed word, such a word is an anagram of nothing
+     */
+    public boolean isEmpty() {
+        return packed ? (high | low) == 0 : length <= 1;
+    }
+
+    /**
+     * Compares the last computed signatures of two instances without copying them
+     *
+     * @param other Signature computed on another word with the same policy
+     * @return True if the two words are anagrams of each other
+     */
+    public boolean matches(AnagramSignature other) {
+        if (hash != other.hash || packed != other.packed) {
+            return false;
+        }
+        if (packed) {
+            return high == other.high && low == other.low;
+        }
+        return Arrays.equals(buffer, 0, length, other.buffer, 0, other.length);
+    }
+
+    /**
+     * @return True if the last computed signature is kept as packed letter counts
+     */
+    boolean isPacked() {
+        return packed;
+    }
+
+    long getHigh() {
+        return high;
+    }
+
+    long getLow() {
+        return low;
+    }
+
+    /**
+     * @return Sorted characters of the last computed signature if it is not packed, valid until the next one
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * @return Immutable copy of the last computed signature
+     */
+    public SignatureKey toKey() {
+        return packed
+                ? new SignatureKey(high, low, null, hash)
+                : new SignatureKey(0, 0, Arrays.copyOf(buffer, length), hash);
+    }
+
+    private boolean computePacked(CharSequence word, int wordLength) {
+        long h = 0, l = 0;
+        for (int i = 0; i < wordLength; i++) {
+            int letter = word.charAt(i) - 'a';
+            if (letter < 0 || letter >= LETTERS) {
+                return false;
+            }
+            if (letter < LETTERS_IN_LOW) {
+                int shift = letter * BITS_PER_LETTER;
+                if (((l >>> shift) & MAX_PACKED_COUNT) == MAX_PACKED_COUNT) {
+                    return false;
+                }
+                l += 1L << shift;
+            } else {
+                int shift = (letter - LETTERS_IN_LOW) * BITS_PER_LETTER;
+                if (((h >>> shift) & MAX_PACKED_COUNT) == MAX_PACKED_COUNT) {
+                    return false;
+                }
+                h += 1L << shift;
+            }
+        }
+        packed = true;
+        high = h;
+        low = l;
+        hash = mix(h * 31 + l);
+        return true;
+    }
+
+    private void computeSorted(CharSequence word, int wordLength) {
+        packed = false;
+        boolean latin1 = true;
+        for (int i = 0; i < wordLength && latin1; i++) {
+            latin1 = word.charAt(i) < 256;
+        }
+
+        if (latin1) {
+            ensureCapacity(wordLength + 1);
+            for (int i = 0; i < wordLength; i++) {
+                latin1Counts[word.charAt(i)]++;
+            }
+            buffer[0] = LATIN_1;
+            length = 1;
+            for (int c = 0; c < latin1Counts.length; c++) {
+                for (int n = latin1Counts[c]; n > 0; n--) {
+                    buffer[length++] = (byte) c;
+                }
+                latin1Counts[c] = 0;
+            }
+        } else {
+            if (sortBuffer.length < wordLength) {
+                sortBuffer = new char[Math.max(wordLength, sortBuffer.length * 2)];
+            }
+            boolean surrogates = false;
+            for (int i = 0; i < wordLength; i++) {
+                sortBuffer[i] = word.charAt(i);
+                surrogates |= Character.isSurrogate(sortBuffer[i]);
+            }
+            if (surrogates) {
+                sortCodePoints(wordLength);
+            } else {
+                Arrays.sort(sortBuffer, 0, wordLength);
+                ensureCapacity(wordLength * 2 + 1);
+                buffer[0] = UTF_16;
+                length = 1;
+                for (int i = 0; i < wordLength; i++) {
+                    buffer[length++] = (byte) (sortBuffer[i] >>> 8);
+                    buffer[length++] = (byte) sortBuffer[i];
+                }
+            }
+        }
+
+        int h = 1;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + buffer[i];
+        }
+        hash = mix(h);
+    }
+
+    /**
+     * Sorts the code points of the word in the sort buffer, so the halves of different surrogate pairs never mix
+     */
+    private void sortCodePoints(int wordLength) {
+        if (codePoints.length < wordLength) {
+            codePoints = new int[Math.max(wordLength, codePoints.length * 2)];
+        }
+        int count = 0;
+        for (int i = 0; i < wordLength; ) {
+            int codePoint = Character.codePointAt(sortBuffer, i, wordLength);
+            codePoints[count++] = codePoint;
+            i += Character.charCount(codePoint);
+        }
+        Arrays.sort(codePoints, 0, count);
+        ensureCapacity(count * 3 + 1);
+        buffer[0] = CODE_POINTS;
+        length = 1;
+        for (int i = 0; i < count; i++) {
+            buffer[length++] = (byte) (codePoints[i] >>> 16);
+            buffer[length++] = (byte) (codePoints[i] >>> 8);
+            buffer[length++] = (byte) codePoints[i];
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer.length < capacity) {
+            buffer = new byte[Math.max(capacity, buffer.length * 2)];
+        }
+    }
+
+    /**
+     * Spreads the bits of the hash, buckets are chosen by its remainder
+     */
+    private static int mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+
+    /**
+     * Gives the sorted characters of the signature, only meant for logging and debugging
+     */
+    static String toSortedString(SignatureKey key) {
+        StringBuilder builder = new StringBuilder();
+        if (key.isPacked()) {
+            for (int letter = 0; letter < LETTERS; letter++) {
+                long bits = letter < LETTERS_IN_LOW ? key.getLow() : key.getHigh();
+                int shift = (letter % LETTERS_IN_LOW) * BITS_PER_LETTER;
+                for (long n = (bits >>> shift) & MAX_PACKED_COUNT; n > 0; n--) {
+                    builder.append((char) ('a' + letter));
+                }
+            }
+        } else {
+            byte[] chars = key.getChars();
+            if (chars[0] == LATIN_1) {
+                for (int i = 1; i < chars.length; i++) {
+                    builder.append((char) (chars[i] & 0xff));
+                }
+            } else if (chars[0] == UTF_16) {
+                for (int i = 1; i < chars.length; i += 2) {
+                    builder.append((char) (((chars[i] & 0xff) << 8) | (chars[i + 1] & 0xff)));
+                }
+            } else {
+                for (int i = 1; i < chars.length; i += 3) {
+                    builder.appendCodePoint(((chars[i] & 0xff) << 16) | ((chars[i + 1] & 0xff) << 8)
+                            | (chars[i + 2] & 0xff));
+                }
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,141 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Sink summarizing the groups instead of keeping them: how many groups there are of every size, how many words
+ * have at least one anagram, and the largest groups. Only the largest groups seen so far are kept in a bounded heap,
+ * with a few of their words each, so its memory does not grow with the input.
+ * Groups of the same size are ranked by their first line, so the conquerers of a run on disk can add their groups
+ * in any order, see {@link AnagramAlgorithm#summarize(java.nio.file.Path, AnagramStatistics)}.
+ * Like every sink it is called by one thread at a time
+ *
+ * @author Oguz Cam
+ */
+public class AnagramStatistics implements AnagramGroupSink {
+    /**
+     * Words kept of every largest group
+     */
+    public static final int SAMPLE_WORDS = 10;
+
+    // Smallest of the kept groups first, of the same size the one of the last first line
+    private static final Comparator<LargestGroup> SMALLEST_FIRST = new Comparator<LargestGroup>() {
+        @Override
+        public int compare(LargestGroup first, LargestGroup second) {
+            int bySize = Integer.compare(first.size, second.size);
+            return bySize != 0 ? bySize : Long.compare(second.ordinal, first.ordinal);
+        }
+    };
+
+    private final int top;
+    private final PriorityQueue<LargestGroup> largest;
+    private final TreeMap<Integer, Long> groupSizes = new TreeMap<>();
+    private long groups;
+    private long groupedWords;
+
+    /**
+     * @param top Count of the largest groups to keep, 0 for none
+     */
+    public AnagramStatistics(int top) {
+        this.top = Math.max(0, top);
+        this.largest = new PriorityQueue<>(this.top + 1, SMALLEST_FIRST);
+    }
+
+    /**
+     * Adds a group received in order of first occurrence, its rank among the received groups being its first line
+     *
+     * @param words Sorted words of the group
+     */
+    @Override
+    public void accept(List<String> words) {
+        add(groups, words);
+    }
+
+    /**
+     * Adds a group whatever the order of the groups
+     *
+     * @param ordinal Ordinal of the first line of the group, groups of the same size are ranked by it
+     * @param words Sorted words of the group
+     */
+    public void add(long ordinal, List<String> words) {
+        int size = words.size();
+        groupSizes.merge(size, 1L, Long::sum);
+        groups++;
+        groupedWords += size;
+
+        // Of the same size, the group occurring first is kept
+        if (largest.size() < top || (top > 0 && (size > largest.peek().size
+                || (size == largest.peek().size && ordinal < largest.peek().ordinal)))) {
+            List<String> sample = new ArrayList<>(words.subList(0, Math.min(SAMPLE_WORDS, size)));
+            largest.add(new LargestGroup(size, ordinal, Collections.unmodifiableList(sample)));
+            if (largest.size() > top) {
+                largest.poll();
+            }
+        }
+    }
+
+    /**
+     * @return Count of the groups received
+     */
+    public long getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return Count of the words which have at least one anagram
+     */
+    public long getGroupedWords() {
+        return groupedWords;
+    }
+
+    /**
+     * @return Count of the groups of every size, by size
+     */
+    public SortedMap<Integer, Long> getGroupSizes() {
+        return Collections.unmodifiableSortedMap(groupSizes);
+    }
+
+    /**
+     * @return Largest groups, the largest first and of the same size in order of first occurrence
+     */
+    public List<LargestGroup> getLargestGroups() {
+        List<LargestGroup> sorted = new ArrayList<>(largest);
+        sorted.sort(Collections.reverseOrder(SMALLEST_FIRST));
+        return sorted;
+    }
+
+    /**
+     * One of the largest groups, with the first words of it
+     */
+    public static final class LargestGroup {
+        private final int size;
+        private final long ordinal;
+        private final List<String> words;
+
+        private LargestGroup(int size, long ordinal, List<String> words) {
+            this.size = size;
+            this.ordinal = ordinal;
+            this.words = words;
+        }
+
+        /**
+         * @return Count of the words of the group
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return First {@link #SAMPLE_WORDS} words of the group at most, sorted
+         */
+        public List<String> getWords() {
+            return words;
+        }
+    }
+}
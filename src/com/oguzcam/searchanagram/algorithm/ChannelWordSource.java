@@ -0,0 +1,100 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Splits the bytes of a blocking channel into newline delimited words, without decoding them.
+ * The buffer grows when a word does not fit into it. Trailing carriage returns are not part of the word.
+ *
+ * @author Oguz Cam
+ */
+public class ChannelWordSource implements WordSource {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private boolean endOfInput;
+    private int position;
+    private int lineOffset;
+    private int lineLength;
+
+    public ChannelWordSource(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.limit(0);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        int index = position;
+        while (true) {
+            int limit = buffer.limit();
+            while (index < limit && buffer.get(index) != '\n') {
+                index++;
+            }
+            if (index < limit) {
+                break;
+            }
+            if (endOfInput) {
+                if (position == limit) {
+                    return false;
+                }
+                // Last line without line separator
+                break;
+            }
+            index = fill(index - position);
+        }
+
+        lineOffset = position;
+        lineLength = index - position;
+        if (lineLength > 0 && buffer.get(index - 1) == '\r') {
+            lineLength--;
+        }
+        position = Math.min(index + 1, buffer.limit());
+        return true;
+    }
+
+    /**
+     * Moves the unfinished line to the beginning of the buffer and reads more bytes after it
+     *
+     * @param scanned Bytes of the unfinished line already scanned
+     * @return Index to continue scanning from
+     */
+    private int fill(int scanned) throws IOException {
+        buffer.position(position);
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        if (channel.read(buffer) < 0) {
+            endOfInput = true;
+        }
+        buffer.flip();
+        position = 0;
+        return scanned;
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public int getOffset() {
+        return lineOffset;
+    }
+
+    @Override
+    public int getLength() {
+        return lineLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,63 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+
+/**
+ * Gives the words of an iterator, encoding every one into a reused buffer
+ *
+ * @author Oguz Cam
+ */
+public class IteratorWordSource implements WordSource {
+    private final Iterator<? extends CharSequence> words;
+    private final CharsetEncoder encoder = CHARSET.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer buffer = ByteBuffer.allocate(64);
+
+    public IteratorWordSource(Iterator<? extends CharSequence> words) {
+        this.words = words;
+    }
+
+    @Override
+    public boolean next() {
+        if (!words.hasNext()) {
+            return false;
+        }
+        CharSequence word = words.next();
+        int capacity = (int) Math.ceil(word.length() * (double) encoder.maxBytesPerChar());
+        if (buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(word), buffer, true);
+        encoder.flush(buffer);
+        buffer.flip();
+        return true;
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public int getOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getLength() {
+        return buffer.limit();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,129 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Scans newline delimited lines of a file through memory mapped windows, without decoding them.
+ * Every call to {@link #next()} exposes the current line as a byte slice of {@link #getBuffer()},
+ * the slice is only valid until the following call. Trailing carriage returns are not part of the line.
+ * A reader can be limited to a byte range of the file, the range must start at the beginning of a line.
+ *
+ * @author Oguz Cam
+ */
+public class MappedLineReader implements WordSource {
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long end;
+    private final int windowSize;
+    private MappedByteBuffer buffer;
+    private long windowStart;
+    private int position;
+    private int lineOffset;
+    private int lineLength;
+
+    public MappedLineReader(Path path) throws IOException {
+        this(path, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param path File to read
+     * @param start Position of the first byte of the range, the beginning of a line
+     * @param end Position after the last byte of the range, limited to the file size
+     * @throws IOException May throw IOException while opening or mapping the file
+     */
+    public MappedLineReader(Path path, long start, long end) throws IOException {
+        this(path, start, end, WINDOW_SIZE);
+    }
+
+    /**
+     * @param path File to read
+     * @param start Position of the first byte of the range, the beginning of a line
+     * @param end Position after the last byte of the range, limited to the file size
+     * @param windowSize Bytes mapped at a time, unless a line is longer
+     * @throws IOException May throw IOException while opening or mapping the file
+     */
+    MappedLineReader(Path path, long start, long end, int windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.end = Math.min(end, channel.size());
+        this.windowSize = windowSize;
+        map(Math.min(start, this.end), 0);
+    }
+
+    /**
+     * Advances to the next line
+     *
+     * @return False if the end of the file is reached
+     * @throws IOException May throw IOException while mapping the next window
+     */
+    @Override
+    public boolean next() throws IOException {
+        if (windowStart + position >= end) {
+            return false;
+        }
+
+        int limit = buffer.limit();
+        int index = position;
+        while (true) {
+            while (index < limit && buffer.get(index) != '\n') {
+                index++;
+            }
+            if (index < limit || windowStart + limit >= end) {
+                break;
+            }
+            // The line crosses the window, map again starting from the line, larger if the line is longer
+            int scanned = index - position;
+            map(windowStart + position, scanned);
+            index = scanned;
+            limit = buffer.limit();
+        }
+
+        lineOffset = position;
+        lineLength = index - position;
+        if (lineLength > 0 && buffer.get(index - 1) == '\r') {
+            lineLength--;
+        }
+        position = Math.min(index + 1, limit);
+        return true;
+    }
+
+    /**
+     * @return Mapped window holding the current line
+     */
+    @Override
+    public MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return Index of the first byte of the current line inside the buffer
+     */
+    @Override
+    public int getOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * @return Byte length of the current line
+     */
+    @Override
+    public int getLength() {
+        return lineLength;
+    }
+
+    private void map(long start, int alreadyScanned) throws IOException {
+        long size = Math.min(end - start, Math.max(windowSize, 2L * alreadyScanned));
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
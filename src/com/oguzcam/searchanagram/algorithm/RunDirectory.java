@@ -0,0 +1,226 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.STALE_RUN_MILLIS;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.TEMP_FILE_EXTENSION;
+
+/**
+ * Scratch directory of one run inside the temp directory, locked through a lock file while the run lasts.
+ * The operating system releases the lock of a process that dies, so an unlocked directory has no running owner.
+ * Runs of a file get a directory named after the file and its path, so a restarted run finds its
+ * {@link RunManifest}. Unlocked directories without a usable checkpoint are collected by the next run
+ *
+ * @author Oguz Cam
+ */
+final class RunDirectory implements Closeable {
+    private static final Logger LOG = Logger.getLogger(RunDirectory.class.getName());
+    static final String LOCK_FILE = "run.lock";
+    // Directories are only collected this long after their last change, they may just be being created
+    private static final long GRACE_MILLIS = 60_000;
+
+    private final Path path;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    private RunDirectory(Path path, FileChannel lockChannel, FileLock lock) {
+        this.path = path;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+    }
+
+    /**
+     * Opens the directory of a file, created if needed. If another run of the same file holds it,
+     * a new directory is created, which cannot be resumed
+     *
+     * @param tempDirectory Temp directory
+     * @param name Name of the file without its extension
+     * @param input File to process
+     * @return Locked run directory
+     * @throws IOException May throw IOException if the directory cannot be created or locked
+     */
+    static RunDirectory forInput(Path tempDirectory, String name, Path input) throws IOException {
+        String key = input.toAbsolutePath().normalize().toString();
+        Path path = tempDirectory.resolve(name + "-" + Integer.toHexString(key.hashCode()));
+        Files.createDirectories(path);
+        RunDirectory directory = tryLock(path);
+        return directory != null ? directory : create(tempDirectory, name);
+    }
+
+    /**
+     * Creates a new directory for a run which cannot be resumed
+     *
+     * @param tempDirectory Temp directory
+     * @param name Prefix of the directory name
+     * @return Locked run directory
+     * @throws IOException May throw IOException if the directory cannot be created or locked
+     */
+    static RunDirectory create(Path tempDirectory, String name) throws IOException {
+        Files.createDirectories(tempDirectory);
+        Path path = Files.createTempDirectory(tempDirectory, name + System.currentTimeMillis());
+        RunDirectory directory = tryLock(path);
+        if (directory == null) {
+            throw new IOException(path + " could not be locked");
+        }
+        return directory;
+    }
+
+    private static RunDirectory tryLock(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return new RunDirectory(path, channel, lock);
+            }
+        } catch (OverlappingFileLockException ex) {
+            // Locked by a run of this JVM
+        }
+        channel.close();
+        return null;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return Checkpoint of the directory, null if there is none
+     */
+    RunManifest readManifest() {
+        return RunManifest.read(path);
+    }
+
+    /**
+     * Removes what an earlier run has left, the lock file excepted
+     *
+     * @throws IOException May throw IOException if a file cannot be removed
+     */
+    void clear() throws IOException {
+        clear(null);
+    }
+
+    /**
+     * Removes what an earlier run has left but the checkpoint, that is the manifest and the runs it has logged
+     *
+     * @param manifest Checkpoint to keep, null to remove everything but the lock file
+     * @throws IOException May throw IOException if a file cannot be removed
+     */
+    void clear(RunManifest manifest) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path)) {
+            for (Path file : files) {
+                if (!isKept(file.getFileName().toString(), manifest)) {
+                    deleteRecursively(file);
+                }
+            }
+        }
+    }
+
+    private static boolean isKept(String name, RunManifest manifest) {
+        if (name.equals(LOCK_FILE)) {
+            return true;
+        }
+        if (manifest == null) {
+            return false;
+        }
+        if (name.equals(RunManifest.FILE_NAME) || name.equals(RunManifest.RUNS_FILE_NAME)) {
+            return true;
+        }
+        for (int bucket = 1; bucket <= manifest.getBucketCount(); bucket++) {
+            if (manifest.hasRun(bucket) && name.equals(bucket + TEMP_FILE_EXTENSION)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the directory with everything in it and releases it
+     */
+    void delete() {
+        try {
+            clear();
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Temporary files in " + path + " could not be removed", ex);
+        }
+        close();
+        try {
+            Files.deleteIfExists(path.resolve(LOCK_FILE));
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, path + " could not be removed", ex);
+        }
+    }
+
+    /**
+     * Releases the directory and keeps its files, so a later run can resume from them
+     */
+    @Override
+    public void close() {
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, path + " could not be unlocked", ex);
+        }
+    }
+
+    /**
+     * Removes the run directories nobody holds which cannot be resumed: the ones without a checkpoint,
+     * the ones whose input has changed or disappeared and the ones older than {@link
+     * AnagramAlgorithmConfiguration#STALE_RUN_MILLIS}. Only directories with a lock file are looked at,
+     * so other files in the temp directory are left alone
+     *
+     * @param tempDirectory Temp directory
+     */
+    static void collectGarbage(Path tempDirectory) {
+        if (!Files.isDirectory(tempDirectory)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(tempDirectory)) {
+            for (Path path : paths) {
+                if (!Files.isRegularFile(path.resolve(LOCK_FILE))) {
+                    continue;
+                }
+                long age = now - Files.getLastModifiedTime(path).toMillis();
+                if (age < GRACE_MILLIS) {
+                    continue;
+                }
+                RunDirectory directory = tryLock(path);
+                if (directory == null) {
+                    continue;
+                }
+                RunManifest manifest = directory.readManifest();
+                if (manifest == null || !manifest.isInputUnchanged() || age > STALE_RUN_MILLIS) {
+                    LOG.info("Removing the stale run directory " + path);
+                    directory.delete();
+                } else {
+                    directory.close();
+                }
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Stale run directories in " + tempDirectory + " could not be removed", ex);
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.TEMP_FILE_EXTENSION;
+
+/**
+ * Checkpoint of a run on disk: the input it is made of, its signature policy, whether its files are compressed,
+ * the bucket and range counts it has been divided by, and the size and CRC-32 of every run file written so far.
+ * The description is written before anything is divided, and every run is appended to a log as soon as
+ * its lane has written it, so a run which dies while conquering keeps the buckets already conquered.
+ * The line count is added once every range is divided. A restarted run of the same, unchanged input merges
+ * the runs again if they are all written and still match, otherwise it divides the input again into
+ * the same buckets and ranges and only conquers the buckets whose runs are missing.
+ * Chunks are not checkpointed, a chunk is removed as soon as the bucket on its lane has consumed it
+ *
+ * @author Oguz Cam
+ */
+final class RunManifest {
+    static final String FILE_NAME = "manifest.properties";
+    static final String RUNS_FILE_NAME = "runs.log";
+    private static final int VERSION = 2;
+    private static final int CHECK_BUFFER_SIZE = 64 * 1024;
+    private static final long UNKNOWN = -1;
+
+    private final String input;
+    private final long inputSize;
+    private final long inputModified;
+    private final boolean compressed;
+    private final String signature;
+    private final int rangeCount;
+    private final long[] runSizes;
+    private final long[] runChecksums;
+    private long lineCount;
+    private Writer runsWriter;
+
+    private RunManifest(String input, long inputSize, long inputModified, boolean compressed, String signature,
+                        int bucketCount, int rangeCount, long lineCount) {
+        this.input = input;
+        this.inputSize = inputSize;
+        this.inputModified = inputModified;
+        this.compressed = compressed;
+        this.signature = signature;
+        this.rangeCount = rangeCount;
+        this.lineCount = lineCount;
+        this.runSizes = new long[bucketCount];
+        this.runChecksums = new long[bucketCount];
+        Arrays.fill(runSizes, UNKNOWN);
+    }
+
+    /**
+     * Describes the run of an input before it is divided, without any run written yet
+     *
+     * @param input Processed file
+     * @param policy Signature policy the input is grouped by
+     * @param compressed True if the chunks and the runs are compressed
+     * @param bucketCount Buckets the input is divided into
+     * @param rangeCount Ranges the input is divided by, which give the ordinals of its lines
+     * @return Manifest of the run
+     * @throws IOException May throw IOException if the input cannot be looked up
+     */
+    static RunManifest of(Path input, SignaturePolicy policy, boolean compressed, int bucketCount, int rangeCount)
+            throws IOException {
+        return new RunManifest(getKey(input), Files.size(input), Files.getLastModifiedTime(input).toMillis(),
+                compressed, policy.getOptionName(), bucketCount, rangeCount, UNKNOWN);
+    }
+
+    /**
+     * Reads the manifest of a run directory with the runs it has logged, a torn last line of the log is ignored
+     *
+     * @param runDirectory Run directory
+     * @return Manifest, null if there is none or it cannot be read
+     */
+    static RunManifest read(Path runDirectory) {
+        Properties properties = new Properties();
+        try (InputStream stream = Files.newInputStream(runDirectory.resolve(FILE_NAME))) {
+            properties.load(stream);
+            if (Integer.parseInt(properties.getProperty("version")) != VERSION) {
+                return null;
+            }
+            RunManifest manifest = new RunManifest(properties.getProperty("input"),
+                    Long.parseLong(properties.getProperty("inputSize")),
+                    Long.parseLong(properties.getProperty("inputModified")),
+                    Boolean.parseBoolean(properties.getProperty("compressed")),
+                    properties.getProperty("signature", SignaturePolicy.EXACT.getOptionName()),
+                    Integer.parseInt(properties.getProperty("bucketCount")),
+                    Integer.parseInt(properties.getProperty("rangeCount")),
+                    Long.parseLong(properties.getProperty("lineCount", String.valueOf(UNKNOWN))));
+            manifest.readRuns(runDirectory.resolve(RUNS_FILE_NAME));
+            return manifest;
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException | RuntimeException ex) {
+            // A manifest torn by a crash is no checkpoint
+            return null;
+        }
+    }
+
+    private void readRuns(Path runsPath) throws IOException {
+        if (!Files.exists(runsPath)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(runsPath, CHARSET)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] run = line.split(",");
+                if (run.length != 3) {
+                    break;
+                }
+                int bucket;
+                long size;
+                long checksum;
+                try {
+                    bucket = Integer.parseInt(run[0]);
+                    size = Long.parseLong(run[1]);
+                    checksum = Long.parseLong(run[2]);
+                } catch (NumberFormatException ex) {
+                    break;
+                }
+                if (bucket < 1 || bucket > runSizes.length) {
+                    break;
+                }
+                runSizes[bucket - 1] = size;
+                runChecksums[bucket - 1] = checksum;
+            }
+        }
+    }
+
+    /**
+     * Writes the description into the run directory, replacing the previous one in one step.
+     * The logged runs are kept, the description of a new run must be written into a cleared directory
+     *
+     * @param runDirectory Run directory
+     * @throws IOException May throw IOException while writing
+     */
+    void write(Path runDirectory) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("version", String.valueOf(VERSION));
+        properties.setProperty("input", input);
+        properties.setProperty("inputSize", String.valueOf(inputSize));
+        properties.setProperty("inputModified", String.valueOf(inputModified));
+        properties.setProperty("compressed", String.valueOf(compressed));
+        properties.setProperty("signature", signature);
+        properties.setProperty("bucketCount", String.valueOf(runSizes.length));
+        properties.setProperty("rangeCount", String.valueOf(rangeCount));
+        if (lineCount != UNKNOWN) {
+            properties.setProperty("lineCount", String.valueOf(lineCount));
+        }
+
+        Path manifestPath = runDirectory.resolve(FILE_NAME);
+        Path newPath = runDirectory.resolve(FILE_NAME + ".new");
+        try (OutputStream stream = Files.newOutputStream(newPath)) {
+            properties.store(stream, "Run of " + input);
+        }
+        Files.move(newPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Rewrites the log with the runs the manifest has, dropping a line torn by a crash and the runs which have
+     * not been verified, and opens it to append the runs written from now on
+     *
+     * @param runDirectory Run directory
+     * @throws IOException May throw IOException while writing
+     */
+    synchronized void openLog(Path runDirectory) throws IOException {
+        Path runsPath = runDirectory.resolve(RUNS_FILE_NAME);
+        Path newPath = runDirectory.resolve(RUNS_FILE_NAME + ".new");
+        try (Writer writer = Files.newBufferedWriter(newPath, CHARSET)) {
+            for (int i = 0; i < runSizes.length; i++) {
+                if (runSizes[i] != UNKNOWN) {
+                    writer.write((i + 1) + "," + runSizes[i] + "," + runChecksums[i] + "\n");
+                }
+            }
+        }
+        Files.move(newPath, runsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel channel = FileChannel.open(runsPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        runsWriter = Channels.newWriter(channel, CHARSET.newEncoder(), -1);
+    }
+
+    /**
+     * Appends a written run to the log, so the bucket is not conquered again if the run dies.
+     * Called by the lanes of the run as they finish their buckets, once the log is open
+     *
+     * @param bucket Bucket number from 1
+     * @param size Size of the run
+     * @param checksum CRC-32 of the run
+     * @throws IOException May throw IOException while writing
+     */
+    synchronized void runWritten(int bucket, long size, long checksum) throws IOException {
+        // A torn line ends the log, so a run is only recorded once its line is complete
+        runsWriter.write(bucket + "," + size + "," + checksum + "\n");
+        runsWriter.flush();
+        runSizes[bucket - 1] = size;
+        runChecksums[bucket - 1] = checksum;
+    }
+
+    /**
+     * Records the line count once every range is divided and closes the log
+     *
+     * @param runDirectory Run directory
+     * @param lineCount Lines of the input
+     * @throws IOException May throw IOException while writing
+     */
+    synchronized void completed(Path runDirectory, long lineCount) throws IOException {
+        this.lineCount = lineCount;
+        close();
+        write(runDirectory);
+    }
+
+    /**
+     * Closes the log of the runs
+     *
+     * @throws IOException May throw IOException while closing
+     */
+    synchronized void close() throws IOException {
+        if (runsWriter != null) {
+            runsWriter.close();
+            runsWriter = null;
+        }
+    }
+
+    /**
+     * @param input File to process
+     * @param policy Signature policy to group the file by
+     * @return True if the manifest has been written for this file and policy, the file unchanged since then
+     */
+    boolean matches(Path input, SignaturePolicy policy) {
+        return signature.equals(policy.getOptionName()) && isUnchanged(input);
+    }
+
+    private boolean isUnchanged(Path input) {
+        try {
+            return this.input.equals(getKey(input))
+                    && inputSize == Files.size(input)
+                    && inputModified == Files.getLastModifiedTime(input).toMillis();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @return True if the input file of the manifest still exists unchanged
+     */
+    boolean isInputUnchanged() {
+        return isUnchanged(Path.of(input));
+    }
+
+    /**
+     * @return True if every range has been divided and every bucket has its run
+     */
+    boolean isComplete() {
+        if (lineCount == UNKNOWN) {
+            return false;
+        }
+        for (long runSize : runSizes) {
+            if (runSize == UNKNOWN) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the sizes and the checksums of the logged runs, reading them completely.
+     * A run which does not match is removed from the manifest, its bucket is conquered again
+     *
+     * @param runDirectory Run directory
+     * @return True if every logged run is as it has been written
+     */
+    boolean verifyRuns(Path runDirectory) {
+        boolean verified = true;
+        for (int i = 0; i < runSizes.length; i++) {
+            if (runSizes[i] != UNKNOWN && !verifyRun(runDirectory.resolve((i + 1) + TEMP_FILE_EXTENSION), i)) {
+                runSizes[i] = UNKNOWN;
+                verified = false;
+            }
+        }
+        return verified;
+    }
+
+    private boolean verifyRun(Path runPath, int index) {
+        byte[] buffer = new byte[CHECK_BUFFER_SIZE];
+        CRC32 checksum = new CRC32();
+        long size = 0;
+        try (InputStream stream = Files.newInputStream(runPath)) {
+            int read;
+            while ((read = stream.read(buffer)) > 0) {
+                checksum.update(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException ex) {
+            return false;
+        }
+        return size == runSizes[index] && checksum.getValue() == runChecksums[index];
+    }
+
+    /**
+     * @param bucket Bucket number from 1
+     * @return True if the run of the bucket is logged
+     */
+    boolean hasRun(int bucket) {
+        return runSizes[bucket - 1] != UNKNOWN;
+    }
+
+    /**
+     * @return Count of the logged runs
+     */
+    int getRunCount() {
+        int count = 0;
+        for (long runSize : runSizes) {
+            if (runSize != UNKNOWN) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int getBucketCount() {
+        return runSizes.length;
+    }
+
+    int getRangeCount() {
+        return rangeCount;
+    }
+
+    long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return True if the runs are compressed, whatever the configuration of the resumed run
+     */
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    private static String getKey(Path input) {
+        return input.toAbsolutePath().normalize().toString();
+    }
+}
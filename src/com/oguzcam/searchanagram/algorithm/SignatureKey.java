@@ -0,0 +1,64 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Immutable anagram signature, two words are anagrams of each other when their keys are equal.
+ * Words of lowercase ASCII letters are kept as packed letter counts, the others as their sorted characters.
+ *
+ * @author Oguz Cam
+ */
+public final class SignatureKey {
+    private final long high;
+    private final long low;
+    private final byte[] chars;
+    private final int hash;
+
+    SignatureKey(long high, long low, byte[] chars, int hash) {
+        this.high = high;
+        this.low = low;
+        this.chars = chars;
+        this.hash = hash;
+    }
+
+    /**
+     * @return True if the key is kept as packed letter counts
+     */
+    public boolean isPacked() {
+        return chars == null;
+    }
+
+    long getHigh() {
+        return high;
+    }
+
+    long getLow() {
+        return low;
+    }
+
+    byte[] getChars() {
+        return chars;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SignatureKey)) {
+            return false;
+        }
+        SignatureKey other = (SignatureKey) o;
+        return hash == other.hash && high == other.high && low == other.low && Arrays.equals(chars, other.chars);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return AnagramSignature.toSortedString(this);
+    }
+}
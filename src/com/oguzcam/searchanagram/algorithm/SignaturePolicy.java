@@ -0,0 +1,166 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.nio.CharBuffer;
+import java.text.Normalizer;
+
+/**
+ * Decides which words are anagrams of each other, by mapping every word to the letters its signature is made of.
+ * The words themselves are always kept as they are, only their grouping changes.
+ * Words of ASCII and Latin-1 characters are mapped character by character through a table,
+ * which is exact since no Latin-1 character combines with another one; other words are normalized
+ *
+ * @author Oguz Cam
+ */
+public enum SignaturePolicy {
+    /**
+     * Every code point counts as it is
+     */
+    EXACT("exact", null, false, false, false),
+    /**
+     * Canonically composed, so precomposed and combined accents are the same letter, and case folded
+     */
+    CASE_FOLDED("case-folded", Normalizer.Form.NFC, false, true, false),
+    /**
+     * Compatibility decomposed with the combining marks removed and case folded,
+     * so "R&eacute;sum&eacute;" and "mesure" are anagrams
+     */
+    ACCENT_INSENSITIVE("accent-insensitive", Normalizer.Form.NFKD, true, true, false),
+    /**
+     * Canonically composed and case folded, everything but letters is left out, so "Dormitory" and "dirty room!"
+     * are anagrams
+     */
+    LETTERS_ONLY("letters-only", Normalizer.Form.NFC, false, true, true);
+
+    // Latin-1 characters left out of the signature, and the ones which become something beyond Latin-1
+    private static final char DROPPED = '\uFFFF';
+    private static final char NOT_LATIN_1 = '\uFFFE';
+
+    private final String optionName;
+    private final Normalizer.Form form;
+    private final boolean stripMarks;
+    private final boolean foldCase;
+    private final boolean lettersOnly;
+    private final char[] latin1Table = new char[256];
+
+    SignaturePolicy(String optionName, Normalizer.Form form, boolean stripMarks, boolean foldCase,
+                    boolean lettersOnly) {
+        this.optionName = optionName;
+        this.form = form;
+        this.stripMarks = stripMarks;
+        this.foldCase = foldCase;
+        this.lettersOnly = lettersOnly;
+        for (char c = 0; c < latin1Table.length; c++) {
+            CharBuffer mapped = CharBuffer.allocate(16);
+            mapSlowly(normalize(String.valueOf(c)), mapped);
+            mapped.flip();
+            if (mapped.remaining() == 0) {
+                latin1Table[c] = DROPPED;
+            } else if (mapped.remaining() == 1 && mapped.get(0) < latin1Table.length) {
+                latin1Table[c] = mapped.get(0);
+            } else {
+                latin1Table[c] = NOT_LATIN_1;
+            }
+        }
+    }
+
+    /**
+     * @return Name of the policy as it is given on the command line
+     */
+    public String getOptionName() {
+        return optionName;
+    }
+
+    /**
+     * @param name Name of the policy, see {@link #getOptionName()}, null for {@link #EXACT}
+     * @return Policy of the name
+     */
+    public static SignaturePolicy parse(String name) {
+        if (name == null || name.isEmpty()) {
+            return EXACT;
+        }
+        for (SignaturePolicy policy : values()) {
+            if (policy.optionName.equalsIgnoreCase(name.trim())) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException(name + " is not a signature policy, use one of exact, case-folded, "
+                + "accent-insensitive or letters-only");
+    }
+
+    /**
+     * @param word Word to map
+     * @return Letters the signature of the word is made of, in the order of the word
+     */
+    public String toLetters(CharSequence word) {
+        return map(word, CharBuffer.allocate(word.length())).toString();
+    }
+
+    /**
+     * Maps the word to the letters of its signature
+     *
+     * @param word Word to map
+     * @param mapped Buffer to write the letters into, cleared first. It is grown if the word does not fit,
+     * so the returned buffer is to be used
+     * @return Buffer holding the letters, flipped for reading
+     */
+    CharBuffer map(CharSequence word, CharBuffer mapped) {
+        int wordLength = word.length();
+        if (mapped.capacity() < wordLength) {
+            mapped = CharBuffer.allocate(Math.max(wordLength, mapped.capacity() * 2));
+        }
+        mapped.clear();
+        for (int i = 0; i < wordLength; i++) {
+            char c = word.charAt(i);
+            char letter = c < latin1Table.length ? latin1Table[c] : NOT_LATIN_1;
+            if (letter == NOT_LATIN_1) {
+                String normalized = normalize(word);
+                // Every code point maps to at most two chars
+                if (mapped.capacity() < normalized.length() * 2) {
+                    mapped = CharBuffer.allocate(normalized.length() * 2);
+                }
+                mapped.clear();
+                mapSlowly(normalized, mapped);
+                break;
+            } else if (letter != DROPPED) {
+                mapped.put(letter);
+            }
+        }
+        mapped.flip();
+        return mapped;
+    }
+
+    private String normalize(CharSequence word) {
+        return form != null ? Normalizer.normalize(word, form) : word.toString();
+    }
+
+    /**
+     * Maps a normalized word code point by code point
+     */
+    private void mapSlowly(String normalized, CharBuffer mapped) {
+        for (int i = 0; i < normalized.length(); ) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (stripMarks && isMark(codePoint)) {
+                continue;
+            }
+            if (foldCase) {
+                codePoint = Character.toLowerCase(Character.toUpperCase(codePoint));
+            }
+            if (lettersOnly && !Character.isLetter(codePoint)) {
+                continue;
+            }
+            if (Character.isBmpCodePoint(codePoint)) {
+                mapped.put((char) codePoint);
+            } else {
+                mapped.put(Character.highSurrogate(codePoint));
+                mapped.put(Character.lowSurrogate(codePoint));
+            }
+        }
+    }
+
+    private static boolean isMark(int codePoint) {
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                || type == Character.COMBINING_SPACING_MARK;
+    }
+}
@@ -0,0 +1,151 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.UNLIMITED;
+
+/**
+ * Limit of the temporary disk space of one run, see {@link AnagramAlgorithmConfiguration#getTempBudget()}.
+ * Every block of a temporary file is reserved before it is written. A reservation which would exceed the budget
+ * waits until the conquerers remove chunks or other files are released, so the bytes on disk never exceed it.
+ * The run only fails if no space has been released for {@value #STALL_SECONDS} seconds, which removes its files.
+ * Closed files are counted by the metrics of the run, the files being written by their reservations.
+ * Before anything is written, a run whose uncompressed files may not fit compresses them
+ *
+ * @author Oguz Cam
+ */
+public final class TempDiskBudget {
+    private static final Logger LOG = Logger.getLogger(TempDiskBudget.class.getName());
+    private static final long STALL_SECONDS = 30;
+    private static final long POLL_MILLIS = 50;
+
+    private final long budget;
+    private final AnagramMetrics metrics;
+    private final AtomicLong reserved = new AtomicLong();
+
+    /**
+     * @param budget Bytes of temporary files the run may keep on disk at most, {@link
+     * AnagramAlgorithmConfiguration#UNLIMITED} for no limit
+     * @param metrics Metrics of the run, counting its temporary bytes
+     */
+    public TempDiskBudget(long budget, AnagramMetrics metrics) {
+        this.budget = budget;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gives an upper bound of the bytes the input takes as uncompressed chunks and runs at the same time.
+     * Every word is written as it is, with its length and the gap to the previous ordinal of its chunk, which
+     * cannot be longer than the varints of the input size and of the line count. A run takes the ordinal gap
+     * and the word count of a group, shared by two words at least, and the length of the prefix every word shares
+     * with the previous one instead of the gaps of its words. The chunks of a bucket are removed before its run
+     * is written. Most inputs take much less, the bound only tells the run will surely fit
+     *
+     * @param inputBytes Bytes of input
+     * @param lines Lines of the input
+     * @return Bytes of temporary files at most
+     */
+    public static long estimate(long inputBytes, long lines) {
+        return inputBytes + lines * (getVarLongLength(inputBytes) + 2L * getVarLongLength(lines));
+    }
+
+    private static int getVarLongLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Fits the run into the budget before anything is written. If the upper bound of its uncompressed temporary
+     * files exceeds the budget, they are compressed, which most inputs shrink to a fraction of the bound.
+     * Compressed files cannot be bounded, the reservations still hold them to the budget
+     *
+     * @param input Name of the input
+     * @param inputBytes Bytes of the input
+     * @param configuration Tuned configuration of the run
+     * @return Configuration to run the input with
+     */
+    public AnagramAlgorithmConfiguration fit(String input, long inputBytes,
+                                             AnagramAlgorithmConfiguration configuration) {
+        long needed = estimate(inputBytes, getEstimatedLines(inputBytes, configuration));
+        if (budget == UNLIMITED || configuration.isCompressTempFiles() || needed <= budget) {
+            return configuration;
+        }
+        LOG.info(input + " may need up to " + needed + " bytes of temporary files, more than the budget of " + budget
+                + " bytes, so they are compressed");
+        return configuration.withCompressedTempFiles();
+    }
+
+    private static long getEstimatedLines(long bytes, AnagramAlgorithmConfiguration configuration) {
+        return bytes / configuration.getLineLength() + 1;
+    }
+
+    /**
+     * Reserves bytes before they are written into a temporary file, waiting while they would exceed the budget.
+     * They stay reserved until the closed file is counted by the metrics and they are released
+     *
+     * @param bytes Bytes about to be written
+     * @throws IOException If the bytes can never fit or no space has been released for a while,
+     * nothing is reserved then
+     */
+    public void reserve(long bytes) throws IOException {
+        if (budget == UNLIMITED) {
+            return;
+        }
+        if (bytes > budget) {
+            throw new IOException("A block of " + bytes + " bytes is larger than the budget of " + budget
+                    + " bytes");
+        }
+        synchronized (this) {
+            long lowest = getUsed();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STALL_SECONDS);
+            long used;
+            while ((used = getUsed()) + bytes > budget) {
+                if (used < lowest) {
+                    // Space has been released, so the run still makes progress
+                    lowest = used;
+                    deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STALL_SECONDS);
+                } else if (System.nanoTime() - deadline > 0) {
+                    throw new IOException("Temporary files would take " + (used + bytes)
+                            + " bytes, more than the budget of " + budget + " bytes, and no space has been released"
+                            + " for " + STALL_SECONDS + " seconds");
+                }
+                try {
+                    // Removed chunks are only seen by the metrics, so the space is polled as well
+                    wait(POLL_MILLIS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for temporary disk space");
+                }
+            }
+            reserved.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Releases reserved bytes, once the file they have been written into is counted by the metrics or removed
+     *
+     * @param bytes Bytes reserved before
+     */
+    public void release(long bytes) {
+        if (budget != UNLIMITED) {
+            reserved.addAndGet(-bytes);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private long getUsed() {
+        return metrics.getTempBytes() + reserved.get();
+    }
+}
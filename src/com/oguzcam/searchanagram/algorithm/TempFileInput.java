@@ -0,0 +1,152 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Buffered reader of the binary temporary files written by {@link TempFileOutput}
+ *
+ * @author Oguz Cam
+ */
+final class TempFileInput implements Closeable {
+    private final InputStream input;
+    private final Inflater inflater;
+    private byte[] block = new byte[TempFileOutput.BLOCK_SIZE];
+    private byte[] compressed;
+    private int position;
+    private int limit;
+
+    /**
+     * @param path File to read
+     * @param compressed True if the file has been written with a {@link TempFileOutput.Compressor}
+     * @throws IOException May throw IOException if the file cannot be opened
+     */
+    TempFileInput(Path path, boolean compressed) throws IOException {
+        this.input = new FileInputStream(path.toFile());
+        this.inflater = compressed ? new Inflater() : null;
+    }
+
+    /**
+     * @return True if there are bytes left to read
+     * @throws IOException May throw IOException while reading the next block
+     */
+    boolean hasMore() throws IOException {
+        return position < limit || fill();
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    int readVarInt() throws IOException {
+        return (int) readVarLong();
+    }
+
+    void readFully(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == limit && !fill()) {
+                throw new EOFException();
+            }
+            int count = Math.min(length, limit - position);
+            System.arraycopy(block, position, bytes, offset, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit && !fill()) {
+            throw new EOFException();
+        }
+        return block[position++];
+    }
+
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = 0;
+        if (inflater == null) {
+            int read = input.read(block);
+            limit = Math.max(0, read);
+            return read > 0;
+        }
+
+        byte[] header = new byte[8];
+        if (!readFromInput(header, header.length)) {
+            return false;
+        }
+        int length = getInt(header, 0);
+        int compressedLength = getInt(header, 4);
+        if (compressed == null || compressed.length < compressedLength) {
+            compressed = new byte[compressedLength];
+        }
+        if (block.length < length) {
+            block = new byte[length];
+        }
+        if (!readFromInput(compressed, compressedLength)) {
+            throw new EOFException();
+        }
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            while (limit < length) {
+                int inflated = inflater.inflate(block, limit, length - limit);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new EOFException();
+                }
+                limit += inflated;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Temporary file is corrupted", ex);
+        }
+        return limit > 0;
+    }
+
+    /**
+     * Reads exactly the given count of bytes, false if the input is exhausted before the first one
+     */
+    private boolean readFromInput(byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int read = input.read(bytes, offset, length - offset);
+            if (read < 0) {
+                if (offset == 0) {
+                    return false;
+                }
+                throw new EOFException();
+            }
+            offset += read;
+        }
+        return true;
+    }
+
+    private static int getInt(byte[] bytes, int index) {
+        return (bytes[index] & 0xFF) << 24 | (bytes[index + 1] & 0xFF) << 16
+                | (bytes[index + 2] & 0xFF) << 8 | (bytes[index + 3] & 0xFF);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            input.close();
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+}
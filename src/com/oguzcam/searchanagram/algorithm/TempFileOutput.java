@@ -0,0 +1,196 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Buffered writer of the binary temporary files, chunks and runs.
+ * Numbers are written as variable length integers, 7 bits per byte and the high bit set when a byte follows,
+ * so small ordinal gaps and word lengths take a single byte.
+ * With a {@link Compressor} every full buffer is deflated as one block, written after its raw and compressed lengths.
+ * The CRC-32 of the written bytes is kept, so finished files can be checked before they are used again.
+ * Given a {@link TempDiskBudget}, every block is reserved before it is written
+ *
+ * @author Oguz Cam
+ */
+final class TempFileOutput implements Closeable {
+    static final int BLOCK_SIZE = 8192;
+
+    private final CheckedOutputStream output;
+    private final Compressor compressor;
+    private final TempDiskBudget budget;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private int position;
+    private long bytesWritten;
+
+    /**
+     * @param path File to write
+     * @param compressor Compressor to deflate the blocks with, null to write them as they are
+     * @throws IOException May throw IOException if the file cannot be created
+     */
+    TempFileOutput(Path path, Compressor compressor) throws IOException {
+        this(path, compressor, null);
+    }
+
+    /**
+     * @param path File to write
+     * @param compressor Compressor to deflate the blocks with, null to write them as they are
+     * @param budget Budget to reserve the blocks from, null for no limit
+     * @throws IOException May throw IOException if the file cannot be created
+     */
+    TempFileOutput(Path path, Compressor compressor, TempDiskBudget budget) throws IOException {
+        this.output = new CheckedOutputStream(new FileOutputStream(path.toFile()), new CRC32());
+        this.compressor = compressor;
+        this.budget = budget;
+    }
+
+    void writeVarLong(long value) throws IOException {
+        if (BLOCK_SIZE - position < 10) {
+            flushBlock();
+        }
+        while ((value & ~0x7FL) != 0) {
+            block[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        block[position++] = (byte) value;
+    }
+
+    void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == BLOCK_SIZE) {
+                flushBlock();
+            }
+            int count = Math.min(length, BLOCK_SIZE - position);
+            System.arraycopy(bytes, offset, block, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    void write(ByteBuffer buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == BLOCK_SIZE) {
+                flushBlock();
+            }
+            int count = Math.min(length, BLOCK_SIZE - position);
+            buffer.get(offset, block, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (position == 0) {
+            return;
+        }
+        if (compressor == null) {
+            if (budget != null) {
+                budget.reserve(position);
+            }
+            output.write(block, 0, position);
+            bytesWritten += position;
+        } else {
+            bytesWritten += compressor.write(output, block, position, budget);
+        }
+        position = 0;
+    }
+
+    /**
+     * @return Bytes written into the file so far, compressed blocks with their lengths
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return CRC-32 of the bytes written into the file so far, as they are on disk
+     */
+    long getChecksum() {
+        return output.getChecksum().getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Releases the bytes written into the budget, once the closed file is counted by the metrics or removed
+     */
+    void release() {
+        if (budget != null) {
+            budget.release(bytesWritten);
+        }
+    }
+
+    /**
+     * Deflates the blocks of the outputs used by one thread, so open outputs do not hold a deflater each
+     */
+    static final class Compressor implements Closeable {
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] compressed = new byte[BLOCK_SIZE + BLOCK_SIZE / 4 + 64];
+
+        /**
+         * @param compressed True if temporary files are compressed, see
+         * {@link AnagramAlgorithmConfiguration#isCompressTempFiles()}
+         * @return New compressor, null if temporary files are not compressed
+         */
+        static Compressor create(boolean compressed) {
+            return compressed ? new Compressor() : null;
+        }
+
+        /**
+         * @param budget Budget to reserve the compressed block from, null for no limit
+         * @return Bytes written, header included
+         */
+        private int write(OutputStream output, byte[] block, int length, TempDiskBudget budget) throws IOException {
+            deflater.reset();
+            deflater.setInput(block, 0, length);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    byte[] grown = new byte[compressed.length * 2];
+                    System.arraycopy(compressed, 0, grown, 0, compressedLength);
+                    compressed = grown;
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+
+            byte[] header = new byte[8];
+            if (budget != null) {
+                budget.reserve(header.length + compressedLength);
+            }
+            putInt(header, 0, length);
+            putInt(header, 4, compressedLength);
+            output.write(header);
+            output.write(compressed, 0, compressedLength);
+            return header.length + compressedLength;
+        }
+
+        private static void putInt(byte[] bytes, int index, int value) {
+            bytes[index] = (byte) (value >>> 24);
+            bytes[index + 1] = (byte) (value >>> 16);
+            bytes[index + 2] = (byte) (value >>> 8);
+            bytes[index + 3] = (byte) value;
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Source of words, one word per line. Every call to {@link #next()} exposes the current word
+ * as a UTF-8 encoded byte slice of {@link #getBuffer()}, the slice is only valid until the following call.
+ *
+ * @author Oguz Cam
+ */
+public interface WordSource extends Closeable {
+
+    /**
+     * Advances to the next word, empty lines are given as empty words
+     *
+     * @return False if the source is exhausted
+     * @throws IOException May throw IOException while reading the source
+     */
+    boolean next() throws IOException;
+
+    /**
+     * @return Buffer holding the current word
+     */
+    ByteBuffer getBuffer();
+
+    /**
+     * @return Index of the first byte of the current word inside the buffer
+     */
+    int getOffset();
+
+    /**
+     * @return Byte length of the current word
+     */
+    int getLength();
+
+    /**
+     * Reads newline delimited words of a file through memory mapping
+     */
+    static WordSource of(Path path) throws IOException {
+        return new MappedLineReader(path);
+    }
+
+    /**
+     * Reads newline delimited words of a stream, the stream is closed with the source
+     */
+    static WordSource of(InputStream inputStream) {
+        return new ChannelWordSource(Channels.newChannel(inputStream));
+    }
+
+    /**
+     * Reads newline delimited words of a blocking channel, the channel is closed with the source
+     */
+    static WordSource of(ReadableByteChannel channel) {
+        return new ChannelWordSource(channel);
+    }
+
+    /**
+     * Reads the words given by an iterator, every element is one word
+     */
+    static WordSource of(Iterator<? extends CharSequence> words) {
+        return new IteratorWordSource(words);
+    }
+}
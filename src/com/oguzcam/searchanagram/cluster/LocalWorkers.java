@@ -0,0 +1,100 @@
+package com.oguzcam.searchanagram.cluster;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+
+/**
+ * Worker JVMs started on this machine with the "worker" command, listening on free loopback ports.
+ * They run from the class path of this JVM and are killed when closed
+ *
+ * @author Oguz Cam
+ */
+public class LocalWorkers implements Closeable {
+    private static final String MAIN_CLASS = "com.oguzcam.searchanagram.SearchAnagram";
+    private static final long STOP_SECONDS = 10;
+
+    private final List<Process> processes = new ArrayList<>();
+    private final List<InetSocketAddress> addresses = new ArrayList<>();
+
+    /**
+     * Starts the workers and waits until every one of them listens
+     *
+     * @param count Count of worker JVMs
+     * @param heapSize Maximum heap of every worker like "512m", null for the default
+     * @throws IOException May throw IOException if a worker cannot be started
+     */
+    public LocalWorkers(int count, String heapSize) throws IOException {
+        try {
+            for (int i = 0; i < count; i++) {
+                start(heapSize);
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return Addresses of the workers
+     */
+    public List<InetSocketAddress> getAddresses() {
+        return Collections.unmodifiableList(addresses);
+    }
+
+    private void start(String heapSize) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (heapSize != null) {
+            command.add("-Xmx" + heapSize);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MAIN_CLASS);
+        command.add("worker");
+        command.add("0");
+
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        processes.add(process);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), CHARSET));
+        String line;
+        while ((line = reader.readLine()) != null && !line.startsWith(ShardWorker.READY_PREFIX)) {
+            // Skip whatever the JVM prints before the worker listens
+        }
+        if (line == null) {
+            throw new IOException("Worker " + processes.size() + " has exited before listening");
+        }
+        int port = Integer.parseInt(line.substring(ShardWorker.READY_PREFIX.length()).trim());
+        addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Kills the workers and waits for them to exit
+     */
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(STOP_SECONDS, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException ex) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.oguzcam.searchanagram.cluster;
+
+import com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration;
+import com.oguzcam.searchanagram.algorithm.AnagramDivider;
+import com.oguzcam.searchanagram.algorithm.AnagramExecutor;
+import com.oguzcam.searchanagram.algorithm.AnagramGroup;
+import com.oguzcam.searchanagram.algorithm.AnagramGroupSink;
+import com.oguzcam.searchanagram.algorithm.AnagramMerger;
+import com.oguzcam.searchanagram.algorithm.AnagramRunReader;
+import com.oguzcam.searchanagram.algorithm.AnagramStatistics;
+import com.oguzcam.searchanagram.algorithm.SignaturePolicy;
+import com.oguzcam.searchanagram.algorithm.TempDiskBudget;
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+import com.oguzcam.searchanagram.metrics.AnagramMetricsListener;
+import com.oguzcam.searchanagram.metrics.Stage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.TEMP_FILE_EXTENSION;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.CHUNK;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.DONE;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.END;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.ERROR;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.MAGIC;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.RUN;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.VERSION;
+
+/**
+ * Runs the divide and conquer algorithm with the conquer on {@link ShardWorker} processes.
+ * The input is divided here into buckets by the hash of the anagram signature, as {@link AnagramDivider} always does,
+ * and the buckets are dealt into shards, a few per worker. Every shard is one connection, which gets the chunks of
+ * its buckets as soon as their range is divided, so the workers group while the input is still being divided.
+ * Chunks are removed once they are sent, the ranges in flight bound the disk used here.
+ * The workers send back the runs of their buckets, groups tagged with their first line index,
+ * which are merged here in one k-way pass into the sink in insertion order
+ *
+ * @author Oguz Cam
+ */
+public class ShardCoordinator {
+    private static final Logger LOG = Logger.getLogger(ShardCoordinator.class.getName());
+    // Shards dealt to every worker, every shard is grouped on its own worker thread
+    private static final int SHARDS_PER_WORKER = 4;
+
+    private final List<InetSocketAddress> workers;
+    private final Path tempDirectory;
+    private final AnagramAlgorithmConfiguration configuration;
+    private AnagramMetricsListener listener;
+
+    /**
+     * @param workers Addresses of the workers
+     * @param tempDirectory Scratch directory, every run creates its own directory inside
+     * @param configuration Threshold and thread count of the dividing side, the threshold sizes the buckets
+     */
+    public ShardCoordinator(List<InetSocketAddress> workers, Path tempDirectory,
+                            AnagramAlgorithmConfiguration configuration) {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        this.workers = workers;
+        this.tempDirectory = tempDirectory;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Sets the listener of the next runs, which is also given the metrics of every run when it ends
+     *
+     * @param listener Listener to notify, null for none
+     */
+    public void setMetricsListener(AnagramMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Groups a file on the workers
+     *
+     * @param input File to process, one word per line
+     * @param sink Sink to receive the groups in insertion order, it is not closed
+     * @return Count of lines read, empty lines included
+     * @throws Exception May throw Exception while dividing, if a worker fails or while merging
+     */
+    public long process(Path input, AnagramGroupSink sink) throws Exception {
+        return process(input, sink, null);
+    }
+
+    /**
+     * Summarizes the groups of a file grouped on the workers. The runs the workers send back are read one after
+     * the other into the statistics instead of being merged
+     *
+     * @param input File to process, one word per line
+     * @param statistics Statistics to add the groups to
+     * @return Count of lines read, empty lines included
+     * @throws Exception May throw Exception while dividing, if a worker fails or while reading the runs
+     */
+    public long summarize(Path input, AnagramStatistics statistics) throws Exception {
+        return process(input, null, statistics);
+    }
+
+    private long process(Path input, AnagramGroupSink sink, AnagramStatistics statistics) throws Exception {
+        if (!Files.isRegularFile(input)) {
+            throw new Exception(input + " does not exist, choose another file");
+        }
+        AnagramMetrics metrics = new AnagramMetrics(listener);
+        metrics.register();
+        Path runDirectory = null;
+        try {
+            metrics.setInputBytes(Files.size(input));
+            Files.createDirectories(tempDirectory);
+            runDirectory = Files.createTempDirectory(tempDirectory, "shards");
+
+            TempDiskBudget budget = new TempDiskBudget(configuration.getTempBudget(), metrics);
+            AnagramAlgorithmConfiguration tuned =
+                    budget.fit(input.toString(), metrics.getInputBytes(), configuration.tune(input));
+            int shardCount = workers.size() * SHARDS_PER_WORKER;
+            int bucketCount = Math.max(shardCount, tuned.getBucketCount(metrics.getInputBytes()));
+            LOG.info("Processing " + input + " in " + shardCount + " shards on " + workers.size() + " workers with "
+                    + tuned);
+
+            long lineCount;
+            try (AnagramExecutor executor = new AnagramExecutor(tuned.getThreads())) {
+                metrics.setExecutorService(executor.getIoExecutor());
+                metrics.stageStarted(Stage.DIVIDE_AND_CONQUER);
+                AnagramDivider divider = new AnagramDivider(runDirectory, input.toString(), executor.getIoExecutor(),
+                        tuned, bucketCount, metrics, budget);
+                divider.prepare();
+                List<Shard> shards = new ArrayList<>(shardCount);
+                try {
+                    for (int i = 0; i < shardCount; i++) {
+                        shards.add(new Shard(workers.get(i % workers.size()), runDirectory, metrics, budget));
+                    }
+                    for (int bucket = 1; bucket <= bucketCount; bucket++) {
+                        shards.get((bucket - 1) % shardCount).buckets.add(bucket);
+                    }
+                    divideAndShip(divider, shards, tuned.getSignaturePolicy(), tuned.isCompressTempFiles(), executor);
+                } finally {
+                    for (Shard shard : shards) {
+                        shard.close();
+                    }
+                }
+                lineCount = divider.getLineCount();
+                long diff = metrics.stageCompleted(Stage.DIVIDE_AND_CONQUER);
+                LOG.info("Divide and conquer process has been completed in " + diff + " milliseconds");
+            }
+
+            List<Path> runPaths = new ArrayList<>(bucketCount);
+            for (int bucket = 1; bucket <= bucketCount; bucket++) {
+                runPaths.add(runDirectory.resolve(bucket + TEMP_FILE_EXTENSION));
+            }
+            metrics.stageStarted(Stage.MERGE);
+            if (statistics != null) {
+                summarize(runPaths, statistics, tuned.isCompressTempFiles(), metrics);
+            } else {
+                new AnagramMerger(runPaths, countGroups(sink, metrics), metrics, tuned.isCompressTempFiles()).call();
+            }
+            long diff = metrics.stageCompleted(Stage.MERGE);
+            LOG.info("Merge process has been completed in " + diff + " milliseconds");
+            LOG.info(input + " has taken " + metrics.getTempBytesHighWaterMark()
+                    + " bytes of temporary files at most");
+            return lineCount;
+        } finally {
+            if (runDirectory != null) {
+                try {
+                    ShardProtocol.deleteRecursively(runDirectory);
+                } catch (IOException ex) {
+                    LOG.log(Level.WARNING, "Temporary files in " + runDirectory + " could not be removed", ex);
+                }
+            }
+            metrics.runCompleted();
+        }
+    }
+
+    /**
+     * Divides the ranges and sends every divided range to all shards, each shard receiving the ranges in order.
+     * A range is released once every shard has sent it, which limits the chunks on the local disk.
+     * Once every range is sent, the runs of the shards are received
+     */
+    private static void divideAndShip(AnagramDivider divider, List<Shard> shards, SignaturePolicy policy,
+                                      boolean compressed, AnagramExecutor executor) throws Exception {
+        List<CompletableFuture<Void>> sent = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            shard.open(divider.getRangeCount(), policy, compressed);
+            sent.add(CompletableFuture.completedFuture(null));
+        }
+
+        Semaphore inFlight = new Semaphore(divider.getMaxRangesInFlight());
+        try {
+            for (int range = 0; range < divider.getRangeCount() && !anyFailed(sent); range++) {
+                inFlight.acquire();
+                final Callable<Void> rangeDivider = divider.getRangeDivider(range);
+                CompletableFuture<Void> divided = executor.track(CompletableFuture.runAsync(
+                        () -> run(rangeDivider::call), executor.getIoExecutor()));
+                AtomicInteger pendingShards = new AtomicInteger(shards.size());
+                for (int i = 0; i < shards.size(); i++) {
+                    Shard shard = shards.get(i);
+                    int chunk = range;
+                    CompletableFuture<Void> shipped = executor.track(
+                            sent.get(i).thenCombineAsync(divided, (previous, ignored) -> {
+                                run(() -> shard.send(chunk));
+                                return null;
+                            }, executor.getIoExecutor()));
+                    shipped.whenComplete((ignored, ex) -> {
+                        if (pendingShards.decrementAndGet() == 0) {
+                            inFlight.release();
+                        }
+                    });
+                    sent.set(i, shipped);
+                }
+            }
+
+            for (int i = 0; i < shards.size(); i++) {
+                Shard shard = shards.get(i);
+                sent.set(i, executor.track(
+                        sent.get(i).thenRunAsync(() -> run(shard::receiveRuns), executor.getIoExecutor())));
+            }
+        } catch (InterruptedException ex) {
+            throw new Exception("Process has been interrupted while executing algorithm.", ex);
+        }
+
+        try {
+            CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0])).get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw cause instanceof Exception ? (Exception) cause : ex;
+        } catch (CancellationException ex) {
+            throw new Exception("Process has been cancelled.", ex);
+        } catch (InterruptedException ex) {
+            throw new Exception("Process has been interrupted while executing algorithm.", ex);
+        }
+    }
+
+    /**
+     * Counts the groups on their way to the sink
+     */
+    private static AnagramGroupSink countGroups(AnagramGroupSink sink, AnagramMetrics metrics) {
+        return new AnagramGroupSink() {
+            @Override
+            public void accept(List<String> words) throws IOException {
+                metrics.groupEmitted(words);
+                sink.accept(words);
+            }
+        };
+    }
+
+    /**
+     * Reads the runs one at a time into the statistics and removes them, the order of the groups does not matter
+     */
+    private static void summarize(List<Path> runPaths, AnagramStatistics statistics, boolean compressed,
+                                  AnagramMetrics metrics) throws IOException {
+        long startNanos = System.nanoTime();
+        long bytes = 0;
+        for (Path runPath : runPaths) {
+            try (AnagramRunReader reader = new AnagramRunReader(runPath, compressed)) {
+                AnagramGroup group;
+                while ((group = reader.next()) != null) {
+                    statistics.add(group.getOrdinal(), group.getWords());
+                    metrics.groupEmitted(group.getWords());
+                }
+            }
+            bytes += Files.size(runPath);
+            Files.delete(runPath);
+        }
+        metrics.runsMerged(bytes, startNanos);
+    }
+
+    /**
+     * Runs a throwing step inside a pipeline stage, checked exceptions fail the stage
+     */
+    private static void run(Step step) {
+        try {
+            step.run();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    private static boolean anyFailed(List<CompletableFuture<Void>> futures) {
+        for (CompletableFuture<Void> future : futures) {
+            if (future.isCompletedExceptionally()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A pipeline step which may throw checked exceptions
+     */
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    /**
+     * Connection of one shard, the buckets it holds and the worker grouping them
+     */
+    private static class Shard implements Closeable {
+        // Time given to a failed worker to tell why before the send failure is reported as it is
+        private static final int ERROR_TIMEOUT_MILLIS = 5_000;
+
+        private final InetSocketAddress worker;
+        private final Path runDirectory;
+        private final AnagramMetrics metrics;
+        private final TempDiskBudget budget;
+        private final List<Integer> buckets = new ArrayList<>();
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        Shard(InetSocketAddress worker, Path runDirectory, AnagramMetrics metrics, TempDiskBudget budget) {
+            this.worker = worker;
+            this.runDirectory = runDirectory;
+            this.metrics = metrics;
+            this.budget = budget;
+        }
+
+        /**
+         * Connects to the worker and tells it the buckets of the shard and whether the chunks and runs are compressed
+         */
+        void open(int rangeCount, SignaturePolicy policy, boolean compressed) throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(worker);
+            } catch (IOException ex) {
+                throw new IOException("Worker " + worker + " cannot be reached", ex);
+            }
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(compressed);
+            out.writeUTF(policy.getOptionName());
+            out.writeInt(rangeCount);
+            out.writeInt(buckets.size());
+            for (int bucket : buckets) {
+                out.writeInt(bucket);
+            }
+        }
+
+        /**
+         * Sends the chunks of a divided range and removes them
+         */
+        void send(int range) throws IOException {
+            try {
+                for (int bucket : buckets) {
+                    long startNanos = System.nanoTime();
+                    Path chunkPath = runDirectory.resolve(AnagramDivider.getChunkFileName(bucket, range));
+                    out.writeByte(CHUNK);
+                    out.writeInt(bucket);
+                    out.writeInt(range);
+                    long size = ShardProtocol.sendFile(out, chunkPath);
+                    Files.delete(chunkPath);
+                    metrics.chunkConquered(size, startNanos);
+                }
+                out.flush();
+            } catch (IOException ex) {
+                throw failure(ex);
+            }
+        }
+
+        /**
+         * Ends the shard and receives the runs of its buckets into the run directory
+         */
+        void receiveRuns() throws IOException {
+            byte frame;
+            try {
+                out.writeByte(END);
+                out.flush();
+                while ((frame = in.readByte()) == RUN) {
+                    int bucket = in.readInt();
+                    long size = ShardProtocol.receiveFile(in, runDirectory.resolve(bucket + TEMP_FILE_EXTENSION),
+                            budget);
+                    metrics.runWritten(size, 0);
+                    budget.release(size);
+                }
+            } catch (IOException ex) {
+                throw failure(ex);
+            }
+            if (frame == ERROR) {
+                throw new IOException("Worker " + worker + " has failed: " + in.readUTF());
+            } else if (frame != DONE) {
+                throw new IOException("Worker " + worker + " has sent an unexpected frame " + frame);
+            }
+        }
+
+        /**
+         * Gives the reason a failed worker has sent before closing the connection, if there is one
+         */
+        private IOException failure(IOException ex) {
+            try {
+                socket.setSoTimeout(ERROR_TIMEOUT_MILLIS);
+                if (in.readByte() == ERROR) {
+                    return new IOException("Worker " + worker + " has failed: " + in.readUTF(), ex);
+                }
+            } catch (IOException ignored) {
+                // The worker has not told anything
+            }
+            return new IOException("Connection to worker " + worker + " has been lost", ex);
+        }
+
+        /**
+         * Closes the connection, which also unblocks a task still sending to the worker
+         */
+        @Override
+        public void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    LOG.log(Level.FINE, "Connection to " + worker + " could not be closed", ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.oguzcam.searchanagram.cluster;
+
+import com.oguzcam.searchanagram.algorithm.TempDiskBudget;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Frames exchanged by a {@link ShardCoordinator} and a {@link ShardWorker} over one connection per shard.
+ * <p>
+ * The coordinator opens with the magic number, the version, whether temporary files are compressed,
+ * the name of the signature policy the chunks have been divided by,
+ * the range count and the buckets of the shard. Then it sends a CHUNK frame, the bucket, the range and the chunk file,
+ * for every chunk of the shard, in range order, and an END frame once every range is divided.
+ * The worker answers with a RUN frame, the bucket and the run file, for every bucket and a DONE frame.
+ * An ERROR frame with a message ends the connection from the worker at any time.
+ * Files are sent as their length and their bytes, as they are on disk
+ *
+ * @author Oguz Cam
+ */
+final class ShardProtocol {
+    static final int MAGIC = 0x414E4752;
+    static final int VERSION = 2;
+
+    static final byte CHUNK = 1;
+    static final byte END = 2;
+    static final byte RUN = 3;
+    static final byte DONE = 4;
+    static final byte ERROR = 5;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private ShardProtocol() {
+    }
+
+    /**
+     * Writes the length of the file and its bytes
+     *
+     * @return Size of the file
+     */
+    static long sendFile(DataOutputStream out, Path path) throws IOException {
+        long size = Files.size(path);
+        out.writeLong(size);
+        Files.copy(path, out);
+        return size;
+    }
+
+    /**
+     * Reads a file written by {@link #sendFile(DataOutputStream, Path)} into the given path
+     *
+     * @return Size of the file
+     */
+    static long receiveFile(DataInputStream in, Path path) throws IOException {
+        return receiveFile(in, path, null);
+    }
+
+    /**
+     * Reads a file written by {@link #sendFile(DataOutputStream, Path)} into the given path,
+     * reserving its size from the budget before writing it
+     *
+     * @param budget Temporary disk budget to reserve the file from, null for no limit.
+     * The caller releases the reservation once the file is counted by the metrics
+     * @return Size of the file
+     */
+    static long receiveFile(DataInputStream in, Path path, TempDiskBudget budget) throws IOException {
+        long size = in.readLong();
+        if (budget != null) {
+            budget.reserve(size);
+        }
+        byte[] buffer = new byte[(int) Math.min(COPY_BUFFER_SIZE, Math.max(1, size))];
+        try (OutputStream file = Files.newOutputStream(path)) {
+            long remaining = size;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Connection has been closed in the middle of " + path.getFileName());
+                }
+                file.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes a scratch directory with everything in it
+     */
+    static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
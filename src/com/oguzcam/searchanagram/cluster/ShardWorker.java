@@ -0,0 +1,195 @@
+package com.oguzcam.searchanagram.cluster;
+
+import com.oguzcam.searchanagram.algorithm.AnagramConquerer;
+import com.oguzcam.searchanagram.algorithm.AnagramDivider;
+import com.oguzcam.searchanagram.algorithm.SignaturePolicy;
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.CHUNK;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.DONE;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.END;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.ERROR;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.MAGIC;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.RUN;
+import static com.oguzcam.searchanagram.cluster.ShardProtocol.VERSION;
+
+/**
+ * Groups the shards a {@link ShardCoordinator} sends, see {@link ShardProtocol}.
+ * Every connection is one shard, grouped on its own thread in a scratch directory of its own:
+ * every chunk is grouped into the table of its bucket as soon as it arrives and removed, so at most one chunk
+ * of the shard is on disk, and once the shard ends the runs of its buckets are written and sent back one at a time.
+ * The grouping tables of the shard's buckets are alive together, which the threshold of the coordinator sizes.
+ * A coordinator keeps the connections of all its shards open during the whole run,
+ * so connections are never queued behind each other
+ *
+ * @author Oguz Cam
+ */
+public class ShardWorker implements Closeable {
+    private static final Logger LOG = Logger.getLogger(ShardWorker.class.getName());
+    /**
+     * Printed on the standard output by the "worker" command once the worker listens, followed by its port
+     */
+    public static final String READY_PREFIX = "Listening on port ";
+
+    private final ServerSocket serverSocket;
+    private final Path tempDirectory;
+    private final ExecutorService connections;
+
+    /**
+     * @param address Address to listen on, port 0 picks a free port
+     * @param tempDirectory Scratch directory, every shard creates its own directory inside
+     * @throws IOException May throw IOException if the address cannot be bound
+     */
+    public ShardWorker(InetSocketAddress address, Path tempDirectory) throws IOException {
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(address);
+        this.tempDirectory = tempDirectory;
+        final AtomicInteger connectionNumber = new AtomicInteger();
+        this.connections = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "shard-" + connectionNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return Port the worker listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts shards until the worker is closed
+     *
+     * @throws IOException May throw IOException while accepting connections
+     */
+    public void serve() throws IOException {
+        LOG.info("Waiting for shards on " + serverSocket.getLocalSocketAddress());
+        try {
+            while (!serverSocket.isClosed()) {
+                final Socket socket = serverSocket.accept();
+                connections.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            }
+        } catch (SocketException ex) {
+            if (!serverSocket.isClosed()) {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting shards and drops the shards being grouped
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+    }
+
+    /**
+     * Groups the shard of one connection, a failure is reported to the coordinator before the connection is closed
+     */
+    private void handle(Socket socket) {
+        Path directory = null;
+        try (Socket connection = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            try {
+                Files.createDirectories(tempDirectory);
+                directory = Files.createTempDirectory(tempDirectory, "shard");
+                group(in, out, directory);
+            } catch (Exception ex) {
+                LOG.log(Level.WARNING, "Shard of " + connection.getRemoteSocketAddress() + " has failed", ex);
+                out.writeByte(ERROR);
+                out.writeUTF(ex.getMessage() != null ? ex.getMessage() : ex.toString());
+                out.flush();
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Connection has been closed with an error", ex);
+        } finally {
+            if (directory != null) {
+                try {
+                    ShardProtocol.deleteRecursively(directory);
+                } catch (IOException ex) {
+                    LOG.log(Level.WARNING, "Temporary files in " + directory + " could not be removed", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Groups the chunks of the shard as they arrive, in range order, then writes and sends back the run
+     * of every bucket
+     */
+    private void group(DataInputStream in, DataOutputStream out, Path directory) throws Exception {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("The coordinator speaks another protocol version");
+        }
+        boolean compressed = in.readBoolean();
+        SignaturePolicy policy = SignaturePolicy.parse(in.readUTF());
+        int rangeCount = in.readInt();
+        int bucketCount = in.readInt();
+        Map<Integer, AnagramConquerer> conquerers = new LinkedHashMap<>();
+        for (int i = 0; i < bucketCount; i++) {
+            int bucket = in.readInt();
+            conquerers.put(bucket, new AnagramConquerer(directory, bucket, rangeCount, new AnagramMetrics(), policy,
+                    null, compressed));
+        }
+
+        byte frame;
+        while ((frame = in.readByte()) == CHUNK) {
+            int bucket = in.readInt();
+            int range = in.readInt();
+            AnagramConquerer conquerer = conquerers.get(bucket);
+            if (conquerer == null) {
+                throw new IOException("Bucket " + bucket + " is not in the shard");
+            }
+            ShardProtocol.receiveFile(in, directory.resolve(AnagramDivider.getChunkFileName(bucket, range)));
+            conquerer.consume(range);
+        }
+        if (frame != END) {
+            throw new IOException("Unexpected frame " + frame);
+        }
+
+        for (Map.Entry<Integer, AnagramConquerer> entry : conquerers.entrySet()) {
+            AnagramConquerer conquerer = entry.getValue();
+            conquerer.finish();
+            out.writeByte(RUN);
+            out.writeInt(entry.getKey());
+            ShardProtocol.sendFile(out, conquerer.getRunPath());
+            Files.delete(conquerer.getRunPath());
+        }
+        out.writeByte(DONE);
+        out.flush();
+    }
+}
@@ -0,0 +1,225 @@
+package com.oguzcam.searchanagram.commandline;
+
+import com.oguzcam.searchanagram.algorithm.AnagramAlgorithm;
+import com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration;
+import com.oguzcam.searchanagram.algorithm.AnagramGroupSink;
+import com.oguzcam.searchanagram.algorithm.AnagramStatistics;
+import com.oguzcam.searchanagram.cluster.ShardCoordinator;
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+import com.oguzcam.searchanagram.metrics.AnagramMetricsListener;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Processes several files together. The files are run by their own threads, a few at a time,
+ * while the divide and conquer tasks of all files share one worker pool, so a batch does not use
+ * more threads than one run would. Given workers, every file is grouped on them through a {@link ShardCoordinator}.
+ * Asked for the largest groups, the groups of every file are summarized by {@link AnagramStatistics} instead of
+ * being written, by the conquerers of a file grouped on disk without writing or merging runs
+ *
+ * @author Oguz Cam
+ */
+public class BatchProcessor {
+    /**
+     * Count of the largest groups to write the groups of every file into its output instead of summarizing them
+     */
+    public static final int WRITE_GROUPS = -1;
+
+    private static final Logger LOG = Logger.getLogger(BatchProcessor.class.getName());
+
+    private final Path tempDirectory;
+    private final AnagramAlgorithmConfiguration configuration;
+    private final int parallelFiles;
+    private final boolean withMetrics;
+    private final List<InetSocketAddress> workerAddresses;
+    private final int top;
+
+    /**
+     * @param tempDirectory Scratch directory, every run creates its own directory inside
+     * @param configuration Threshold and thread count of the runs, the thread count sizes the worker pool
+     * @param parallelFiles Count of files processed at the same time
+     */
+    public BatchProcessor(Path tempDirectory, AnagramAlgorithmConfiguration configuration, int parallelFiles) {
+        this(tempDirectory, configuration, parallelFiles, false);
+    }
+
+    /**
+     * @param withMetrics Whether the metrics of every run are put into its summary
+     */
+    public BatchProcessor(Path tempDirectory, AnagramAlgorithmConfiguration configuration, int parallelFiles,
+                          boolean withMetrics) {
+        this(tempDirectory, configuration, parallelFiles, withMetrics, List.of());
+    }
+
+    /**
+     * @param workerAddresses Addresses of the workers grouping the files, empty to group them in this JVM
+     */
+    public BatchProcessor(Path tempDirectory, AnagramAlgorithmConfiguration configuration, int parallelFiles,
+                          boolean withMetrics, List<InetSocketAddress> workerAddresses) {
+        this(tempDirectory, configuration, parallelFiles, withMetrics, workerAddresses, WRITE_GROUPS);
+    }
+
+    /**
+     * @param top Count of the largest groups put into the summary of every file instead of writing its output,
+     * {@link #WRITE_GROUPS} to write the outputs
+     */
+    public BatchProcessor(Path tempDirectory, AnagramAlgorithmConfiguration configuration, int parallelFiles,
+                          boolean withMetrics, List<InetSocketAddress> workerAddresses, int top) {
+        this.tempDirectory = tempDirectory;
+        this.configuration = configuration;
+        this.parallelFiles = Math.max(1, parallelFiles);
+        this.withMetrics = withMetrics;
+        this.workerAddresses = workerAddresses;
+        this.top = top;
+    }
+
+    /**
+     * Processes the inputs into the outputs of the same index. A failing file does not stop the others
+     *
+     * @param inputs Files to process
+     * @param outputs Files to write, one per input, not written if the groups are summarized
+     * @return Summaries in order of the inputs
+     * @throws InterruptedException If the batch is interrupted while waiting for the files
+     */
+    public List<FileSummary> process(List<Path> inputs, List<Path> outputs) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(configuration.getPoolSize());
+        ExecutorService files = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelFiles, inputs.size())));
+        try {
+            List<Callable<FileSummary>> tasks = new ArrayList<>(inputs.size());
+            for (int i = 0; i < inputs.size(); i++) {
+                final Path input = inputs.get(i);
+                final Path output = outputs.get(i);
+                tasks.add(new Callable<FileSummary>() {
+                    @Override
+                    public FileSummary call() {
+                        return process(input, output, workers);
+                    }
+                });
+            }
+
+            List<FileSummary> summaries = new ArrayList<>(inputs.size());
+            List<Future<FileSummary>> futures = files.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    summaries.add(futures.get(i).get());
+                } catch (ExecutionException ex) {
+                    // process catches the failures of the file itself, this is only a last resort
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    summaries.add(new FileSummary(inputs.get(i), null, 0, 0, 0, 0, 0, cause.toString()));
+                }
+            }
+            return summaries;
+        } finally {
+            files.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Processes one file, counting the groups on their way to the output file or summarizing them
+     */
+    private FileSummary process(Path input, Path output, ExecutorService workers) {
+        long startTime = System.currentTimeMillis();
+        long bytes = 0;
+        long lines = 0;
+        final long[] counts = new long[2];
+        final String[] metrics = new String[1];
+        AnagramStatistics statistics = top != WRITE_GROUPS ? new AnagramStatistics(top) : null;
+        Path written = statistics == null ? output : null;
+        try {
+            if (!Files.isRegularFile(input)) {
+                throw new Exception(input + " does not exist");
+            }
+            bytes = Files.size(input);
+            Path parent = output.toAbsolutePath().getParent();
+            if (parent != null && statistics == null) {
+                Files.createDirectories(parent);
+            }
+
+            AnagramMetricsListener listener = !withMetrics ? null : new AnagramMetricsListener() {
+                @Override
+                public void runCompleted(AnagramMetrics runMetrics) {
+                    metrics[0] = runMetrics.toJson();
+                }
+            };
+            AnagramAlgorithm algorithm = null;
+            ShardCoordinator coordinator = null;
+            if (workerAddresses.isEmpty()) {
+                algorithm = new AnagramAlgorithm(input.toString(), tempDirectory, parent, configuration, workers);
+                algorithm.setMetricsListener(listener);
+            } else {
+                coordinator = new ShardCoordinator(workerAddresses, tempDirectory, configuration);
+                coordinator.setMetricsListener(listener);
+            }
+            if (statistics != null) {
+                lines = algorithm != null
+                        ? algorithm.summarize(input, statistics)
+                        : coordinator.summarize(input, statistics);
+                counts[0] = statistics.getGroups();
+                counts[1] = statistics.getGroupedWords();
+            } else {
+                try (AnagramGroupSink file = AnagramGroupSink.of(FileChannel.open(output, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+                    AnagramGroupSink sink = new AnagramGroupSink() {
+                        @Override
+                        public void accept(List<String> words) throws IOException {
+                            counts[0]++;
+                            counts[1] += words.size();
+                            file.accept(words);
+                        }
+                    };
+                    lines = algorithm != null ? algorithm.process(input, sink) : coordinator.process(input, sink);
+                }
+            }
+        } catch (Exception | Error ex) {
+            // An Error like OutOfMemoryError fails this file only, the heap it took is given back with its run
+            LOG.log(Level.WARNING, input + " could not be processed", ex);
+            String message = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+            return new FileSummary(input, written, bytes, lines, counts[0], counts[1],
+                    System.currentTimeMillis() - startTime, message, metrics[0]);
+        }
+
+        long diff = System.currentTimeMillis() - startTime;
+        LOG.info(input + " has been processed in " + diff + " milliseconds");
+        return new FileSummary(input, written, bytes, lines, counts[0], counts[1], diff, null, metrics[0],
+                statistics != null ? toJson(statistics) : null);
+    }
+
+    /**
+     * Gives the JSON object of the group sizes and the largest groups
+     */
+    private static String toJson(AnagramStatistics statistics) {
+        StringBuilder builder = new StringBuilder("{\"groupSizes\":{");
+        String separator = "";
+        for (Map.Entry<Integer, Long> entry : statistics.getGroupSizes().entrySet()) {
+            builder.append(separator).append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+            separator = ",";
+        }
+        builder.append("},\"largestGroups\":[");
+        separator = "";
+        for (AnagramStatistics.LargestGroup group : statistics.getLargestGroups()) {
+            builder.append(separator).append("{\"size\":").append(group.getSize()).append(",\"words\":[");
+            for (int i = 0; i < group.getWords().size(); i++) {
+                builder.append(i == 0 ? "" : ",").append(FileSummary.quote(group.getWords().get(i)));
+            }
+            builder.append("]}");
+            separator = ",";
+        }
+        return builder.append("]}").toString();
+    }
+}
@@ -0,0 +1,298 @@
+package com.oguzcam.searchanagram.commandline;
+
+import com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration;
+import com.oguzcam.searchanagram.cluster.LocalWorkers;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.FILE_EXTENSION;
+
+/**
+ * Headless entry point, "process [options] &lt;file or glob&gt;...".
+ * Every input is grouped into its own output file and a JSON summary of the batch is written at the end.
+ * With "--top" the groups are only summarized, without writing any output file.
+ * Globs like "data/*.txt" or "data/**.txt" are expanded here, so they work without a shell too.
+ * With "--workers" the files are grouped on worker JVMs, given by their addresses or started here
+ *
+ * @author Oguz Cam
+ */
+public class CommandLineRunner {
+    public static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: process [options] <file or glob>...",
+            "  --output=<file>          Output file, only for a single input",
+            "  --output-dir=<directory> Directory of the output files, named after the inputs (default ./output)",
+            "  --temp-dir=<directory>   Scratch directory (default ./tempfiles)",
+            "  --temp-budget=<size>     Temporary disk space of a file at most, like 20g (default no limit)",
+            "  --compress               Compress the temporary files, workers follow the coordinator",
+            "  --parallel=<count>       Files processed at the same time (default 2)",
+            "  --summary=<file>         File to write the JSON summary into (default standard output)",
+            "  --metrics                Add the stage timings and counters of every file to the summary",
+            "  --top=<count>            Write no output files, add the counts of the group sizes and the count",
+            "                           largest groups of every file to the summary instead",
+            "  --workers=<host:port,...|count>",
+            "                           Group on workers started with \"worker [port] [bind address]\",",
+            "                           or on the given count of worker JVMs started on this machine",
+            "  --worker-heap=<size>     Maximum heap of the started worker JVMs, like 512m",
+            "  --threshold=<lines|auto> Lines per bucket",
+            "  --threads=<count|auto>   Worker threads shared by all files",
+            "  --signature=<policy>     Which words are anagrams: exact (default), case-folded,",
+            "                           accent-insensitive or letters-only");
+
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    public CommandLineRunner(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Runs the batch, the threshold and thread count options are read from the system properties
+     *
+     * @param args Options and inputs
+     * @return Exit code, 0 if every file has been processed, 1 if any failed, 2 for wrong arguments
+     * @throws Exception May throw Exception if the batch is interrupted or the summary cannot be written
+     */
+    public int run(String[] args) throws Exception {
+        Path output = null;
+        Path outputDirectory = Paths.get("output");
+        Path tempDirectory = Paths.get("tempfiles");
+        Path summary = null;
+        int parallelFiles = 2;
+        boolean withMetrics = false;
+        String workers = null;
+        String workerHeap = null;
+        int top = BatchProcessor.WRITE_GROUPS;
+        List<String> patterns = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--output=")) {
+                    output = Paths.get(getValue(arg));
+                } else if (arg.startsWith("--output-dir=")) {
+                    outputDirectory = Paths.get(getValue(arg));
+                } else if (arg.startsWith("--temp-dir=")) {
+                    tempDirectory = Paths.get(getValue(arg));
+                } else if (arg.startsWith("--parallel=")) {
+                    parallelFiles = Integer.parseInt(getValue(arg));
+                } else if (arg.startsWith("--summary=")) {
+                    summary = Paths.get(getValue(arg));
+                } else if (arg.equals("--metrics")) {
+                    withMetrics = true;
+                } else if (arg.startsWith("--top=")) {
+                    top = Integer.parseInt(getValue(arg));
+                    if (top < 0) {
+                        throw new IllegalArgumentException("--top cannot be negative");
+                    }
+                } else if (arg.startsWith("--workers=")) {
+                    workers = getValue(arg);
+                } else if (arg.startsWith("--worker-heap=")) {
+                    workerHeap = getValue(arg);
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else {
+                    patterns.add(arg);
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            err.println(ex.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+
+        List<Path> inputs = new ArrayList<>();
+        for (String pattern : patterns) {
+            List<Path> matches = expand(pattern);
+            if (matches.isEmpty()) {
+                err.println("No file matches " + pattern);
+            }
+            inputs.addAll(matches);
+        }
+        if (inputs.isEmpty() || (output != null && inputs.size() > 1)) {
+            err.println(inputs.isEmpty() ? "No input file" : "--output can only be used with a single input");
+            err.println(USAGE);
+            return 2;
+        }
+
+        List<InetSocketAddress> workerAddresses;
+        int localWorkerCount = 0;
+        try {
+            if (workers != null && workers.matches("\\d+")) {
+                localWorkerCount = Integer.parseInt(workers);
+                workerAddresses = List.of();
+            } else {
+                workerAddresses = workers != null ? parseAddresses(workers) : List.of();
+            }
+        } catch (IllegalArgumentException ex) {
+            err.println(ex.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+
+        List<Path> outputs = output != null ? List.of(output) : getOutputPaths(inputs, outputDirectory);
+        long startTime = System.currentTimeMillis();
+        List<FileSummary> summaries;
+        if (localWorkerCount > 0) {
+            try (LocalWorkers localWorkers = new LocalWorkers(localWorkerCount, workerHeap)) {
+                summaries = new BatchProcessor(tempDirectory, AnagramAlgorithmConfiguration.fromSystemProperties(),
+                        parallelFiles, withMetrics, localWorkers.getAddresses(), top).process(inputs, outputs);
+            }
+        } else {
+            summaries = new BatchProcessor(tempDirectory, AnagramAlgorithmConfiguration.fromSystemProperties(),
+                    parallelFiles, withMetrics, workerAddresses, top).process(inputs, outputs);
+        }
+        long diff = System.currentTimeMillis() - startTime;
+
+        String json = toJson(summaries, diff);
+        if (summary == null) {
+            out.println(json);
+        } else {
+            try (Writer writer = Files.newBufferedWriter(summary, CHARSET)) {
+                writer.write(json);
+                writer.write(System.lineSeparator());
+            }
+        }
+
+        for (FileSummary fileSummary : summaries) {
+            if (fileSummary.isFailed()) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private static String getValue(String option) {
+        return option.substring(option.indexOf('=') + 1);
+    }
+
+    /**
+     * Parses a comma separated list of "host:port" addresses
+     */
+    private static List<InetSocketAddress> parseAddresses(String value) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : value.split(",")) {
+            int colon = address.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Worker address " + address + " is not host:port");
+            }
+            addresses.add(new InetSocketAddress(address.substring(0, colon),
+                    Integer.parseInt(address.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    /**
+     * Names every output after its input, numbering inputs of the same name
+     */
+    private static List<Path> getOutputPaths(List<Path> inputs, Path outputDirectory) {
+        Set<String> names = new HashSet<>();
+        List<Path> outputs = new ArrayList<>(inputs.size());
+        for (Path input : inputs) {
+            String fileName = input.getFileName().toString();
+            int dot = fileName.lastIndexOf('.');
+            String baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+            String name = baseName + FILE_EXTENSION;
+            for (int i = 2; !names.add(name); i++) {
+                name = baseName + "_" + i + FILE_EXTENSION;
+            }
+            outputs.add(outputDirectory.resolve(name));
+        }
+        return outputs;
+    }
+
+    /**
+     * Expands a glob into the regular files it matches in name order, other arguments are taken as they are.
+     * The leading directories without glob characters are the directory to search from
+     *
+     * @param pattern File or glob
+     * @return Matching files
+     * @throws IOException May throw IOException while walking the directories
+     */
+    static List<Path> expand(String pattern) throws IOException {
+        if (!isGlob(pattern)) {
+            return List.of(Paths.get(pattern));
+        }
+
+        String separator = FileSystems.getDefault().getSeparator();
+        String[] segments = pattern.split(separator.equals("\\") ? "[\\\\/]" : "/");
+        int firstGlob = 0;
+        while (!isGlob(segments[firstGlob])) {
+            firstGlob++;
+        }
+
+        String baseName = String.join(separator, List.of(segments).subList(0, firstGlob));
+        Path base = firstGlob == 0 ? Paths.get("") : Paths.get(baseName.isEmpty() ? separator : baseName);
+        String rest = String.join(separator, List.of(segments).subList(firstGlob, segments.length));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + rest);
+        int maxDepth = rest.contains("**") ? Integer.MAX_VALUE : segments.length - firstGlob;
+        if (!Files.isDirectory(base.toAbsolutePath())) {
+            return List.of();
+        }
+
+        try (Stream<Path> paths = Files.walk(base.toAbsolutePath(), maxDepth)) {
+            Path absoluteBase = base.toAbsolutePath();
+            Set<Path> matches = paths
+                    .filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(absoluteBase.relativize(path)))
+                    .map(path -> base.resolve(absoluteBase.relativize(path)))
+                    .sorted()
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            return new ArrayList<>(matches);
+        }
+    }
+
+    private static boolean isGlob(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(value.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives the JSON summary of the batch
+     */
+    private static String toJson(List<FileSummary> summaries, long milliseconds) {
+        long failed = 0;
+        long bytes = 0;
+        long lines = 0;
+        long groups = 0;
+        for (FileSummary summary : summaries) {
+            failed += summary.isFailed() ? 1 : 0;
+            bytes += summary.getBytes();
+            lines += summary.getLines();
+            groups += summary.getGroups();
+        }
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"files\":").append(summaries.size())
+                .append(",\"failed\":").append(failed)
+                .append(",\"bytes\":").append(bytes)
+                .append(",\"lines\":").append(lines)
+                .append(",\"groups\":").append(groups)
+                .append(",\"milliseconds\":").append(milliseconds)
+                .append(",\"results\":[");
+        for (int i = 0; i < summaries.size(); i++) {
+            builder.append(i == 0 ? "" : ",").append(summaries.get(i).toJson());
+        }
+        return builder.append("]}").toString();
+    }
+}
@@ -0,0 +1,148 @@
+package com.oguzcam.searchanagram.commandline;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of one input file of a batch, written into the JSON summary
+ *
+ * @author Oguz Cam
+ */
+public class FileSummary {
+    private final Path input;
+    private final Path output;
+    private final long bytes;
+    private final long lines;
+    private final long groups;
+    private final long groupedWords;
+    private final long milliseconds;
+    private final String error;
+    private final String metrics;
+    private final String statistics;
+
+    /**
+     * @param input Processed file
+     * @param output Written file, null if the groups have only been summarized
+     * @param bytes Size of the input
+     * @param lines Lines of the input, empty lines included
+     * @param groups Groups written
+     * @param groupedWords Words of the groups written
+     * @param milliseconds Time spent on the file
+     * @param error Message of the failure, null if the file has been processed
+     */
+    public FileSummary(Path input, Path output, long bytes, long lines, long groups, long groupedWords,
+                       long milliseconds, String error) {
+        this(input, output, bytes, lines, groups, groupedWords, milliseconds, error, null);
+    }
+
+    /**
+     * @param metrics JSON object of the run metrics, null if they have not been collected
+     */
+    public FileSummary(Path input, Path output, long bytes, long lines, long groups, long groupedWords,
+                       long milliseconds, String error, String metrics) {
+        this(input, output, bytes, lines, groups, groupedWords, milliseconds, error, metrics, null);
+    }
+
+    /**
+     * @param statistics JSON object of the group sizes and the largest groups, null if they have not been collected
+     */
+    public FileSummary(Path input, Path output, long bytes, long lines, long groups, long groupedWords,
+                       long milliseconds, String error, String metrics, String statistics) {
+        this.input = input;
+        this.output = output;
+        this.bytes = bytes;
+        this.lines = lines;
+        this.groups = groups;
+        this.groupedWords = groupedWords;
+        this.milliseconds = milliseconds;
+        this.error = error;
+        this.metrics = metrics;
+        this.statistics = statistics;
+    }
+
+    public Path getInput() {
+        return input;
+    }
+
+    public Path getOutput() {
+        return output;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getGroups() {
+        return groups;
+    }
+
+    public long getGroupedWords() {
+        return groupedWords;
+    }
+
+    public long getMilliseconds() {
+        return milliseconds;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public String getMetrics() {
+        return metrics;
+    }
+
+    public String getStatistics() {
+        return statistics;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    /**
+     * @return JSON object of the summary
+     */
+    public String toJson() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"input\":").append(quote(input.toString()))
+                .append(",\"output\":").append(output != null ? quote(output.toString()) : "null")
+                .append(",\"status\":").append(quote(isFailed() ? "failed" : "ok"))
+                .append(",\"bytes\":").append(bytes)
+                .append(",\"lines\":").append(lines)
+                .append(",\"groups\":").append(groups)
+                .append(",\"groupedWords\":").append(groupedWords)
+                .append(",\"milliseconds\":").append(milliseconds);
+        if (isFailed()) {
+            builder.append(",\"error\":").append(quote(error));
+        }
+        if (metrics != null) {
+            builder.append(",\"metrics\":").append(metrics);
+        }
+        if (statistics != null) {
+            builder.append(",\"statistics\":").append(statistics);
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Gives the JSON string literal of the value
+     */
+    static String quote(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
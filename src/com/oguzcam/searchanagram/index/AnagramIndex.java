@@ -0,0 +1,607 @@
+package com.oguzcam.searchanagram.index;
+
+import com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration;
+import com.oguzcam.searchanagram.algorithm.AnagramConquerer;
+import com.oguzcam.searchanagram.algorithm.AnagramDivider;
+import com.oguzcam.searchanagram.algorithm.AnagramExecutor;
+import com.oguzcam.searchanagram.algorithm.AnagramGroup;
+import com.oguzcam.searchanagram.algorithm.AnagramGroupSink;
+import com.oguzcam.searchanagram.algorithm.AnagramSignature;
+import com.oguzcam.searchanagram.algorithm.SignatureKey;
+import com.oguzcam.searchanagram.algorithm.SignaturePolicy;
+import com.oguzcam.searchanagram.algorithm.WordSource;
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+
+/**
+ * Persistent anagram index, keyed by anagram signature.
+ * The index directory holds one file per bucket, words are routed to buckets by the hash of their signature
+ * as the divider does. A bucket file is a sequence of groups in order of first occurrence,
+ * every group written as its first ordinal, its word count and its sorted words, single words included.
+ * Ordinals order the words as their lines, see {@link AnagramDivider}, and appended words follow the built ones.
+ * Appended words go to the append log of their bucket, one record of ordinal and word for every word new
+ * to its group, so an append writes as much as it appends. A bucket is read as its file with its log applied,
+ * and is compacted into a new bucket file once its log outgrows the file.
+ * The whole output can be regenerated by one sequential k-way pass over the compacted buckets.
+ * <p>
+ * The meta file holds the signature policy the index has been built with, the next ordinal,
+ * and the generation of the file and the committed length of the log of every bucket.
+ * Bucket files are never rewritten in place, new ones get a new generation, and every change ends by replacing
+ * the meta file atomically. Until then the index reads as before: a log is read only up to its committed length,
+ * and files of generations the meta file does not know are removed by the next change.
+ *
+ * @author Oguz Cam
+ */
+public class AnagramIndex {
+    private static final String META_FILE = "index.meta";
+    private static final String BUCKET_EXTENSION = ".idx";
+    private static final String LOG_EXTENSION = ".log";
+    private static final String NEW_EXTENSION = ".new";
+    // Files of the buckets, of any generation, which may be removed once the meta file does not refer to them
+    private static final Pattern BUCKET_FILE = Pattern.compile("bucket\\d+(\\.\\d+)?(\\.idx|\\.log)(\\.new)?");
+    private static final int VERSION = 3;
+    // Indexes of the second version have no append logs, their buckets are of the first generation
+    private static final int UNLOGGED_VERSION = 2;
+    // Indexes of the first version have no signature policy either, they are exact
+    private static final int EXACT_VERSION = 1;
+
+    private final Path directory;
+    private final int bucketCount;
+    private final SignaturePolicy signaturePolicy;
+    private long nextOrdinal;
+    private int[] generations;
+    private long[] logLengths;
+
+    private AnagramIndex(Path directory, int bucketCount, SignaturePolicy signaturePolicy, long nextOrdinal,
+                         int[] generations, long[] logLengths) {
+        this.directory = directory;
+        this.bucketCount = bucketCount;
+        this.signaturePolicy = signaturePolicy;
+        this.nextOrdinal = nextOrdinal;
+        this.generations = generations;
+        this.logLengths = logLengths;
+    }
+
+    /**
+     * Builds a new index from a word file, dividing and conquering it as the disk based algorithm does
+     *
+     * @param input File with one word per line
+     * @param directory Directory of the index, an existing index is replaced once the new one is complete
+     * @return Built index
+     * @throws Exception May throw Exception while dividing or conquering the file
+     */
+    public static AnagramIndex build(Path input, Path directory) throws Exception {
+        return build(input, directory, AnagramAlgorithmConfiguration.fromSystemProperties());
+    }
+
+    /**
+     * Builds a new index from a word file with the given threshold and thread count
+     *
+     * @param input File with one word per line
+     * @param directory Directory of the index, an existing index is replaced once the new one is complete
+     * @param configuration Threshold, thread count and signature policy, values to be tuned are tuned for the file
+     * @return Built index
+     * @throws Exception May throw Exception while dividing or conquering the file
+     */
+    public static AnagramIndex build(Path input, Path directory, AnagramAlgorithmConfiguration configuration)
+            throws Exception {
+        Files.createDirectories(directory);
+        // The buckets of an existing index stay readable until the meta file of the new one replaces its meta file
+        int generation = getLastGeneration(directory) + 1;
+        Path chunkDirectory = Files.createTempDirectory(directory, "build");
+        AnagramAlgorithmConfiguration tuned = configuration.tune(input);
+        int bucketCount = tuned.getBucketCount(Files.size(input));
+
+        try (AnagramExecutor executor = new AnagramExecutor(tuned.getThreads())) {
+            AnagramDivider divider = new AnagramDivider(chunkDirectory, input.toString(), executor.getIoExecutor(),
+                    tuned, bucketCount);
+            divider.divide();
+
+            int[] generations = new int[bucketCount];
+            Arrays.fill(generations, generation);
+            AnagramIndex index = new AnagramIndex(directory, bucketCount, tuned.getSignaturePolicy(), 0,
+                    generations, new long[bucketCount]);
+            List<Future<Void>> futures = new ArrayList<>(bucketCount);
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                final int bucketNumber = bucket;
+                final int rangeCount = divider.getRangeCount();
+                futures.add(executor.getCpuExecutor().submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        AnagramConquerer conquerer = new AnagramConquerer(chunkDirectory, bucketNumber + 1,
+                                rangeCount, new AnagramMetrics(), index.signaturePolicy, null,
+                                tuned.isCompressTempFiles());
+                        for (int range = 0; range < rangeCount; range++) {
+                            conquerer.consume(range);
+                        }
+                        index.writeBucket(bucketNumber, generation, conquerer.getGroups());
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            index.nextOrdinal = divider.getNextOrdinal();
+            index.writeMeta();
+            index.deleteUnusedFiles();
+            return index;
+        } finally {
+            // A failed build leaves chunks behind
+            deleteRecursively(chunkDirectory);
+        }
+    }
+
+    /**
+     * @return Last bucket generation of the index in the directory, 0 if there is none or it cannot be read
+     */
+    private static int getLastGeneration(Path directory) {
+        if (!Files.exists(directory.resolve(META_FILE))) {
+            return 0;
+        }
+        int generation = 0;
+        try {
+            for (int bucketGeneration : open(directory).generations) {
+                generation = Math.max(generation, bucketGeneration);
+            }
+        } catch (IOException ex) {
+            // An unreadable index is replaced, the files it may refer to are removed afterwards
+        }
+        return generation;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Opens an existing index
+     *
+     * @param directory Directory of the index
+     * @return Opened index
+     * @throws IOException May throw IOException if the index does not exist or cannot be read
+     */
+    public static AnagramIndex open(Path directory) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(directory.resolve(META_FILE))))) {
+            int version = input.readInt();
+            if (version != VERSION && version != UNLOGGED_VERSION && version != EXACT_VERSION) {
+                throw new IOException("Unsupported index version " + version + " in " + directory);
+            }
+            int bucketCount = input.readInt();
+            long nextOrdinal = input.readLong();
+            SignaturePolicy policy = version == EXACT_VERSION
+                    ? SignaturePolicy.EXACT : SignaturePolicy.parse(input.readUTF());
+            int[] generations = new int[bucketCount];
+            long[] logLengths = new long[bucketCount];
+            if (version == VERSION) {
+                for (int bucket = 0; bucket < bucketCount; bucket++) {
+                    generations[bucket] = input.readInt();
+                    logLengths[bucket] = input.readLong();
+                }
+            }
+            return new AnagramIndex(directory, bucketCount, policy, nextOrdinal, generations, logLengths);
+        }
+    }
+
+    /**
+     * Appends new words after the words already indexed. The words new to their groups are appended to the logs
+     * of their buckets, a bucket is only rewritten when its log would outgrow its file.
+     * The buckets the words fall into are read to find their groups, the other buckets are not touched.
+     * The groups which get a new word and have anagram words afterwards are emitted in insertion order.
+     * The new words are kept in memory until they are written, so appends are meant to be much smaller than the index.
+     * Nothing of the append is visible until its meta file replaces the previous one
+     *
+     * @param words New words, one per line, empty lines take an ordinal as in files
+     * @param changedGroups Sink to receive the changed groups, it is not closed
+     * @throws IOException May throw IOException while reading or writing buckets
+     */
+    public void append(WordSource words, AnagramGroupSink changedGroups) throws IOException {
+        AnagramSignature signature = new AnagramSignature(signaturePolicy);
+        Map<Integer, List<PendingWord>> pendingWords = new TreeMap<>();
+        long ordinal = nextOrdinal;
+        while (words.next()) {
+            if (words.getLength() > 0
+                    && !signature.compute(words.getBuffer(), words.getOffset(), words.getLength()).isEmpty()) {
+                int bucket = Math.floorMod(signature.hash(), bucketCount);
+                List<PendingWord> bucketWords = pendingWords.get(bucket);
+                if (bucketWords == null) {
+                    bucketWords = new ArrayList<>();
+                    pendingWords.put(bucket, bucketWords);
+                }
+                bucketWords.add(new PendingWord(ordinal, signature.getDecodedWord().toString()));
+            }
+            ordinal++;
+        }
+
+        int[] newGenerations = generations.clone();
+        long[] newLogLengths = logLengths.clone();
+        List<AnagramGroup> changed = new ArrayList<>();
+        for (Map.Entry<Integer, List<PendingWord>> entry : pendingWords.entrySet()) {
+            int bucket = entry.getKey();
+            Map<SignatureKey, AnagramGroup> groups = readBucket(bucket, signature);
+            Set<AnagramGroup> changedInBucket = new LinkedHashSet<>();
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream recordOutput = new DataOutputStream(records);
+            for (PendingWord pendingWord : entry.getValue()) {
+                SignatureKey key = signature.compute(pendingWord.word).toKey();
+                AnagramGroup group = groups.get(key);
+                if (group == null) {
+                    group = new AnagramGroup(pendingWord.ordinal);
+                    groups.put(key, group);
+                }
+                if (!group.getWords().contains(pendingWord.word)) {
+                    group.add(pendingWord.word);
+                    changedInBucket.add(group);
+                    recordOutput.writeLong(pendingWord.ordinal);
+                    recordOutput.writeUTF(pendingWord.word);
+                }
+            }
+            if (records.size() == 0) {
+                continue;
+            }
+            if (logLengths[bucket] + records.size() > getBucketSize(bucket)) {
+                newGenerations[bucket] = generations[bucket] + 1;
+                newLogLengths[bucket] = 0;
+                writeBucket(bucket, newGenerations[bucket], groups.values());
+            } else {
+                newLogLengths[bucket] = appendLog(bucket, records);
+            }
+            for (AnagramGroup group : changedInBucket) {
+                if (group.hasAnagrams()) {
+                    changed.add(group);
+                }
+            }
+        }
+
+        commit(ordinal, newGenerations, newLogLengths);
+
+        Collections.sort(changed, BY_ORDINAL);
+        for (AnagramGroup group : changed) {
+            changedGroups.accept(group.getSortedWords());
+        }
+    }
+
+    /**
+     * Emits every group having anagram words in insertion order, merging the buckets in one sequential pass.
+     * Buckets with append logs are compacted first, one at a time, so the pass reads bucket files only
+     *
+     * @param sink Sink to receive the groups, it is not closed
+     * @throws IOException May throw IOException while compacting or reading buckets
+     */
+    public void regenerate(AnagramGroupSink sink) throws IOException {
+        compact();
+        PriorityQueue<BucketReader> heap = new PriorityQueue<>(bucketCount, new Comparator<BucketReader>() {
+            @Override
+            public int compare(BucketReader r1, BucketReader r2) {
+                return Long.compare(r1.ordinal, r2.ordinal);
+            }
+        });
+        try {
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                BucketReader reader = new BucketReader(getBucketPath(bucket, generations[bucket]));
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+            }
+            while (!heap.isEmpty()) {
+                BucketReader reader = heap.poll();
+                if (reader.words.size() > 1) {
+                    sink.accept(reader.words);
+                }
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+            }
+        } finally {
+            for (BucketReader reader : heap) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Rewrites every bucket having an append log into a new bucket file with its log applied, one at a time
+     *
+     * @throws IOException May throw IOException while reading or writing buckets
+     */
+    public void compact() throws IOException {
+        int[] newGenerations = generations.clone();
+        long[] newLogLengths = logLengths.clone();
+        AnagramSignature signature = new AnagramSignature(signaturePolicy);
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            if (logLengths[bucket] > 0) {
+                newGenerations[bucket] = generations[bucket] + 1;
+                newLogLengths[bucket] = 0;
+                writeBucket(bucket, newGenerations[bucket], readBucket(bucket, signature).values());
+            }
+        }
+        if (!Arrays.equals(logLengths, newLogLengths)) {
+            commit(nextOrdinal, newGenerations, newLogLengths);
+        }
+    }
+
+    /**
+     * Reads every group of a bucket in order of first occurrence, with the words of its append log
+     *
+     * @param bucket Bucket index starting from 0
+     * @param groupVisitor Visitor receiving the first ordinal and the sorted words of every group
+     * @throws IOException May throw IOException while reading the bucket
+     */
+    public void readBucket(int bucket, GroupVisitor groupVisitor) throws IOException {
+        if (logLengths[bucket] > 0) {
+            for (AnagramGroup group : readBucket(bucket, new AnagramSignature(signaturePolicy)).values()) {
+                groupVisitor.visit(group.getOrdinal(), group.getWords());
+            }
+            return;
+        }
+        try (BucketReader reader = new BucketReader(getBucketPath(bucket, generations[bucket]))) {
+            while (reader.advance()) {
+                groupVisitor.visit(reader.ordinal, reader.words);
+            }
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * @return Policy deciding which words are anagrams in the index
+     */
+    public SignaturePolicy getSignaturePolicy() {
+        return signaturePolicy;
+    }
+
+    /**
+     * @return Ordinal the next appended word gets
+     */
+    public long getNextOrdinal() {
+        return nextOrdinal;
+    }
+
+    /**
+     * Reads the groups of a bucket file and applies the committed records of its append log,
+     * which add words to the groups of the file or start new groups after them
+     */
+    private Map<SignatureKey, AnagramGroup> readBucket(int bucket, AnagramSignature signature) throws IOException {
+        Map<SignatureKey, AnagramGroup> groups = new LinkedHashMap<>();
+        try (BucketReader reader = new BucketReader(getBucketPath(bucket, generations[bucket]))) {
+            while (reader.advance()) {
+                AnagramGroup group = new AnagramGroup(reader.ordinal);
+                for (String word : reader.words) {
+                    group.add(word);
+                }
+                groups.put(signature.compute(reader.words.get(0)).toKey(), group);
+            }
+        }
+        if (logLengths[bucket] > 0) {
+            byte[] log;
+            try (InputStream input = Files.newInputStream(getLogPath(bucket, generations[bucket]))) {
+                log = input.readNBytes((int) logLengths[bucket]);
+            }
+            if (log.length < logLengths[bucket]) {
+                throw new IOException("Append log of bucket " + bucket + " is shorter than its committed length");
+            }
+            DataInputStream records = new DataInputStream(new ByteArrayInputStream(log));
+            while (records.available() > 0) {
+                long ordinal = records.readLong();
+                String word = records.readUTF();
+                SignatureKey key = signature.compute(word).toKey();
+                AnagramGroup group = groups.get(key);
+                if (group == null) {
+                    group = new AnagramGroup(ordinal);
+                    groups.put(key, group);
+                }
+                group.add(word);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * @return Bytes of the bucket file, 0 if the bucket has never had a word
+     */
+    private long getBucketSize(int bucket) throws IOException {
+        Path bucketPath = getBucketPath(bucket, generations[bucket]);
+        return Files.exists(bucketPath) ? Files.size(bucketPath) : 0;
+    }
+
+    /**
+     * Writes the groups of a bucket into the file of the given generation and syncs it,
+     * the meta file refers to the new file only after it is complete
+     */
+    private void writeBucket(int bucket, int generation, Collection<AnagramGroup> groups) throws IOException {
+        try (FileChannel channel = FileChannel.open(getBucketPath(bucket, generation), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            for (AnagramGroup group : groups) {
+                output.writeLong(group.getOrdinal());
+                output.writeInt(group.getWords().size());
+                for (String word : group.getWords()) {
+                    output.writeUTF(word);
+                }
+            }
+            output.flush();
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Appends records to the log of a bucket after its committed length and syncs them.
+     * Records of an append which has not been committed are overwritten
+     *
+     * @return Length of the log with the records
+     */
+    private long appendLog(int bucket, ByteArrayOutputStream records) throws IOException {
+        try (FileChannel channel = FileChannel.open(getLogPath(bucket, generations[bucket]),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(logLengths[bucket]);
+            channel.position(logLengths[bucket]);
+            OutputStream output = Channels.newOutputStream(channel);
+            records.writeTo(output);
+            output.flush();
+            channel.force(true);
+            return channel.size();
+        }
+    }
+
+    /**
+     * Makes the written buckets and logs the index by replacing its meta file, then removes the unused files
+     */
+    private void commit(long newNextOrdinal, int[] newGenerations, long[] newLogLengths) throws IOException {
+        long previousNextOrdinal = nextOrdinal;
+        int[] previousGenerations = generations;
+        long[] previousLogLengths = logLengths;
+        nextOrdinal = newNextOrdinal;
+        generations = newGenerations;
+        logLengths = newLogLengths;
+        try {
+            writeMeta();
+        } catch (IOException ex) {
+            nextOrdinal = previousNextOrdinal;
+            generations = previousGenerations;
+            logLengths = previousLogLengths;
+            throw ex;
+        }
+        deleteUnusedFiles();
+    }
+
+    /**
+     * Writes the meta file next to it, syncs it, then replaces it atomically
+     */
+    private void writeMeta() throws IOException {
+        Path metaPath = directory.resolve(META_FILE);
+        Path newPath = directory.resolve(META_FILE + NEW_EXTENSION);
+        try (FileChannel channel = FileChannel.open(newPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            output.writeInt(VERSION);
+            output.writeInt(bucketCount);
+            output.writeLong(nextOrdinal);
+            output.writeUTF(signaturePolicy.getOptionName());
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                output.writeInt(generations[bucket]);
+                output.writeLong(logLengths[bucket]);
+            }
+            output.flush();
+            channel.force(true);
+        }
+        Files.move(newPath, metaPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the bucket files and logs the meta file does not refer to:
+     * older generations, buckets of a replaced index with more buckets, and leftovers of failed changes
+     */
+    private void deleteUnusedFiles() throws IOException {
+        Set<Path> used = new HashSet<>();
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            used.add(getBucketPath(bucket, generations[bucket]).getFileName());
+            used.add(getLogPath(bucket, generations[bucket]).getFileName());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Path name = file.getFileName();
+                if (!used.contains(name) && BUCKET_FILE.matcher(name.toString()).matches()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Files of the first generation keep the names of the indexes without generations
+     */
+    private Path getBucketPath(int bucket, int generation) {
+        return directory.resolve(getBucketName(bucket, generation) + BUCKET_EXTENSION);
+    }
+
+    private Path getLogPath(int bucket, int generation) {
+        return directory.resolve(getBucketName(bucket, generation) + LOG_EXTENSION);
+    }
+
+    private static String getBucketName(int bucket, int generation) {
+        return generation == 0 ? "bucket" + bucket : "bucket" + bucket + "." + generation;
+    }
+
+    private static final Comparator<AnagramGroup> BY_ORDINAL = new Comparator<AnagramGroup>() {
+        @Override
+        public int compare(AnagramGroup g1, AnagramGroup g2) {
+            return Long.compare(g1.getOrdinal(), g2.getOrdinal());
+        }
+    };
+
+    /**
+     * Receives the groups of a bucket
+     */
+    public interface GroupVisitor {
+        void visit(long ordinal, List<String> words) throws IOException;
+    }
+
+    private static class PendingWord {
+        private final long ordinal;
+        private final String word;
+
+        PendingWord(long ordinal, String word) {
+            this.ordinal = ordinal;
+            this.word = word;
+        }
+    }
+
+    /**
+     * Sequential reader of a bucket file
+     */
+    private static class BucketReader implements Closeable {
+        private final DataInputStream input;
+        private long ordinal;
+        private List<String> words;
+
+        BucketReader(Path path) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(
+                    Files.exists(path) ? Files.newInputStream(path) : new ByteArrayInputStream(new byte[0])));
+        }
+
+        boolean advance() throws IOException {
+            try {
+                ordinal = input.readLong();
+            } catch (EOFException ex) {
+                close();
+                return false;
+            }
+            int wordCount = input.readInt();
+            words = new ArrayList<>(wordCount);
+            for (int i = 0; i < wordCount; i++) {
+                words.add(input.readUTF());
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
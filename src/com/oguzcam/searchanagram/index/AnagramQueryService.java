@@ -0,0 +1,398 @@
+package com.oguzcam.searchanagram.index;
+
+import com.oguzcam.searchanagram.algorithm.AnagramSignature;
+import com.oguzcam.searchanagram.algorithm.SignaturePolicy;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+
+/**
+ * Answers "what are the anagrams of X?" from an in-memory table keyed by anagram signature.
+ * The table is loaded from an {@link AnagramIndex} or from an output file of grouped words.
+ * Words are looked up by the signature policy the groups have been made with.
+ * The table has no objects per word or group: the sorted words of every group are kept one after the other
+ * as UTF-8 in one array, and an open addressing table of group numbers is probed with the hash of the signature.
+ * A probe compares the signature of the word with the one of the first word of the group, computed again.
+ * Lookups are thread safe, requests can be served from a reader, like stdin, or from a local socket.
+ * <p>
+ * Request protocol: every request line holds one or more words separated by spaces.
+ * The response has one line per word, the word, a tab and its anagrams separated by spaces,
+ * followed by an empty line closing the response.
+ *
+ * @author Oguz Cam
+ */
+public class AnagramQueryService {
+    private static final Logger LOG = Logger.getLogger(AnagramQueryService.class.getName());
+    private static final int NONE = -1;
+    private static final String[] NO_WORDS = new String[0];
+    /**
+     * Connections served at the same time, the ones over it are closed right after they are accepted
+     */
+    public static final int MAX_CONNECTIONS = 256;
+    /**
+     * A connection sending no request for this long is closed, so idle clients do not hold a worker forever
+     */
+    public static final int IDLE_TIMEOUT_MILLIS = 60_000;
+    // Time an idle worker thread is kept before it ends
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    // Group numbers plus one of the slots, 0 for free slots
+    private final int[] slots;
+    private final int[] hashes;
+    // Words of group g are the words from firstWords[g] to firstWords[g + 1] exclusively
+    private final int[] firstWords;
+    // Word w spans the bytes from wordOffsets[w] to wordOffsets[w + 1] exclusively
+    private final int[] wordOffsets;
+    private final ByteBuffer words;
+    private final int size;
+    private final ThreadLocal<LookupSignatures> signatures;
+
+    private AnagramQueryService(GroupTable table, final SignaturePolicy policy) {
+        this.slots = table.slots;
+        this.hashes = Arrays.copyOf(table.hashes, table.groupCount);
+        this.firstWords = Arrays.copyOf(table.firstWords, table.groupCount + 1);
+        this.wordOffsets = Arrays.copyOf(table.wordOffsets, table.wordCount + 1);
+        this.words = ByteBuffer.wrap(Arrays.copyOf(table.bytes, table.byteCount)).asReadOnlyBuffer();
+        this.size = table.size;
+        this.signatures = new ThreadLocal<LookupSignatures>() {
+            @Override
+            protected LookupSignatures initialValue() {
+                return new LookupSignatures(policy);
+            }
+        };
+    }
+
+    /**
+     * Loads every group of the index, single words included, so words without anagrams in the index are also found
+     *
+     * @param index Index to load
+     * @return Service answering from the index
+     * @throws IOException May throw IOException while reading the buckets
+     */
+    public static AnagramQueryService load(AnagramIndex index) throws IOException {
+        final GroupTable table = new GroupTable(index.getSignaturePolicy());
+        for (int bucket = 0; bucket < index.getBucketCount(); bucket++) {
+            index.readBucket(bucket, new AnagramIndex.GroupVisitor() {
+                @Override
+                public void visit(long ordinal, List<String> words) {
+                    table.add(words.toArray(NO_WORDS));
+                }
+            });
+        }
+        return new AnagramQueryService(table, index.getSignaturePolicy());
+    }
+
+    /**
+     * Loads the groups of an output file, one group of space separated words per line
+     *
+     * @param groupedFile Output file of the algorithm
+     * @return Service answering from the groups
+     * @throws IOException May throw IOException while reading the file
+     */
+    public static AnagramQueryService load(Path groupedFile) throws IOException {
+        return load(groupedFile, SignaturePolicy.EXACT);
+    }
+
+    /**
+     * Loads the groups of an output file made with the given signature policy
+     *
+     * @param groupedFile Output file of the algorithm
+     * @param policy Policy the file has been grouped by
+     * @return Service answering from the groups
+     * @throws IOException May throw IOException while reading the file
+     */
+    public static AnagramQueryService load(Path groupedFile, SignaturePolicy policy) throws IOException {
+        GroupTable table = new GroupTable(policy);
+        try (BufferedReader reader = Files.newBufferedReader(groupedFile, CHARSET)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] words = line.trim().split(" ");
+                if (!words[0].isEmpty()) {
+                    Arrays.sort(words);
+                    table.add(words);
+                }
+            }
+        }
+        return new AnagramQueryService(table, policy);
+    }
+
+    /**
+     * Gives the anagrams of a word, the word itself excluded
+     *
+     * @param word Word to look up, it does not need to be in the index
+     * @return Sorted anagrams of the word, empty if it has none
+     */
+    public List<String> lookup(CharSequence word) {
+        LookupSignatures lookup = signatures.get();
+        AnagramSignature signature = lookup.word.compute(word);
+        int mask = slots.length - 1;
+        int group;
+        for (int slot = signature.hash() & mask; (group = slots[slot] - 1) != NONE; slot = (slot + 1) & mask) {
+            if (hashes[group] == signature.hash() && lookup.member.compute(words, getOffset(firstWords[group]),
+                    getLength(firstWords[group])).matches(signature)) {
+                break;
+            }
+        }
+        if (group == NONE) {
+            return Collections.emptyList();
+        }
+        List<String> anagrams = new ArrayList<>(firstWords[group + 1] - firstWords[group]);
+        String text = word.toString();
+        for (int member = firstWords[group]; member < firstWords[group + 1]; member++) {
+            String anagram = getWord(member);
+            if (!anagram.equals(text)) {
+                anagrams.add(anagram);
+            }
+        }
+        return anagrams;
+    }
+
+    /**
+     * Gives the anagrams of every word of a batch
+     *
+     * @param words Words to look up
+     * @return Anagrams of every word, in the order of the words
+     */
+    public List<List<String>> lookup(List<? extends CharSequence> words) {
+        List<List<String>> anagrams = new ArrayList<>(words.size());
+        for (CharSequence word : words) {
+            anagrams.add(lookup(word));
+        }
+        return anagrams;
+    }
+
+    /**
+     * @return Count of signatures in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    private int getOffset(int word) {
+        return wordOffsets[word];
+    }
+
+    private int getLength(int word) {
+        return wordOffsets[word + 1] - wordOffsets[word];
+    }
+
+    private String getWord(int word) {
+        byte[] bytes = new byte[getLength(word)];
+        words.get(getOffset(word), bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Answers the requests of a reader until it ends
+     *
+     * @param reader Reader of the requests, like stdin
+     * @param writer Writer of the responses
+     * @throws IOException May throw IOException while reading or writing
+     */
+    public void serve(BufferedReader reader, Writer writer) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            for (String word : line.trim().split(" +")) {
+                if (!word.isEmpty()) {
+                    writer.write(word);
+                    writer.write('\t');
+                    writer.write(String.join(" ", lookup(word)));
+                    writer.write(System.lineSeparator());
+                }
+            }
+            writer.write(System.lineSeparator());
+            writer.flush();
+        }
+    }
+
+    /**
+     * Answers the requests of local socket connections, every connection is served on its own worker.
+     * Workers are started as connections come and end when they are idle, up to {@link #MAX_CONNECTIONS},
+     * and connections idle for {@link #IDLE_TIMEOUT_MILLIS} are closed.
+     * Blocks until the server socket is closed
+     *
+     * @param port Port to listen on the loopback address
+     * @throws IOException May throw IOException while accepting connections
+     */
+    public void serve(int port) throws IOException {
+        serve(port, MAX_CONNECTIONS, IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Answers the requests of local socket connections, every connection is served on its own worker.
+     * Blocks until the server socket is closed
+     *
+     * @param port Port to listen on the loopback address
+     * @param maxConnections Connections served at the same time, the ones over it are closed right away
+     * @param idleTimeoutMillis Milliseconds a connection may wait without a request before it is closed, 0 for never
+     * @throws IOException May throw IOException while accepting connections
+     */
+    public void serve(int port, int maxConnections, final int idleTimeoutMillis) throws IOException {
+        final AtomicInteger workerNumber = new AtomicInteger();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(0, Math.max(1, maxConnections),
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "anagram-query-" + workerNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            LOG.info("Serving " + size() + " signatures on " + serverSocket.getLocalSocketAddress());
+            while (!serverSocket.isClosed()) {
+                final Socket socket = serverSocket.accept();
+                try {
+                    workers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try (Socket connection = socket;
+                                 BufferedReader reader = new BufferedReader(
+                                         new InputStreamReader(connection.getInputStream(), CHARSET));
+                                 Writer writer = new BufferedWriter(
+                                         new OutputStreamWriter(connection.getOutputStream(), CHARSET))) {
+                                connection.setSoTimeout(idleTimeoutMillis);
+                                serve(reader, writer);
+                            } catch (SocketTimeoutException ex) {
+                                LOG.fine("Connection has been idle for " + idleTimeoutMillis + " milliseconds");
+                            } catch (IOException ex) {
+                                LOG.log(Level.WARNING, "Connection has been closed with an error", ex);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    LOG.warning("Too many connections, " + socket.getRemoteSocketAddress() + " has been closed");
+                    socket.close();
+                }
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Signatures of one lookup thread: the one of the looked up word and the one of the group it is compared to
+     */
+    private static class LookupSignatures {
+        private final AnagramSignature word;
+        private final AnagramSignature member;
+
+        LookupSignatures(SignaturePolicy policy) {
+            this.word = new AnagramSignature(policy);
+            this.member = new AnagramSignature(policy);
+        }
+    }
+
+    /**
+     * Growing arrays of the table being loaded. A group of a signature loaded before replaces the earlier one,
+     * whose words stay in the arrays unreferenced
+     */
+    private static class GroupTable {
+        private final AnagramSignature signature;
+        private final AnagramSignature member;
+        private int[] slots = new int[1024];
+        private int[] hashes = new int[512];
+        private int[] firstWords = new int[513];
+        private int[] wordOffsets = new int[1025];
+        private byte[] bytes = new byte[8192];
+        private int groupCount;
+        private int wordCount;
+        private int byteCount;
+        private int size;
+
+        GroupTable(SignaturePolicy policy) {
+            this.signature = new AnagramSignature(policy);
+            this.member = new AnagramSignature(policy);
+        }
+
+        /**
+         * @param words Sorted words of a group
+         */
+        void add(String[] words) {
+            signature.compute(words[0]);
+            int group = groupCount++;
+            if (groupCount == hashes.length) {
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                firstWords = Arrays.copyOf(firstWords, hashes.length + 1);
+            }
+            hashes[group] = signature.hash();
+            firstWords[group] = wordCount;
+            for (String word : words) {
+                addWord(word.getBytes(CHARSET));
+            }
+            firstWords[group + 1] = wordCount;
+
+            int mask = slots.length - 1;
+            int slot = signature.hash() & mask;
+            int existing;
+            while ((existing = slots[slot] - 1) != NONE) {
+                if (hashes[existing] == signature.hash() && member.compute(ByteBuffer.wrap(bytes),
+                        wordOffsets[firstWords[existing]], getFirstLength(existing)).matches(signature)) {
+                    slots[slot] = group + 1;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = group + 1;
+            if (++size * 2 > slots.length) {
+                rehash();
+            }
+        }
+
+        private int getFirstLength(int group) {
+            int first = firstWords[group];
+            return wordOffsets[first + 1] - wordOffsets[first];
+        }
+
+        private void addWord(byte[] word) {
+            if (byteCount + word.length > bytes.length) {
+                long capacity = Math.max((long) bytes.length * 2, (long) byteCount + word.length);
+                if (capacity > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Words of the groups exceed the table, please use an index");
+                }
+                bytes = Arrays.copyOf(bytes, (int) capacity);
+            }
+            if (wordCount + 1 == wordOffsets.length) {
+                wordOffsets = Arrays.copyOf(wordOffsets, wordOffsets.length * 2);
+            }
+            System.arraycopy(word, 0, bytes, byteCount, word.length);
+            byteCount += word.length;
+            wordOffsets[++wordCount] = byteCount;
+        }
+
+        private void rehash() {
+            int[] newSlots = new int[slots.length * 2];
+            int mask = newSlots.length - 1;
+            for (int slot : slots) {
+                if (slot != 0) {
+                    int newSlot = hashes[slot - 1] & mask;
+                    while (newSlots[newSlot] != 0) {
+                        newSlot = (newSlot + 1) & mask;
+                    }
+                    newSlots[newSlot] = slot;
+                }
+            }
+            slots = newSlots;
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package com.oguzcam.searchanagram.index;
+
+import com.oguzcam.searchanagram.algorithm.SignaturePolicy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+
+/**
+ * Finds the dictionary words which can be formed from a subset of a rack of letters,
+ * and the phrases of dictionary words which are anagrams of a given phrase.
+ * <p>
+ * The dictionary is kept as a trie of the signatures of its groups. A signature is the sorted letters of its words,
+ * every letter an index into the alphabet of the dictionary, so a path from the root spells a signature
+ * and ends at the node of its group. A search walks the trie with the letter counts of the query
+ * and only descends into letters still available, so words which cannot be formed are never visited.
+ * Letters are the code points the signature policy of the dictionary maps the words to, whitespace left out.
+ * <p>
+ * Request protocol of {@link #serve(BufferedReader, Writer)}: "words &lt;letters&gt;" or
+ * "phrases [--words=&lt;count&gt;] &lt;phrase&gt;", answered with one word or phrase per line, followed by
+ * an empty line closing the response. Phrases are made of {@link #DEFAULT_PHRASE_WORDS} words at most unless
+ * the request gives its own count.
+ *
+ * @author Oguz Cam
+ */
+public class AnagramSearchEngine {
+    private static final Logger LOG = Logger.getLogger(AnagramSearchEngine.class.getName());
+    // Results of one search at most, phrases of many short words multiply quickly
+    public static final int MAX_RESULTS = 1000;
+    // Words of a phrase at most, unless the request gives its own count
+    public static final int DEFAULT_PHRASE_WORDS = 3;
+    private static final String WORDS_OPTION = "--words=";
+
+    private static final int NONE = -1;
+    private static final String[] NO_WORDS = new String[0];
+
+    private final SignaturePolicy policy;
+    // Code points of the dictionary in ascending order, a letter is an index into it
+    private final int[] alphabet;
+    // Trie nodes, node 0 is the root. The children of a node are linked in ascending letter order
+    private final int[] letters;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final int[] groupIndexes;
+    private final String[][] groups;
+    private final int[] groupLengths;
+    private final int maxLength;
+
+    private AnagramSearchEngine(SignaturePolicy policy, Map<String, TreeSet<String>> signatures) {
+        this.policy = policy;
+
+        BitSet codePoints = new BitSet();
+        for (String signature : signatures.keySet()) {
+            for (int i = 0; i < signature.length(); ) {
+                int codePoint = signature.codePointAt(i);
+                codePoints.set(codePoint);
+                i += Character.charCount(codePoint);
+            }
+        }
+        alphabet = codePoints.stream().toArray();
+
+        // Sorted signatures share their prefixes with the previous one, so the trie is built along one path
+        SortedGroup[] sorted = new SortedGroup[signatures.size()];
+        int index = 0;
+        for (Map.Entry<String, TreeSet<String>> entry : signatures.entrySet()) {
+            sorted[index++] = new SortedGroup(toLetters(entry.getKey()), entry.getValue().toArray(NO_WORDS));
+        }
+        Arrays.sort(sorted, new Comparator<SortedGroup>() {
+            @Override
+            public int compare(SortedGroup g1, SortedGroup g2) {
+                return compareLetters(g1.letters, g2.letters);
+            }
+        });
+        groups = new String[sorted.length][];
+        groupLengths = new int[sorted.length];
+        int longest = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            groups[i] = sorted[i].words;
+            groupLengths[i] = sorted[i].letters.length;
+            longest = Math.max(longest, groupLengths[i]);
+        }
+        maxLength = longest;
+
+        TrieBuilder builder = new TrieBuilder();
+        int[] previous = new int[0];
+        int[] path = new int[1];
+        for (int i = 0; i < sorted.length; i++) {
+            int[] signature = sorted[i].letters;
+            if (path.length < signature.length + 1) {
+                path = Arrays.copyOf(path, Math.max(signature.length + 1, path.length * 2));
+            }
+            int common = 0;
+            while (common < previous.length && common < signature.length && previous[common] == signature[common]) {
+                common++;
+            }
+            for (int depth = common; depth < signature.length; depth++) {
+                int node = builder.add(signature[depth]);
+                if (depth == common && common < previous.length) {
+                    // The node of the previous signature is the last child so far
+                    builder.nextSiblings[path[depth + 1]] = node;
+                } else {
+                    builder.firstChildren[path[depth]] = node;
+                }
+                path[depth + 1] = node;
+            }
+            builder.groupIndexes[path[signature.length]] = i;
+            previous = signature;
+        }
+        letters = Arrays.copyOf(builder.letters, builder.size);
+        firstChildren = Arrays.copyOf(builder.firstChildren, builder.size);
+        nextSiblings = Arrays.copyOf(builder.nextSiblings, builder.size);
+        groupIndexes = Arrays.copyOf(builder.groupIndexes, builder.size);
+    }
+
+    /**
+     * Loads every word of the index, grouped by the signature policy of the index
+     *
+     * @param index Index to load
+     * @return Engine searching the words of the index
+     * @throws IOException May throw IOException while reading the buckets
+     */
+    public static AnagramSearchEngine load(AnagramIndex index) throws IOException {
+        final SignaturePolicy policy = index.getSignaturePolicy();
+        final Map<String, TreeSet<String>> signatures = new HashMap<>();
+        for (int bucket = 0; bucket < index.getBucketCount(); bucket++) {
+            index.readBucket(bucket, new AnagramIndex.GroupVisitor() {
+                @Override
+                public void visit(long ordinal, List<String> words) {
+                    for (String word : words) {
+                        add(signatures, policy, word);
+                    }
+                }
+            });
+        }
+        return create(policy, signatures);
+    }
+
+    /**
+     * Loads a dictionary file with one word per line
+     *
+     * @param wordFile Dictionary file
+     * @param policy Policy deciding which letters the words are made of
+     * @return Engine searching the words of the file
+     * @throws IOException May throw IOException while reading the file
+     */
+    public static AnagramSearchEngine load(Path wordFile, SignaturePolicy policy) throws IOException {
+        Map<String, TreeSet<String>> signatures = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(wordFile, CHARSET)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                add(signatures, policy, line.trim());
+            }
+        }
+        return create(policy, signatures);
+    }
+
+    private static AnagramSearchEngine create(SignaturePolicy policy, Map<String, TreeSet<String>> signatures) {
+        long startTime = System.currentTimeMillis();
+        AnagramSearchEngine engine = new AnagramSearchEngine(policy, signatures);
+        LOG.info("Search trie of " + engine.groups.length + " signatures and " + engine.letters.length
+                + " nodes has been built in " + (System.currentTimeMillis() - startTime) + " milliseconds");
+        return engine;
+    }
+
+    private static void add(Map<String, TreeSet<String>> signatures, SignaturePolicy policy, String word) {
+        int[] codePoints = getCodePoints(policy.toLetters(word));
+        if (codePoints.length == 0) {
+            return;
+        }
+        Arrays.sort(codePoints);
+        String signature = new String(codePoints, 0, codePoints.length);
+        TreeSet<String> words = signatures.get(signature);
+        if (words == null) {
+            words = new TreeSet<>();
+            signatures.put(signature, words);
+        }
+        words.add(word);
+    }
+
+    /**
+     * Finds the words which can be formed from the letters of the rack, every letter used at most as often
+     * as it occurs in the rack. Letters which are in no word of the dictionary are ignored
+     *
+     * @param rack Letters to form words from, in any order
+     * @param limit Words to return at most
+     * @return Words, the longest first and alphabetically among the words of the same length
+     */
+    public List<String> findWords(CharSequence rack, int limit) {
+        int[] counts = new int[alphabet.length];
+        count(rack, counts);
+        FoundGroups found = new FoundGroups();
+        collectGroups(0, counts, found);
+        // The longest groups first, the length is packed above the group index so the keys sort as longs
+        long[] keys = Arrays.copyOf(found.keys, found.size);
+        Arrays.sort(keys);
+
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < keys.length && words.size() < limit; i++) {
+            int length = groupLengths[(int) keys[i]];
+            // Groups of the same length are merged so that their words come alphabetically
+            int end = i;
+            List<String> sameLength = new ArrayList<>();
+            while (end < keys.length && groupLengths[(int) keys[end]] == length) {
+                sameLength.addAll(Arrays.asList(groups[(int) keys[end]]));
+                end++;
+            }
+            Collections.sort(sameLength);
+            words.addAll(sameLength.subList(0, Math.min(sameLength.size(), limit - words.size())));
+            i = end - 1;
+        }
+        return words;
+    }
+
+    /**
+     * Collects the groups below the node which can be formed from the counted letters
+     */
+    private void collectGroups(int node, int[] counts, FoundGroups found) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            int letter = letters[child];
+            if (counts[letter] > 0) {
+                counts[letter]--;
+                int group = groupIndexes[child];
+                if (group != NONE) {
+                    found.add((long) (maxLength - groupLengths[group]) << 32 | group);
+                }
+                collectGroups(child, counts, found);
+                counts[letter]++;
+            }
+        }
+    }
+
+    /**
+     * Finds the phrases of dictionary words using exactly the letters of the given phrase, spaces ignored.
+     * Every phrase is returned once, its words in the order of their signatures
+     *
+     * @param phrase Phrase to find anagrams of
+     * @param maxWords Words of a phrase at most
+     * @param limit Phrases to return at most
+     * @return Phrases, every one as its words
+     */
+    public List<List<String>> findPhrases(CharSequence phrase, int maxWords, int limit) {
+        int[] counts = new int[alphabet.length];
+        int remaining = 0;
+        if (count(phrase, counts)) {
+            for (int count : counts) {
+                remaining += count;
+            }
+        }
+        if (remaining == 0 || maxWords < 1) {
+            return new ArrayList<>();
+        }
+        // Every word takes a letter at least
+        PhraseSearch search = new PhraseSearch(counts, remaining, Math.min(maxWords, remaining), limit);
+        walk(search, 0, 0, 0, false);
+        return search.phrases;
+    }
+
+    /**
+     * Walks the trie for the word at the given position of the phrase.
+     * The words of a phrase are found in ascending signature order, which makes every phrase unique:
+     * a word must begin with the smallest letter left, since the smallest signature left begins with it,
+     * and it cannot be smaller than the previous word, so it is compared to it while tied
+     */
+    private void walk(PhraseSearch search, int position, int node, int depth, boolean tied) {
+        int[] counts = search.counts;
+        int[] previous = position > 0 ? search.paths[position - 1] : null;
+        int previousLength = position > 0 ? search.pathLengths[position - 1] : 0;
+        int smallest = depth == 0 ? search.getSmallestLetter() : NONE;
+        for (int child = firstChildren[node]; child != NONE && search.phrases.size() < search.limit;
+             child = nextSiblings[child]) {
+            int letter = letters[child];
+            if (depth == 0 && letter != smallest) {
+                if (letter > smallest) {
+                    break;
+                }
+                continue;
+            }
+            if (counts[letter] == 0) {
+                continue;
+            }
+            boolean childTied = false;
+            if (tied && depth < previousLength) {
+                if (letter < previous[depth]) {
+                    continue;
+                }
+                childTied = letter == previous[depth];
+            }
+
+            counts[letter]--;
+            search.remaining--;
+            search.paths[position][depth] = letter;
+            int group = groupIndexes[child];
+            if (group != NONE && (!childTied || depth + 1 == previousLength)) {
+                search.groups[position] = group;
+                search.pathLengths[position] = depth + 1;
+                if (search.remaining == 0) {
+                    search.emit(position + 1);
+                } else if (position + 1 < search.maxWords) {
+                    walk(search, position + 1, 0, 0, true);
+                }
+            }
+            if (search.remaining > 0) {
+                walk(search, position, child, depth + 1, childTied);
+            }
+            search.remaining++;
+            counts[letter]++;
+        }
+    }
+
+    /**
+     * Answers the requests of a reader until it ends
+     *
+     * @param reader Reader of the requests, like stdin
+     * @param writer Writer of the responses
+     * @throws IOException May throw IOException while reading or writing
+     */
+    public void serve(BufferedReader reader, Writer writer) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith("words ")) {
+                for (String word : findWords(line.substring("words ".length()), MAX_RESULTS)) {
+                    writer.write(word);
+                    writer.write(System.lineSeparator());
+                }
+            } else if (line.startsWith("phrases ")) {
+                String phrase = line.substring("phrases ".length()).trim();
+                int maxWords = DEFAULT_PHRASE_WORDS;
+                if (phrase.startsWith(WORDS_OPTION)) {
+                    int end = phrase.indexOf(' ');
+                    String count = phrase.substring(WORDS_OPTION.length(), end < 0 ? phrase.length() : end);
+                    phrase = end < 0 ? "" : phrase.substring(end + 1);
+                    maxWords = parseWordCount(count);
+                }
+                if (maxWords < 1) {
+                    writer.write("The count of --words must be a positive number");
+                    writer.write(System.lineSeparator());
+                } else {
+                    for (List<String> words : findPhrases(phrase, maxWords, MAX_RESULTS)) {
+                        writer.write(String.join(" ", words));
+                        writer.write(System.lineSeparator());
+                    }
+                }
+            } else if (!line.isEmpty()) {
+                writer.write("Requests are \"words <letters>\" or \"phrases [--words=<count>] <phrase>\"");
+                writer.write(System.lineSeparator());
+            }
+            writer.write(System.lineSeparator());
+            writer.flush();
+        }
+    }
+
+    /**
+     * @return Word count of a request, 0 if it is not a number
+     */
+    private static int parseWordCount(String count) {
+        try {
+            return Integer.parseInt(count);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return Count of signatures in the trie
+     */
+    public int size() {
+        return groups.length;
+    }
+
+    public SignaturePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Counts the letters of the text into the counts of the alphabet
+     *
+     * @return False if the text has a letter which is in no word
+     */
+    private boolean count(CharSequence text, int[] counts) {
+        boolean known = true;
+        for (int codePoint : getCodePoints(policy.toLetters(text))) {
+            int letter = Arrays.binarySearch(alphabet, codePoint);
+            if (letter >= 0) {
+                counts[letter]++;
+            } else {
+                known = false;
+            }
+        }
+        return known;
+    }
+
+    private int[] toLetters(String signature) {
+        int[] codePoints = getCodePoints(signature);
+        for (int i = 0; i < codePoints.length; i++) {
+            codePoints[i] = Arrays.binarySearch(alphabet, codePoints[i]);
+        }
+        return codePoints;
+    }
+
+    /**
+     * @return Code points of the text, whitespace left out
+     */
+    private static int[] getCodePoints(String text) {
+        int[] codePoints = new int[text.length()];
+        int count = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (!Character.isWhitespace(codePoint)) {
+                codePoints[count++] = codePoint;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return Arrays.copyOf(codePoints, count);
+    }
+
+    private static int compareLetters(int[] s1, int[] s2) {
+        int length = Math.min(s1.length, s2.length);
+        for (int i = 0; i < length; i++) {
+            if (s1[i] != s2[i]) {
+                return Integer.compare(s1[i], s2[i]);
+            }
+        }
+        return Integer.compare(s1.length, s2.length);
+    }
+
+    private static class SortedGroup {
+        private final int[] letters;
+        private final String[] words;
+
+        SortedGroup(int[] letters, String[] words) {
+            this.letters = letters;
+            this.words = words;
+        }
+    }
+
+    /**
+     * Growing array of the groups a word search has found, every one as its sort key
+     */
+    private static class FoundGroups {
+        private long[] keys = new long[64];
+        private int size;
+
+        void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+    }
+
+    /**
+     * Growing arrays of the trie nodes being built
+     */
+    private static class TrieBuilder {
+        private int[] letters = new int[1024];
+        private int[] firstChildren = new int[1024];
+        private int[] nextSiblings = new int[1024];
+        private int[] groupIndexes = new int[1024];
+        private int size;
+
+        TrieBuilder() {
+            add(NONE);
+        }
+
+        int add(int letter) {
+            if (size == letters.length) {
+                letters = Arrays.copyOf(letters, size * 2);
+                firstChildren = Arrays.copyOf(firstChildren, size * 2);
+                nextSiblings = Arrays.copyOf(nextSiblings, size * 2);
+                groupIndexes = Arrays.copyOf(groupIndexes, size * 2);
+            }
+            letters[size] = letter;
+            firstChildren[size] = NONE;
+            nextSiblings[size] = NONE;
+            groupIndexes[size] = NONE;
+            return size++;
+        }
+    }
+
+    /**
+     * State of one phrase search: the letters left, the signature of every word found so far and the phrases
+     */
+    private class PhraseSearch {
+        private final int[] counts;
+        private final int maxWords;
+        private final int limit;
+        private final int[][] paths;
+        private final int[] pathLengths;
+        private final int[] groups;
+        private final List<List<String>> phrases = new ArrayList<>();
+        private int remaining;
+
+        PhraseSearch(int[] counts, int remaining, int maxWords, int limit) {
+            this.counts = counts;
+            this.remaining = remaining;
+            this.maxWords = maxWords;
+            this.limit = limit;
+            this.paths = new int[maxWords][maxLength];
+            this.pathLengths = new int[maxWords];
+            this.groups = new int[maxWords];
+        }
+
+        /**
+         * @return Smallest letter left
+         */
+        int getSmallestLetter() {
+            for (int letter = 0; letter < counts.length; letter++) {
+                if (counts[letter] > 0) {
+                    return letter;
+                }
+            }
+            return NONE;
+        }
+
+        /**
+         * Adds the phrases of the words of the found groups, a group found several times in a row
+         * takes its words in ascending order so that no phrase is added twice
+         */
+        void emit(int wordCount) {
+            expand(new String[wordCount], new int[wordCount], 0);
+        }
+
+        private void expand(String[] words, int[] wordIndexes, int position) {
+            if (position == words.length) {
+                phrases.add(new ArrayList<>(Arrays.asList(words)));
+                return;
+            }
+            String[] groupWords = AnagramSearchEngine.this.groups[groups[position]];
+            boolean repeated = position > 0 && groups[position] == groups[position - 1];
+            for (int i = repeated ? wordIndexes[position - 1] : 0; i < groupWords.length && phrases.size() < limit;
+                 i++) {
+                words[position] = groupWords[i];
+                wordIndexes[position] = i;
+                expand(words, wordIndexes, position + 1);
+            }
+        }
+    }
+}
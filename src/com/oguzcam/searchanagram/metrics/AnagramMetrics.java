@@ -0,0 +1,378 @@
+package com.oguzcam.searchanagram.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters, timers and histograms of one run, updated by the divider, the conquerers and the merger.
+ * Every value can be read while the run goes on, through the getters, JMX or {@link #toJson()},
+ * and the listener is told about the stages and the progress
+ *
+ * @author Oguz Cam
+ */
+public class AnagramMetrics implements AnagramMetricsMXBean {
+    private static final Logger LOG = Logger.getLogger(AnagramMetrics.class.getName());
+    private static final AtomicInteger RUN_COUNTER = new AtomicInteger();
+    private static final AnagramMetricsListener NO_LISTENER = new AnagramMetricsListener() {
+    };
+
+    private final String name;
+    private final AnagramMetricsListener listener;
+    private final long startNanos = System.nanoTime();
+    private volatile Stage stage;
+    private volatile long stageStartNanos;
+    private volatile long elapsedNanos = -1;
+    private volatile ExecutorService executorService;
+    private ObjectName objectName;
+
+    private final AtomicLong inputBytes = new AtomicLong();
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder dividedBytes = new LongAdder();
+    private final LongAdder chunksWritten = new LongAdder();
+    private final LongAdder chunkBytesWritten = new LongAdder();
+    private final LongAdder chunksConquered = new LongAdder();
+    private final LongAdder chunkBytesRead = new LongAdder();
+    private final LongAdder runBytesWritten = new LongAdder();
+    private final LongAdder runBytesRead = new LongAdder();
+    private final AtomicLong runGroups = new AtomicLong();
+    private final LongAdder mergedGroups = new LongAdder();
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder groupedWords = new LongAdder();
+    private final AtomicLong tempBytes = new AtomicLong();
+    private final LongAccumulator tempBytesHighWaterMark = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+
+    private final Timer divideTimer = new Timer();
+    private final Timer conquerTimer = new Timer();
+    private final Timer mergeTimer = new Timer();
+    private final Histogram chunkSizes = new Histogram();
+    private final Histogram chunkConquerMicroseconds = new Histogram();
+    private final Histogram groupSizes = new Histogram();
+
+    public AnagramMetrics() {
+        this(null);
+    }
+
+    /**
+     * @param listener Listener of the run, null for none
+     */
+    public AnagramMetrics(AnagramMetricsListener listener) {
+        this.name = "run-" + RUN_COUNTER.incrementAndGet();
+        this.listener = listener != null ? listener : NO_LISTENER;
+    }
+
+    /**
+     * Makes the metrics visible through the platform MBean server until {@link #unregister()}
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("com.oguzcam.searchanagram:type=AnagramMetrics,name=" + name);
+            server.registerMBean(this, objectName);
+        } catch (JMException ex) {
+            objectName = null;
+            LOG.log(Level.WARNING, "Metrics could not be registered", ex);
+        }
+    }
+
+    public void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ex) {
+                LOG.log(Level.WARNING, "Metrics could not be unregistered", ex);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * @param executorService Thread pool of the run, its queue depth is sampled while tasks run
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    public void setInputBytes(long bytes) {
+        inputBytes.set(bytes);
+    }
+
+    public void stageStarted(Stage stage) {
+        this.stage = stage;
+        this.stageStartNanos = System.nanoTime();
+        listener.stageStarted(stage);
+    }
+
+    /**
+     * @return Wall time of the stage in milliseconds
+     */
+    public long stageCompleted(Stage stage) {
+        long milliseconds = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stageStartNanos);
+        listener.stageCompleted(stage, milliseconds);
+        return milliseconds;
+    }
+
+    /**
+     * Ends the run, tells the listener and unregisters the metrics
+     */
+    public void runCompleted() {
+        elapsedNanos = System.nanoTime() - startNanos;
+        unregister();
+        listener.runCompleted(this);
+    }
+
+    /**
+     * A range of the input has been divided
+     *
+     * @param bytes Bytes of the range
+     * @param lines Lines of the range
+     * @param startNanos Start of the range, from {@link System#nanoTime()}
+     */
+    public void rangeDivided(long bytes, long lines, long startNanos) {
+        divideTimer.recordSince(startNanos);
+        dividedBytes.add(bytes);
+        linesRead.add(lines);
+        sampleQueue();
+        listener.progress(Stage.DIVIDE, dividedBytes.sum(), inputBytes.get());
+    }
+
+    /**
+     * Lines grouped in memory, without dividing
+     */
+    public void linesRead(long lines) {
+        linesRead.add(lines);
+    }
+
+    /**
+     * A chunk file has been written
+     */
+    public void chunkWritten(long bytes) {
+        chunksWritten.increment();
+        chunkBytesWritten.add(bytes);
+        tempFileCreated(bytes);
+    }
+
+    /**
+     * A chunk file has been grouped and removed
+     *
+     * @param bytes Size of the chunk
+     * @param startNanos Start of the grouping, from {@link System#nanoTime()}
+     */
+    public void chunkConquered(long bytes, long startNanos) {
+        conquerTimer.recordSince(startNanos);
+        chunkConquerMicroseconds.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        chunksConquered.increment();
+        chunkBytesRead.add(bytes);
+        chunkSizes.record(bytes);
+        tempFileDeleted(bytes);
+        sampleQueue();
+    }
+
+    /**
+     * The run of a bucket has been written
+     *
+     * @param bytes Size of the run
+     * @param groupCount Groups of the run
+     */
+    public void runWritten(long bytes, long groupCount) {
+        runBytesWritten.add(bytes);
+        runGroups.addAndGet(groupCount);
+        tempFileCreated(bytes);
+    }
+
+    /**
+     * A group has been merged out of the runs
+     */
+    public void groupMerged() {
+        mergedGroups.increment();
+        long merged = mergedGroups.sum();
+        if ((merged & 0x3FFF) == 0) {
+            listener.progress(Stage.MERGE, merged, runGroups.get());
+        }
+    }
+
+    /**
+     * The runs have been merged and removed
+     *
+     * @param bytes Sizes of the runs
+     * @param startNanos Start of the merge, from {@link System#nanoTime()}
+     */
+    public void runsMerged(long bytes, long startNanos) {
+        mergeTimer.recordSince(startNanos);
+        runBytesRead.add(bytes);
+        tempFileDeleted(bytes);
+        listener.progress(Stage.MERGE, mergedGroups.sum(), runGroups.get());
+    }
+
+    /**
+     * A group has been given to the sink
+     *
+     * @param words Words of the group
+     */
+    public void groupEmitted(List<String> words) {
+        groups.increment();
+        groupedWords.add(words.size());
+        groupSizes.record(words.size());
+    }
+
+    private void tempFileCreated(long bytes) {
+        tempBytesHighWaterMark.accumulate(tempBytes.addAndGet(bytes));
+    }
+
+    private void tempFileDeleted(long bytes) {
+        tempBytes.addAndGet(-bytes);
+    }
+
+    private void sampleQueue() {
+        maxQueueDepth.accumulate(getQueueDepth());
+    }
+
+    @Override
+    public String getStage() {
+        Stage current = stage;
+        return current == null ? "" : current.getDescription();
+    }
+
+    @Override
+    public long getElapsedMilliseconds() {
+        long nanos = elapsedNanos >= 0 ? elapsedNanos : System.nanoTime() - startNanos;
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public long getInputBytes() {
+        return inputBytes.get();
+    }
+
+    @Override
+    public long getLinesRead() {
+        return linesRead.sum();
+    }
+
+    @Override
+    public long getWordsPerSecond() {
+        return getLinesRead() * 1000 / Math.max(1, getElapsedMilliseconds());
+    }
+
+    @Override
+    public long getChunksWritten() {
+        return chunksWritten.sum();
+    }
+
+    @Override
+    public long getChunkBytesWritten() {
+        return chunkBytesWritten.sum();
+    }
+
+    @Override
+    public long getChunksConquered() {
+        return chunksConquered.sum();
+    }
+
+    @Override
+    public long getChunkBytesRead() {
+        return chunkBytesRead.sum();
+    }
+
+    @Override
+    public long getRunBytesWritten() {
+        return runBytesWritten.sum();
+    }
+
+    @Override
+    public long getRunBytesRead() {
+        return runBytesRead.sum();
+    }
+
+    @Override
+    public long getGroups() {
+        return groups.sum();
+    }
+
+    @Override
+    public long getGroupedWords() {
+        return groupedWords.sum();
+    }
+
+    @Override
+    public long getTempBytes() {
+        return tempBytes.get();
+    }
+
+    @Override
+    public long getTempBytesHighWaterMark() {
+        return tempBytesHighWaterMark.get();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        ExecutorService current = executorService;
+        if (current instanceof ForkJoinPool) {
+            return ((ForkJoinPool) current).getQueuedSubmissionCount();
+        }
+        return current instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) current).getQueue().size() : 0;
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        return (int) maxQueueDepth.get();
+    }
+
+    @Override
+    public long getDivideMilliseconds() {
+        return divideTimer.getTotalMilliseconds();
+    }
+
+    @Override
+    public long getConquerMilliseconds() {
+        return conquerTimer.getTotalMilliseconds();
+    }
+
+    @Override
+    public long getMergeMilliseconds() {
+        return mergeTimer.getTotalMilliseconds();
+    }
+
+    public Histogram getGroupSizes() {
+        return groupSizes;
+    }
+
+    /**
+     * @return JSON report of the run
+     */
+    public String toJson() {
+        return "{\"elapsedMilliseconds\":" + getElapsedMilliseconds()
+                + ",\"inputBytes\":" + getInputBytes()
+                + ",\"linesRead\":" + getLinesRead()
+                + ",\"wordsPerSecond\":" + getWordsPerSecond()
+                + ",\"groups\":" + getGroups()
+                + ",\"groupedWords\":" + getGroupedWords()
+                + ",\"chunksWritten\":" + getChunksWritten()
+                + ",\"chunkBytesWritten\":" + getChunkBytesWritten()
+                + ",\"chunksConquered\":" + getChunksConquered()
+                + ",\"chunkBytesRead\":" + getChunkBytesRead()
+                + ",\"runBytesWritten\":" + getRunBytesWritten()
+                + ",\"runBytesRead\":" + getRunBytesRead()
+                + ",\"tempBytesHighWaterMark\":" + getTempBytesHighWaterMark()
+                + ",\"maxQueueDepth\":" + getMaxQueueDepth()
+                + ",\"divide\":" + divideTimer.toJson()
+                + ",\"conquer\":" + conquerTimer.toJson()
+                + ",\"merge\":" + mergeTimer.toJson()
+                + ",\"chunkSizes\":" + chunkSizes.toJson()
+                + ",\"chunkConquerMicroseconds\":" + chunkConquerMicroseconds.toJson()
+                + ",\"groupSizes\":" + groupSizes.toJson() + "}";
+    }
+}
@@ -0,0 +1,43 @@
+package com.oguzcam.searchanagram.metrics;
+
+/**
+ * Gets notified about the stages and the progress of a run. Methods may be called from the worker threads
+ * and should return quickly
+ *
+ * @author Oguz Cam
+ */
+public interface AnagramMetricsListener {
+
+    /**
+     * A stage of the run has started
+     */
+    default void stageStarted(Stage stage) {
+    }
+
+    /**
+     * A stage of the run has completed
+     *
+     * @param stage Completed stage
+     * @param milliseconds Wall time of the stage
+     */
+    default void stageCompleted(Stage stage, long milliseconds) {
+    }
+
+    /**
+     * Part of a stage has been done
+     *
+     * @param stage Running stage
+     * @param done Work done so far, in bytes of input for dividing and in groups for merging
+     * @param total Work of the whole stage, in the same unit
+     */
+    default void progress(Stage stage, long done, long total) {
+    }
+
+    /**
+     * The run has completed, successfully or not
+     *
+     * @param metrics Final metrics of the run
+     */
+    default void runCompleted(AnagramMetrics metrics) {
+    }
+}
@@ -0,0 +1,50 @@
+package com.oguzcam.searchanagram.metrics;
+
+/**
+ * Live view of a running process through JMX, registered as
+ * "com.oguzcam.searchanagram:type=AnagramMetrics,name=&lt;run&gt;" while the run lasts
+ *
+ * @author Oguz Cam
+ */
+public interface AnagramMetricsMXBean {
+
+    String getStage();
+
+    long getElapsedMilliseconds();
+
+    long getInputBytes();
+
+    long getLinesRead();
+
+    long getWordsPerSecond();
+
+    long getChunksWritten();
+
+    long getChunkBytesWritten();
+
+    long getChunksConquered();
+
+    long getChunkBytesRead();
+
+    long getRunBytesWritten();
+
+    long getRunBytesRead();
+
+    long getGroups();
+
+    long getGroupedWords();
+
+    long getTempBytes();
+
+    long getTempBytesHighWaterMark();
+
+    int getQueueDepth();
+
+    int getMaxQueueDepth();
+
+    long getDivideMilliseconds();
+
+    long getConquerMilliseconds();
+
+    long getMergeMilliseconds();
+}
@@ -0,0 +1,73 @@
+package com.oguzcam.searchanagram.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non negative values in power of two buckets, bucket i holding the values below 2^i.
+ * Recording is lock free, percentiles are accurate to a factor of two
+ *
+ * @author Oguz Cam
+ */
+public class Histogram {
+    private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        long positive = Math.max(0, value);
+        buckets[Long.SIZE - Long.numberOfLeadingZeros(positive)].increment();
+        count.increment();
+        sum.add(positive);
+        max.accumulate(positive);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return Upper bound of the bucket holding the percentile, never more than the maximum
+     */
+    public long getPercentile(double percentile) {
+        long n = getCount();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return i == 0 ? 0 : Math.min(getMax(), (1L << i) - 1);
+            }
+        }
+        return getMax();
+    }
+
+    public String toJson() {
+        return "{\"count\":" + getCount()
+                + ",\"mean\":" + Math.round(getMean() * 100) / 100.0
+                + ",\"p50\":" + getPercentile(50)
+                + ",\"p90\":" + getPercentile(90)
+                + ",\"p99\":" + getPercentile(99)
+                + ",\"max\":" + getMax() + "}";
+    }
+}
@@ -0,0 +1,25 @@
+package com.oguzcam.searchanagram.metrics;
+
+/**
+ * Stages of a run as they are logged. Files exceeding the heap are divided and conquered as a pipeline,
+ * streams exceeding the heap are divided and then conquered
+ *
+ * @author Oguz Cam
+ */
+public enum Stage {
+    IN_MEMORY("In memory"),
+    DIVIDE_AND_CONQUER("Divide and conquer"),
+    DIVIDE("Divide"),
+    CONQUER("Conquer"),
+    MERGE("Merge");
+
+    private final String description;
+
+    Stage(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
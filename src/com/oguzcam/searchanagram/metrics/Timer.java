@@ -0,0 +1,46 @@
+package com.oguzcam.searchanagram.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sums the durations of tasks which may run on several threads, so the total is busy time rather than wall time
+ *
+ * @author Oguz Cam
+ */
+public class Timer {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a task which started at the given time and ends now
+     *
+     * @param startNanos Value of {@link System#nanoTime()} when the task started
+     */
+    public void recordSince(long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalMilliseconds() {
+        return TimeUnit.NANOSECONDS.toMillis(totalNanos.sum());
+    }
+
+    public long getMaxMilliseconds() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+    }
+
+    public String toJson() {
+        return "{\"count\":" + getCount()
+                + ",\"totalMilliseconds\":" + getTotalMilliseconds()
+                + ",\"maxMilliseconds\":" + getMaxMilliseconds() + "}";
+    }
+}
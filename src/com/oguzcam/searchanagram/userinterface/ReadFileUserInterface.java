@@ -1,6 +1,8 @@
 package com.oguzcam.searchanagram.userinterface;
 
 import com.oguzcam.searchanagram.algorithm.AnagramAlgorithm;
+import com.oguzcam.searchanagram.metrics.AnagramMetricsListener;
+import com.oguzcam.searchanagram.metrics.Stage;
 
 import javax.swing.*;
 import java.awt.*;
@@ -10,19 +12,29 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Presents a swing panel to get Input File by User's selection.
+ * The file is processed in the background while the panel shows the progress and lets the user cancel it.
  *
  * @author Oguz Cam
  */
 public class ReadFileUserInterface {
     private final JFrame frame;
     private final JTextField filePath;
+    private final JButton processButton;
+    private final JButton cancelButton;
+    private final JProgressBar progressBar;
+    private SwingWorker<Path, Void> worker;
+    private volatile AnagramAlgorithm algorithm;
 
     public ReadFileUserInterface() {
         frame = new JFrame("Input File Selection For Anagram Processing");
         filePath = new JTextField();
+        processButton = new JButton("Process");
+        cancelButton = new JButton("Cancel");
+        progressBar = new JProgressBar();
     }
 
     /**
@@ -60,7 +72,7 @@ public class ReadFileUserInterface {
                 fileChooser.setFileFilter(new javax.swing.filechooser.FileFilter() {
                     @Override
                     public boolean accept(File f) {
-                        return f.getName().endsWith(".txt");
+                        return f.isDirectory() || f.getName().endsWith(".txt");
                     }
 
                     @Override
@@ -79,39 +91,38 @@ public class ReadFileUserInterface {
 
         // Create bottomPanel and add relative components
         JPanel bottomPanel = new JPanel(new BorderLayout(10, 0));
-        JButton processButton = new JButton("Process");
         processButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
                 Path selectedFile = Paths.get(filePath.getText());
                 if (validateFile(selectedFile)) {
-                    try {
-                        Path result = new AnagramAlgorithm(selectedFile.toString()).process();
-                        if (result == null) {
-                            JOptionPane.showMessageDialog(frame, "Please try again. An error occurred.");
-                        } else {
-                            JOptionPane.showMessageDialog(frame,
-                                    "The process has been completed successfully. \r\n"
-                                            + "You can see the output file in \r\n"
-                                            + result.toAbsolutePath().normalize().toString());
-                        }
-                    } catch (Exception ex) {
-                        showError(ex.getMessage());
-                    }
+                    process(selectedFile);
                 } else {
-                    showError("The file is not valid, make sure it exists and a txt file.");
+                    showError("The file is not valid, make sure it exists and it is a file.");
                 }
             }
 
-            private void showError(String message) {
-                JOptionPane.showMessageDialog(frame, message, "Error", JOptionPane.ERROR_MESSAGE);
-            }
-
             private boolean validateFile(Path selectedFile) {
-                return Files.exists(selectedFile) && Files.isRegularFile(selectedFile) && selectedFile.toString().endsWith(".txt");
+                return Files.exists(selectedFile) && Files.isRegularFile(selectedFile);
+            }
+        });
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (worker != null) {
+                    worker.cancel(true);
+                }
+                if (algorithm != null) {
+                    // Stops the tasks of the run too, not only the thread waiting for them
+                    algorithm.cancel();
+                }
             }
         });
-        bottomPanel.add(processButton);
+        progressBar.setVisible(false);
+        bottomPanel.add(BorderLayout.NORTH, progressBar);
+        bottomPanel.add(BorderLayout.CENTER, processButton);
+        bottomPanel.add(BorderLayout.EAST, cancelButton);
 
         // Keep panels structured in mainPanel
         JPanel mainPanel = new JPanel();
@@ -121,4 +132,88 @@ public class ReadFileUserInterface {
         return mainPanel;
     }
 
+    /**
+     * Processes the file off the event dispatch thread, the result is shown when the process is done
+     *
+     * @param selectedFile File to process
+     */
+    private void process(Path selectedFile) {
+        setRunning(true);
+        worker = new SwingWorker<Path, Void>() {
+            @Override
+            protected Path doInBackground() throws Exception {
+                AnagramAlgorithm algorithm = new AnagramAlgorithm(selectedFile.toString());
+                ReadFileUserInterface.this.algorithm = algorithm;
+                algorithm.setMetricsListener(new AnagramMetricsListener() {
+                    @Override
+                    public void stageStarted(Stage stage) {
+                        SwingUtilities.invokeLater(() -> showProgress(stage, -1));
+                    }
+
+                    @Override
+                    public void progress(Stage stage, long done, long total) {
+                        if (total > 0) {
+                            int percent = (int) Math.min(100, done * 100 / total);
+                            SwingUtilities.invokeLater(() -> showProgress(stage, percent));
+                        }
+                    }
+                });
+                return algorithm.process();
+            }
+
+            @Override
+            protected void done() {
+                algorithm = null;
+                setRunning(false);
+                if (isCancelled()) {
+                    JOptionPane.showMessageDialog(frame, "The process has been cancelled.");
+                    return;
+                }
+                try {
+                    Path result = get();
+                    JOptionPane.showMessageDialog(frame,
+                            "The process has been completed successfully. \r\n"
+                                    + "You can see the output file in \r\n"
+                                    + result.toAbsolutePath().normalize().toString());
+                } catch (ExecutionException ex) {
+                    showError(ex.getCause().getMessage());
+                } catch (InterruptedException ex) {
+                    showError("Please try again. An error occurred.");
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    /**
+     * Shows the progress bar and the cancel button while a file is being processed
+     */
+    private void setRunning(boolean running) {
+        processButton.setEnabled(!running);
+        cancelButton.setEnabled(running);
+        progressBar.setIndeterminate(running);
+        progressBar.setStringPainted(false);
+        progressBar.setVisible(running);
+        frame.getContentPane().revalidate();
+    }
+
+    /**
+     * Shows the running stage, with its percentage once it is known
+     *
+     * @param stage Running stage
+     * @param percent Percentage done, negative if unknown
+     */
+    private void showProgress(Stage stage, int percent) {
+        if (!progressBar.isVisible()) {
+            return;
+        }
+        progressBar.setStringPainted(true);
+        progressBar.setIndeterminate(percent < 0);
+        progressBar.setValue(Math.max(0, percent));
+        progressBar.setString(stage.getDescription() + (percent < 0 ? "" : " " + percent + "%"));
+    }
+
+    private void showError(String message) {
+        JOptionPane.showMessageDialog(frame, message, "Error", JOptionPane.ERROR_MESSAGE);
+    }
 }
@@ -0,0 +1,111 @@
+package com.oguzcam.searchanagram;
+
+import com.oguzcam.searchanagram.algorithm.AnagramGroupSink;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Word files and the groups they are expected to give, shared by the tests
+ *
+ * @author Oguz Cam
+ */
+public final class AnagramFixtures {
+
+    private AnagramFixtures() {
+    }
+
+    /**
+     * Gives random words of a small alphabet, so many of them are anagrams of each other.
+     * Every hundredth line is empty
+     *
+     * @param seed Seed of the words
+     * @param count Count of the lines
+     * @return Lines without separators
+     */
+    public static List<String> randomWords(long seed, int count) {
+        Random random = new Random(seed);
+        List<String> words = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i % 100 == 99) {
+                words.add("");
+                continue;
+            }
+            char[] word = new char[3 + random.nextInt(5)];
+            for (int j = 0; j < word.length; j++) {
+                word[j] = (char) ('a' + random.nextInt(6));
+            }
+            words.add(new String(word));
+        }
+        return words;
+    }
+
+    /**
+     * Writes the lines into a file, every third one ending with a carriage return before its line feed
+     *
+     * @param file File to write
+     * @param lines Lines without separators
+     * @param finalNewline False to leave the last line without a separator
+     * @throws IOException May throw IOException while writing the file
+     */
+    public static void write(Path file, List<String> lines, boolean finalNewline) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            text.append(lines.get(i));
+            if (i + 1 < lines.size() || finalNewline) {
+                text.append(i % 3 == 2 ? "\r\n" : "\n");
+            }
+        }
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Groups the lines the simplest way: by their sorted characters, in order of first occurrence,
+     * every group with its distinct words sorted and at least two of them
+     *
+     * @param lines Lines without separators, empty lines are skipped
+     * @return Expected groups
+     */
+    public static List<List<String>> expectedGroups(List<String> lines) {
+        Map<String, TreeSet<String>> groups = new LinkedHashMap<>();
+        for (String line : lines) {
+            if (!line.isEmpty()) {
+                char[] characters = line.toCharArray();
+                Arrays.sort(characters);
+                groups.computeIfAbsent(new String(characters), key -> new TreeSet<>()).add(line);
+            }
+        }
+        List<List<String>> expected = new ArrayList<>();
+        for (TreeSet<String> words : groups.values()) {
+            if (words.size() > 1) {
+                expected.add(new ArrayList<>(words));
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Sink keeping every group it receives
+     */
+    public static class CollectingSink implements AnagramGroupSink {
+        private final List<List<String>> groups = new ArrayList<>();
+
+        @Override
+        public void accept(List<String> words) throws IOException {
+            groups.add(new ArrayList<>(words));
+        }
+
+        public List<List<String>> getGroups() {
+            return groups;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import org.junit.jupiter.api.Test;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.MAX_OPEN_FILES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Bucket counts of explicit and tuned configurations
+ *
+ * @author Oguz Cam
+ */
+class AnagramAlgorithmConfigurationTest {
+
+    @Test
+    void givesBucketsOfAboutThresholdLines() {
+        AnagramAlgorithmConfiguration configuration = new AnagramAlgorithmConfiguration(1_000, 2);
+        assertEquals(1, configuration.getBucketCount(0));
+        assertEquals(1, configuration.getBucketCount(10_000));
+        assertEquals(2, configuration.getBucketCount(10_010));
+        assertEquals(100, configuration.getBucketCount(1_000_000));
+    }
+
+    @Test
+    void limitsTheBucketsOfASmallExplicitThresholdToTheOpenFiles() {
+        assertEquals(MAX_OPEN_FILES, new AnagramAlgorithmConfiguration(1, 2).getBucketCount(1L << 40));
+        assertEquals(MAX_OPEN_FILES, new AnagramAlgorithmConfiguration(1_000, 2).getBucketCount(Long.MAX_VALUE));
+        assertEquals(MAX_OPEN_FILES, new AnagramAlgorithmConfiguration(0, 0).tune(1L << 40, 10, false)
+                .getBucketCount(1L << 40));
+    }
+}
@@ -0,0 +1,245 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import com.oguzcam.searchanagram.AnagramFixtures;
+import com.oguzcam.searchanagram.AnagramFixtures.CollectingSink;
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+import com.oguzcam.searchanagram.metrics.AnagramMetricsListener;
+import com.oguzcam.searchanagram.metrics.Stage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Groups of the in-memory and of the disk based algorithm, which must be the same for any input
+ *
+ * @author Oguz Cam
+ */
+class AnagramAlgorithmTest {
+    // Few lines per bucket, so the disk based runs have many buckets and lanes
+    private static final AnagramAlgorithmConfiguration CONFIGURATION = new AnagramAlgorithmConfiguration(2_000, 3);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void groupsTheReadmeExample() throws Exception {
+        List<String> lines = Arrays.asList("who", "how", "except", "expect", "tree", "purse");
+        Path input = directory.resolve("readme.txt");
+        AnagramFixtures.write(input, lines, true);
+
+        List<List<String>> expected = Arrays.asList(Arrays.asList("how", "who"), Arrays.asList("except", "expect"));
+        assertEquals(expected, processInMemory(input));
+        assertEquals(expected, processOnDisk(input));
+    }
+
+    @Test
+    void groupsTheSameOnDiskAndInMemory() throws Exception {
+        // Carriage returns, empty lines and no line feed after the last word
+        List<String> lines = AnagramFixtures.randomWords(1, 20_000);
+        Path input = directory.resolve("small.txt");
+        AnagramFixtures.write(input, lines, false);
+
+        List<List<String>> expected = AnagramFixtures.expectedGroups(lines);
+        assertEquals(expected, processInMemory(input));
+        assertEquals(expected, processOnDisk(input));
+    }
+
+    @Test
+    void groupsTheSameOnDiskWithManyRanges() throws Exception {
+        // Large enough to be divided into more than one range
+        int lineCount = 3 * (int) (AnagramAlgorithmConfiguration.MIN_RANGE_SIZE / 6);
+        List<String> lines = AnagramFixtures.randomWords(2, lineCount);
+        Path input = directory.resolve("large.txt");
+        AnagramFixtures.write(input, lines, true);
+
+        List<List<String>> expected = AnagramFixtures.expectedGroups(lines);
+        assertEquals(expected, processInMemory(input));
+        assertEquals(expected, processOnDisk(input));
+    }
+
+    @Test
+    void groupsTheSameWithCompressedAndUncompressedRunsInOneJvm() throws Exception {
+        List<String> lines = AnagramFixtures.randomWords(4, 20_000);
+        Path input = directory.resolve("compressed.txt");
+        AnagramFixtures.write(input, lines, true);
+        AnagramAlgorithmConfiguration compressed = new AnagramAlgorithmConfiguration(2_000, 3,
+                SignaturePolicy.EXACT, AnagramAlgorithmConfiguration.UNLIMITED, true);
+
+        List<List<String>> expected = AnagramFixtures.expectedGroups(lines);
+        assertEquals(expected, processOnDisk(input, compressed));
+        assertEquals(expected, processOnDisk(input));
+    }
+
+    @Test
+    void resumesFromTheConqueredRunsAfterAFailedMerge() throws Exception {
+        List<String> lines = AnagramFixtures.randomWords(3, 20_000);
+        Path input = directory.resolve("resumed.txt");
+        AnagramFixtures.write(input, lines, true);
+        Path tempDirectory = directory.resolve("temp");
+        failMerge(tempDirectory, input);
+
+        CollectingSink sink = new CollectingSink();
+        List<String> messages = new ArrayList<>();
+        assertEquals(lines.size(), processOnDiskLogged(tempDirectory, input, sink, messages));
+        assertEquals(AnagramFixtures.expectedGroups(lines), sink.getGroups());
+        assertTrue(messages.stream().anyMatch(message -> message.startsWith("Resuming")), messages.toString());
+        assertFalse(hasFiles(tempDirectory), "the runs are removed once merged");
+    }
+
+    @Test
+    void conquersOnlyTheBucketsWhoseRunsAreNotCheckpointed() throws Exception {
+        List<String> lines = AnagramFixtures.randomWords(3, 20_000);
+        Path input = directory.resolve("partial.txt");
+        AnagramFixtures.write(input, lines, true);
+        Path tempDirectory = directory.resolve("temp");
+        failMerge(tempDirectory, input);
+
+        // A run which does not match its checksum any more is conquered again, the others are kept
+        Path run;
+        try (Stream<Path> files = Files.walk(tempDirectory)) {
+            run = files.filter(file -> file.getFileName().toString().equals("2.bin")).findFirst().orElseThrow();
+        }
+        Files.write(run, new byte[]{0}, StandardOpenOption.APPEND);
+
+        CollectingSink sink = new CollectingSink();
+        List<String> messages = new ArrayList<>();
+        assertEquals(lines.size(), processOnDiskLogged(tempDirectory, input, sink, messages));
+        assertEquals(AnagramFixtures.expectedGroups(lines), sink.getGroups());
+        Pattern resumed = Pattern.compile("Resuming .* from (\\d+) of (\\d+) conquered runs .*");
+        Matcher matcher = messages.stream().map(resumed::matcher).filter(Matcher::matches).findFirst()
+                .orElseThrow(() -> new AssertionError(messages.toString()));
+        assertEquals(Integer.parseInt(matcher.group(2)) - 1, Integer.parseInt(matcher.group(1)));
+        assertFalse(hasFiles(tempDirectory), "the runs are removed once merged");
+    }
+
+    @Test
+    void measuresTheStagesOfARunOnDisk() throws Exception {
+        List<String> lines = AnagramFixtures.randomWords(9, 20_000);
+        Path input = directory.resolve("measured.txt");
+        AnagramFixtures.write(input, lines, true);
+
+        List<Stage> stages = new ArrayList<>();
+        AnagramMetrics[] completed = new AnagramMetrics[1];
+        AnagramAlgorithm algorithm = new AnagramAlgorithm(directory.resolve("temp"), CONFIGURATION);
+        algorithm.setMetricsListener(new AnagramMetricsListener() {
+            @Override
+            public void stageStarted(Stage stage) {
+                stages.add(stage);
+            }
+
+            @Override
+            public void runCompleted(AnagramMetrics metrics) {
+                completed[0] = metrics;
+            }
+        });
+        algorithm.processOnDisk(input, new CollectingSink());
+
+        AnagramMetrics metrics = completed[0];
+        List<List<String>> expected = AnagramFixtures.expectedGroups(lines);
+        assertEquals(Arrays.asList(Stage.DIVIDE_AND_CONQUER, Stage.MERGE), stages);
+        assertEquals(Files.size(input), metrics.getInputBytes());
+        assertEquals(lines.size(), metrics.getLinesRead());
+        assertEquals(expected.size(), metrics.getGroups());
+        assertEquals(expected.stream().mapToLong(List::size).sum(), metrics.getGroupedWords());
+        assertTrue(metrics.getChunksWritten() > 1);
+        assertEquals(metrics.getChunksWritten(), metrics.getChunksConquered());
+        assertEquals(metrics.getChunkBytesWritten(), metrics.getChunkBytesRead());
+        assertEquals(metrics.getRunBytesWritten(), metrics.getRunBytesRead());
+        assertEquals(0, metrics.getTempBytes());
+        assertTrue(metrics.getTempBytesHighWaterMark() > 0);
+        assertEquals(expected.size(), metrics.getGroupSizes().getCount());
+    }
+
+    /**
+     * Runs the file on disk into a sink failing during the merge, so its runs are kept
+     */
+    private static void failMerge(Path tempDirectory, Path input) throws IOException {
+        AnagramGroupSink failingSink = new AnagramGroupSink() {
+            private int groups;
+
+            @Override
+            public void accept(List<String> words) throws IOException {
+                if (++groups > 10) {
+                    throw new IOException("Disk is full");
+                }
+            }
+        };
+        assertThrows(Exception.class,
+                () -> new AnagramAlgorithm(tempDirectory, CONFIGURATION).processOnDisk(input, failingSink));
+        assertTrue(hasFiles(tempDirectory), "the conquered runs are kept");
+    }
+
+    /**
+     * Runs the file on disk, collecting the messages the algorithm logs
+     */
+    private static long processOnDiskLogged(Path tempDirectory, Path input, CollectingSink sink,
+                                            List<String> messages) throws Exception {
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(AnagramAlgorithm.class.getName());
+        logger.addHandler(handler);
+        try {
+            return new AnagramAlgorithm(tempDirectory, CONFIGURATION).processOnDisk(input, sink);
+        } finally {
+            logger.removeHandler(handler);
+        }
+    }
+
+    private List<List<String>> processInMemory(Path input) throws Exception {
+        CollectingSink sink = new CollectingSink();
+        new AnagramAlgorithm(directory.resolve("temp"), CONFIGURATION).process(input, sink);
+        return sink.getGroups();
+    }
+
+    private List<List<String>> processOnDisk(Path input) throws Exception {
+        return processOnDisk(input, CONFIGURATION);
+    }
+
+    private List<List<String>> processOnDisk(Path input, AnagramAlgorithmConfiguration configuration)
+            throws Exception {
+        Path tempDirectory = directory.resolve("temp");
+        CollectingSink sink = new CollectingSink();
+        new AnagramAlgorithm(tempDirectory, configuration).processOnDisk(input, sink);
+        assertFalse(hasFiles(tempDirectory), "temporary files are removed");
+        return sink.getGroups();
+    }
+
+    private static boolean hasFiles(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return false;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.anyMatch(Files::isRegularFile);
+        }
+    }
+}
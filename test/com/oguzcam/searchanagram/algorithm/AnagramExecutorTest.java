@@ -0,0 +1,60 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs on a shared pool, which end with their tasks while the pool keeps serving the other runs
+ *
+ * @author Oguz Cam
+ */
+class AnagramExecutorTest {
+
+    @Test
+    void waitsForTheRunningTasksOfARunOnASharedPool() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            AtomicBoolean ended = new AtomicBoolean();
+            AtomicBoolean queuedRan = new AtomicBoolean();
+            AnagramExecutor executor = new AnagramExecutor(pool);
+            executor.getIoExecutor().submit(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException ex) {
+                    // Cancelled by the run, still writing for a while
+                    Thread.sleep(200);
+                } finally {
+                    ended.set(true);
+                }
+                return null;
+            });
+            Future<?> queued = executor.getCpuExecutor().submit(() -> queuedRan.set(true));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            executor.cancel();
+            executor.close();
+            assertTrue(ended.get(), "the running task has ended before the run is closed");
+            assertTrue(queued.isCancelled());
+            assertFalse(queuedRan.get());
+
+            // The pool is not shut down and its thread is not left interrupted
+            CompletableFuture<Boolean> interrupted =
+                    CompletableFuture.supplyAsync(() -> Thread.currentThread().isInterrupted(), pool);
+            assertFalse(interrupted.get(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.CHARSET;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Groups of the grouping table, in insertion order with their words sorted and without duplicates
+ *
+ * @author Oguz Cam
+ */
+class AnagramGroupTableTest {
+
+    @Test
+    void sortsTheWordsOfEveryGroupWithoutDuplicates() {
+        AnagramGroupTable table = new AnagramGroupTable();
+        AnagramSignature signature = new AnagramSignature();
+        List<String> words = Arrays.asList("tree", "who", "how", "tree", "who", "x\uFFFD\uD83D\uDE00",
+                "x\uD83D\uDE00\uFFFD", "x\uFFFD\uD83D\uDE00", "how", "oh w", "w\u00e9", "\u00e9w");
+        for (int i = 0; i < words.size(); i++) {
+            add(table, signature, i, words.get(i));
+        }
+
+        assertEquals(5, table.getGroupCount());
+        assertFalse(table.hasAnagrams(0));
+        assertEquals(Collections.singletonList("tree"), table.getSortedWords(0));
+        assertTrue(table.hasAnagrams(1));
+        assertEquals(1, table.getOrdinal(1));
+        assertEquals(Arrays.asList("how", "who"), table.getSortedWords(1));
+        // In the order of String.compareTo, surrogates before the characters from U+E000
+        assertEquals(Arrays.asList("x\uD83D\uDE00\uFFFD", "x\uFFFD\uD83D\uDE00"), table.getSortedWords(2));
+        assertFalse(table.hasAnagrams(3));
+        assertEquals(Arrays.asList("w\u00e9", "\u00e9w"), table.getSortedWords(4));
+    }
+
+    @Test
+    void addsToALargeGroupWithoutWalkingIt() {
+        // Every word is a group of one letter under the letters only policy
+        AnagramSignature signature = new AnagramSignature(SignaturePolicy.LETTERS_ONLY);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            expected.add("a" + i);
+        }
+        Collections.sort(expected);
+
+        AnagramGroupTable table = new AnagramGroupTable();
+        List<String> words = assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+            for (int i = 200_000 - 1; i >= 0; i--) {
+                add(table, signature, i, "a" + i);
+                add(table, signature, i, "a" + (i / 2));
+            }
+            return table.getSortedWords(0);
+        });
+        assertEquals(1, table.getGroupCount());
+        assertEquals(expected, words);
+    }
+
+    private static void add(AnagramGroupTable table, AnagramSignature signature, long ordinal, String word) {
+        byte[] bytes = word.getBytes(CHARSET);
+        signature.compute(ByteBuffer.wrap(bytes), 0, bytes.length);
+        table.add(signature, ordinal, bytes, 0, bytes.length);
+    }
+}
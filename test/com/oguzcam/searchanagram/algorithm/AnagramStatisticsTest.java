@@ -0,0 +1,74 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import com.oguzcam.searchanagram.AnagramFixtures;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Statistics of a file summarized by the conquerers, which must be those of its groups summarized in order
+ *
+ * @author Oguz Cam
+ */
+class AnagramStatisticsTest {
+    private static final int TOP = 5;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keepsTheLargestGroupsInOrderOfFirstOccurrence() {
+        AnagramStatistics statistics = new AnagramStatistics(2);
+        statistics.accept(Arrays.asList("how", "who"));
+        statistics.accept(Arrays.asList("act", "cat", "tac"));
+        statistics.accept(Arrays.asList("dog", "god"));
+        statistics.add(-1, Arrays.asList("ab", "ba"));
+
+        assertEquals(4, statistics.getGroups());
+        assertEquals(9, statistics.getGroupedWords());
+        assertEquals(Arrays.asList(Arrays.asList("act", "cat", "tac"), Arrays.asList("ab", "ba")),
+                getWords(statistics.getLargestGroups()));
+    }
+
+    @Test
+    void summarizesTheSameOnDiskAsTheGroupsInOrder() throws Exception {
+        List<String> lines = AnagramFixtures.randomWords(7, 30_000);
+        Path input = directory.resolve("statistics.txt");
+        AnagramFixtures.write(input, lines, true);
+
+        AnagramStatistics expected = new AnagramStatistics(TOP);
+        for (List<String> group : AnagramFixtures.expectedGroups(lines)) {
+            expected.accept(group);
+        }
+        AnagramStatistics actual = new AnagramStatistics(TOP);
+        Path tempDirectory = directory.resolve("temp");
+        long lineCount = new AnagramAlgorithm(tempDirectory, new AnagramAlgorithmConfiguration(2_000, 3))
+                .summarizeOnDisk(input, actual);
+
+        assertEquals(lines.size(), lineCount);
+        assertEquals(expected.getGroups(), actual.getGroups());
+        assertEquals(expected.getGroupedWords(), actual.getGroupedWords());
+        assertEquals(expected.getGroupSizes(), actual.getGroupSizes());
+        assertEquals(getWords(expected.getLargestGroups()), getWords(actual.getLargestGroups()));
+        try (Stream<Path> files = Files.walk(tempDirectory)) {
+            assertFalse(files.anyMatch(Files::isRegularFile), "no run is left behind");
+        }
+    }
+
+    private static List<List<String>> getWords(List<AnagramStatistics.LargestGroup> groups) {
+        List<List<String>> words = new ArrayList<>();
+        for (AnagramStatistics.LargestGroup group : groups) {
+            words.add(group.getWords());
+        }
+        return words;
+    }
+}
@@ -0,0 +1,72 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Lines of the mapped reader, whichever window boundary they cross
+ *
+ * @author Oguz Cam
+ */
+class MappedLineReaderTest {
+    private static final String TEXT = "who\r\nhow\n\nexcept\r\nexpect\nabcdefghijklmnopqrstuvwxyz\r\ntree";
+    private static final List<String> LINES =
+            Arrays.asList("who", "how", "", "except", "expect", "abcdefghijklmnopqrstuvwxyz", "tree");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsLinesCrossingEveryWindowBoundary() throws IOException {
+        Path file = write(TEXT);
+        for (int windowSize = 1; windowSize <= TEXT.length() + 1; windowSize++) {
+            assertEquals(LINES, readLines(file, 0, Long.MAX_VALUE, windowSize), "window of " + windowSize);
+        }
+    }
+
+    @Test
+    void readsTheLastLineWithItsSeparator() throws IOException {
+        Path file = write(TEXT + "\r\n");
+        for (int windowSize = 1; windowSize <= TEXT.length() + 3; windowSize++) {
+            assertEquals(LINES, readLines(file, 0, Long.MAX_VALUE, windowSize), "window of " + windowSize);
+        }
+    }
+
+    @Test
+    void readsOnlyTheLinesOfItsRange() throws IOException {
+        Path file = write(TEXT);
+        int start = TEXT.indexOf("except");
+        int end = TEXT.indexOf("abcdef");
+        for (int windowSize = 1; windowSize <= 8; windowSize++) {
+            assertEquals(Arrays.asList("except", "expect"), readLines(file, start, end, windowSize));
+        }
+    }
+
+    private Path write(String text) throws IOException {
+        Path file = directory.resolve("words.txt");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<String> readLines(Path file, long start, long end, int windowSize) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (MappedLineReader reader = new MappedLineReader(file, start, end, windowSize)) {
+            while (reader.next()) {
+                byte[] line = new byte[reader.getLength()];
+                reader.getBuffer().get(reader.getOffset(), line);
+                lines.add(new String(line, StandardCharsets.UTF_8));
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,95 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import com.oguzcam.searchanagram.AnagramFixtures;
+import com.oguzcam.searchanagram.AnagramFixtures.CollectingSink;
+import com.oguzcam.searchanagram.index.AnagramIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Groups of every signature policy, in memory, on disk and appended to an index
+ *
+ * @author Oguz Cam
+ */
+class SignaturePolicyTest {
+    // Precomposed and combined accents, cases, and words the letters only policy leaves nothing of
+    private static final List<String> WORDS = Arrays.asList("abc", "123", "cab", "R\u00e9sum\u00e9", "456",
+            "Resume\u0301", "mesure", "r\u00e9sume", "!!", "Dormitory", "dirty room!", "321");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void groupsExactCodePoints() throws Exception {
+        assertGroups(SignaturePolicy.EXACT, Arrays.asList(Arrays.asList("abc", "cab"), Arrays.asList("123", "321")));
+    }
+
+    @Test
+    void groupsCaseFoldedComposedLetters() throws Exception {
+        assertGroups(SignaturePolicy.CASE_FOLDED, Arrays.asList(Arrays.asList("abc", "cab"),
+                Arrays.asList("123", "321"), Arrays.asList("Resume\u0301", "r\u00e9sume")));
+    }
+
+    @Test
+    void groupsLettersWithoutAccents() throws Exception {
+        assertGroups(SignaturePolicy.ACCENT_INSENSITIVE, Arrays.asList(Arrays.asList("abc", "cab"),
+                Arrays.asList("123", "321"),
+                Arrays.asList("Resume\u0301", "R\u00e9sum\u00e9", "mesure", "r\u00e9sume")));
+    }
+
+    @Test
+    void groupsOnlyTheLettersAndSkipsWordsWithoutLetters() throws Exception {
+        assertGroups(SignaturePolicy.LETTERS_ONLY, Arrays.asList(Arrays.asList("abc", "cab"),
+                Arrays.asList("Resume\u0301", "r\u00e9sume"), Arrays.asList("Dormitory", "dirty room!")));
+    }
+
+    @Test
+    void leavesNothingOfWordsWithoutLetters() {
+        AnagramSignature signature = new AnagramSignature(SignaturePolicy.LETTERS_ONLY);
+        for (String word : Arrays.asList("123", "!!", " ", "\u0661\u0662")) {
+            assertTrue(signature.compute(word).isEmpty(), word);
+        }
+        assertFalse(signature.compute("a1").isEmpty());
+        assertFalse(signature.compute("\u00e91").isEmpty());
+        assertFalse(new AnagramSignature().compute("123").isEmpty());
+        assertEquals("dormitory", SignaturePolicy.LETTERS_ONLY.toLetters("Dor-mi tory!"));
+    }
+
+    private void assertGroups(SignaturePolicy policy, List<List<String>> expected) throws Exception {
+        AnagramAlgorithmConfiguration configuration = new AnagramAlgorithmConfiguration(2, 2, policy);
+        Path input = directory.resolve(policy.getOptionName() + ".txt");
+        AnagramFixtures.write(input, WORDS, true);
+
+        AnagramInMemoryGrouper grouper = new AnagramInMemoryGrouper(Long.MAX_VALUE, policy);
+        try (WordSource source = WordSource.of(WORDS.iterator())) {
+            assertTrue(grouper.addAll(source));
+        }
+        CollectingSink inMemory = new CollectingSink();
+        grouper.emit(inMemory);
+        assertEquals(expected, inMemory.getGroups(), "in memory");
+
+        CollectingSink onDisk = new CollectingSink();
+        new AnagramAlgorithm(directory.resolve("temp"), configuration).processOnDisk(input, onDisk);
+        assertEquals(expected, onDisk.getGroups(), "on disk");
+
+        // Built from the first word and appended the others, so the words go through the index append
+        Path first = directory.resolve(policy.getOptionName() + "-first.txt");
+        AnagramFixtures.write(first, Collections.singletonList(WORDS.get(0)), true);
+        AnagramIndex index = AnagramIndex.build(first, directory.resolve(policy.getOptionName()), configuration);
+        try (WordSource source = WordSource.of(WORDS.subList(1, WORDS.size()).iterator())) {
+            index.append(source, new CollectingSink());
+        }
+        CollectingSink regenerated = new CollectingSink();
+        AnagramIndex.open(index.getDirectory()).regenerate(regenerated);
+        assertEquals(expected, regenerated.getGroups(), "appended to an index");
+    }
+}
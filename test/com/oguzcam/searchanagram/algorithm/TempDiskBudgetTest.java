@@ -0,0 +1,99 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import com.oguzcam.searchanagram.AnagramFixtures;
+import com.oguzcam.searchanagram.AnagramFixtures.CollectingSink;
+import com.oguzcam.searchanagram.metrics.AnagramMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration.UNLIMITED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reservations waiting for space, and runs compressing their temporary files when they may not fit
+ *
+ * @author Oguz Cam
+ */
+class TempDiskBudgetTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void waitsUntilSpaceIsReleased() throws Exception {
+        AnagramMetrics metrics = new AnagramMetrics();
+        TempDiskBudget budget = new TempDiskBudget(100, metrics);
+        budget.reserve(60);
+        metrics.chunkWritten(30);
+
+        CompletableFuture<Void> reserved = CompletableFuture.runAsync(() -> {
+            try {
+                budget.reserve(40);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(reserved.isDone(), "the reservation waits while the budget is full");
+
+        // A conquered chunk is only seen by the metrics
+        metrics.chunkConquered(30, System.nanoTime());
+        reserved.get(10, TimeUnit.SECONDS);
+
+        CompletableFuture<Void> next = CompletableFuture.runAsync(() -> {
+            try {
+                budget.reserve(60);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        budget.release(60);
+        next.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void refusesABlockLargerThanTheBudget() {
+        TempDiskBudget budget = new TempDiskBudget(100, new AnagramMetrics());
+        assertThrows(IOException.class, () -> budget.reserve(101));
+    }
+
+    @Test
+    void compressesTheTemporaryFilesOfARunWhichMayNotFit() {
+        AnagramAlgorithmConfiguration configuration = new AnagramAlgorithmConfiguration(1_000, 2);
+        long inputBytes = 1_000_000;
+        long needed = TempDiskBudget.estimate(inputBytes, inputBytes / configuration.getLineLength() + 1);
+
+        assertSame(configuration, new TempDiskBudget(UNLIMITED, new AnagramMetrics())
+                .fit("input", inputBytes, configuration));
+        assertSame(configuration, new TempDiskBudget(needed, new AnagramMetrics())
+                .fit("input", inputBytes, configuration));
+        AnagramAlgorithmConfiguration fitted = new TempDiskBudget(needed - 1, new AnagramMetrics())
+                .fit("input", inputBytes, configuration);
+        assertTrue(fitted.isCompressTempFiles());
+        assertEquals(configuration.getBucketCount(inputBytes), fitted.getBucketCount(inputBytes));
+    }
+
+    @Test
+    void groupsAFileWithABudgetBelowItsBound() throws Exception {
+        List<String> lines = AnagramFixtures.randomWords(5, 50_000);
+        Path input = directory.resolve("budget.txt");
+        AnagramFixtures.write(input, lines, true);
+        AnagramAlgorithmConfiguration configuration = new AnagramAlgorithmConfiguration(2_000, 3,
+                SignaturePolicy.EXACT, Files.size(input));
+
+        CollectingSink sink = new CollectingSink();
+        new AnagramAlgorithm(directory.resolve("temp"), configuration).processOnDisk(input, sink);
+        assertEquals(AnagramFixtures.expectedGroups(lines), sink.getGroups());
+    }
+}
@@ -0,0 +1,86 @@
+package com.oguzcam.searchanagram.algorithm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Temporary files read back as they have been written, with and without compressed blocks
+ *
+ * @author Oguz Cam
+ */
+class TempFileTest {
+    private static final long[] NUMBERS = {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, Long.MAX_VALUE, -1};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsUncompressedFile() throws IOException {
+        roundTrip(false);
+    }
+
+    @Test
+    void readsCompressedFile() throws IOException {
+        roundTrip(true);
+    }
+
+    private void roundTrip(boolean compressed) throws IOException {
+        Path file = directory.resolve("run.bin");
+        // Longer than a few blocks, and repetitive enough to be deflated
+        byte[] bytes = new byte[TempFileOutput.BLOCK_SIZE * 3 + 17];
+        Random random = new Random(7);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(4));
+        }
+
+        long bytesWritten;
+        try (TempFileOutput.Compressor compressor = compressed ? new TempFileOutput.Compressor() : null) {
+            TempFileOutput output = new TempFileOutput(file, compressor);
+            try {
+                for (long number : NUMBERS) {
+                    output.writeVarLong(number);
+                }
+                output.write(bytes, 0, bytes.length);
+                output.write(ByteBuffer.wrap(bytes), 5, 100);
+                for (int i = 0; i < TempFileOutput.BLOCK_SIZE; i++) {
+                    output.writeVarLong(i);
+                }
+            } finally {
+                output.close();
+            }
+            bytesWritten = output.getBytesWritten();
+        }
+        assertEquals(Files.size(file), bytesWritten);
+        if (compressed) {
+            assertTrue(bytesWritten < bytes.length, "compressed to " + bytesWritten + " bytes");
+        }
+
+        try (TempFileInput input = new TempFileInput(file, compressed)) {
+            for (long number : NUMBERS) {
+                assertEquals(number, input.readVarLong());
+            }
+            byte[] read = new byte[bytes.length];
+            input.readFully(read, 0, read.length);
+            assertArrayEquals(bytes, read);
+            byte[] slice = new byte[100];
+            input.readFully(slice, 0, slice.length);
+            assertArrayEquals(Arrays.copyOfRange(bytes, 5, 105), slice);
+            for (int i = 0; i < TempFileOutput.BLOCK_SIZE; i++) {
+                assertEquals(i, input.readVarInt());
+            }
+            assertFalse(input.hasMore());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.oguzcam.searchanagram.cluster;
+
+import com.oguzcam.searchanagram.AnagramFixtures;
+import com.oguzcam.searchanagram.AnagramFixtures.CollectingSink;
+import com.oguzcam.searchanagram.algorithm.AnagramAlgorithm;
+import com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration;
+import com.oguzcam.searchanagram.algorithm.AnagramStatistics;
+import com.oguzcam.searchanagram.algorithm.SignaturePolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Groups of a file grouped on worker JVMs, which must be the ones of a single JVM
+ *
+ * @author Oguz Cam
+ */
+class ShardCoordinatorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void groupsTheSameOnWorkersAsInOneJvm() throws Exception {
+        List<String> lines = AnagramFixtures.randomWords(6, 30_000);
+        Path input = directory.resolve("sharded.txt");
+        AnagramFixtures.write(input, lines, true);
+
+        CollectingSink expected = new CollectingSink();
+        new AnagramAlgorithm(directory.resolve("temp"), new AnagramAlgorithmConfiguration(2_000, 2))
+                .process(input, expected);
+        assertEquals(AnagramFixtures.expectedGroups(lines), expected.getGroups());
+
+        // Compressed, so the workers follow the handshake instead of a setting of their own
+        AnagramAlgorithmConfiguration configuration = new AnagramAlgorithmConfiguration(2_000, 2,
+                SignaturePolicy.EXACT, AnagramAlgorithmConfiguration.UNLIMITED, true);
+        try (LocalWorkers workers = new LocalWorkers(2, "128m")) {
+            CollectingSink sink = new CollectingSink();
+            long lineCount = new ShardCoordinator(workers.getAddresses(), directory.resolve("shards"), configuration)
+                    .process(input, sink);
+            assertEquals(lines.size(), lineCount);
+            assertEquals(expected.getGroups(), sink.getGroups());
+
+            AnagramStatistics statistics = new AnagramStatistics(3);
+            new ShardCoordinator(workers.getAddresses(), directory.resolve("shards"), configuration)
+                    .summarize(input, statistics);
+            AnagramStatistics expectedStatistics = new AnagramStatistics(3);
+            for (List<String> group : expected.getGroups()) {
+                expectedStatistics.accept(group);
+            }
+            assertEquals(expectedStatistics.getGroupSizes(), statistics.getGroupSizes());
+            assertEquals(expectedStatistics.getLargestGroups().get(0).getWords(),
+                    statistics.getLargestGroups().get(0).getWords());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.oguzcam.searchanagram.commandline;
+
+import com.oguzcam.searchanagram.AnagramFixtures;
+import com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Files of a batch processed together into their outputs or their summaries, a failing file not stopping the others
+ *
+ * @author Oguz Cam
+ */
+class BatchProcessorTest {
+    // Three threads in the worker pool shared by the files
+    private static final AnagramAlgorithmConfiguration CONFIGURATION = new AnagramAlgorithmConfiguration(2_000, 3);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void processesTheFilesIntoTheirOutputs() throws Exception {
+        List<List<String>> lines = Arrays.asList(AnagramFixtures.randomWords(11, 20_000),
+                AnagramFixtures.randomWords(12, 5_000), AnagramFixtures.randomWords(13, 10_000));
+        List<Path> inputs = new ArrayList<>();
+        List<Path> outputs = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            inputs.add(directory.resolve("input" + i + ".txt"));
+            AnagramFixtures.write(inputs.get(i), lines.get(i), true);
+            outputs.add(directory.resolve("output").resolve("input" + i + ".txt"));
+        }
+        inputs.add(directory.resolve("missing.txt"));
+        outputs.add(directory.resolve("output").resolve("missing.txt"));
+
+        List<FileSummary> summaries = new BatchProcessor(directory.resolve("temp"), CONFIGURATION, 2)
+                .process(inputs, outputs);
+
+        assertEquals(inputs.size(), summaries.size());
+        for (int i = 0; i < lines.size(); i++) {
+            FileSummary summary = summaries.get(i);
+            List<List<String>> expected = AnagramFixtures.expectedGroups(lines.get(i));
+            assertFalse(summary.isFailed(), summary.getError());
+            assertEquals(inputs.get(i), summary.getInput());
+            assertEquals(lines.get(i).size(), summary.getLines());
+            assertEquals(expected.size(), summary.getGroups());
+            assertEquals(expected.stream().mapToLong(List::size).sum(), summary.getGroupedWords());
+            assertEquals(expected, readGroups(outputs.get(i)));
+        }
+        FileSummary missing = summaries.get(lines.size());
+        assertTrue(missing.isFailed());
+        assertTrue(missing.toJson().contains("\"status\":\"failed\""), missing.toJson());
+    }
+
+    @Test
+    void summarizesTheLargestGroupsWithoutWritingOutputs() throws Exception {
+        List<String> lines = AnagramFixtures.randomWords(14, 10_000);
+        Path input = directory.resolve("input.txt");
+        AnagramFixtures.write(input, lines, true);
+        Path output = directory.resolve("output").resolve("input.txt");
+
+        List<FileSummary> summaries = new BatchProcessor(directory.resolve("temp"), CONFIGURATION, 1, true,
+                List.of(), 2).process(List.of(input), List.of(output));
+
+        FileSummary summary = summaries.get(0);
+        assertFalse(summary.isFailed(), summary.getError());
+        assertNull(summary.getOutput());
+        assertFalse(Files.exists(output));
+        assertEquals(AnagramFixtures.expectedGroups(lines).size(), summary.getGroups());
+        assertNotNull(summary.getMetrics());
+        assertTrue(summary.getStatistics().contains("\"largestGroups\":[{"), summary.getStatistics());
+    }
+
+    private static List<List<String>> readGroups(Path output) throws Exception {
+        List<List<String>> groups = new ArrayList<>();
+        for (String line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+            groups.add(Arrays.asList(line.trim().split(" ")));
+        }
+        return groups;
+    }
+}
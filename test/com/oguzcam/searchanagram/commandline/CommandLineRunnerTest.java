@@ -0,0 +1,60 @@
+package com.oguzcam.searchanagram.commandline;
+
+import com.oguzcam.searchanagram.AnagramFixtures;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Options and globs of the headless entry point, and its exit codes
+ *
+ * @author Oguz Cam
+ */
+class CommandLineRunnerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void processesTheFilesOfAGlobIntoTheOutputDirectory() throws Exception {
+        Path data = Files.createDirectories(directory.resolve("data"));
+        AnagramFixtures.write(data.resolve("first.txt"), AnagramFixtures.randomWords(21, 2_000), true);
+        AnagramFixtures.write(data.resolve("second.txt"), AnagramFixtures.randomWords(22, 2_000), true);
+        Path summary = directory.resolve("summary.json");
+
+        int exitCode = run("--output-dir=" + directory.resolve("output"), "--temp-dir=" + directory.resolve("temp"),
+                "--summary=" + summary, data + "/*.txt");
+
+        assertEquals(0, exitCode);
+        assertTrue(Files.isRegularFile(directory.resolve("output").resolve("first.txt")));
+        assertTrue(Files.isRegularFile(directory.resolve("output").resolve("second.txt")));
+        String json = Files.readString(summary);
+        assertEquals(2, json.split("\"status\":\"ok\"", -1).length - 1, json);
+    }
+
+    @Test
+    void failsWithTheExitCodeOfTheProblem() throws Exception {
+        assertEquals(2, run("--unknown", "input.txt"));
+        assertEquals(2, run("--top=-1", "input.txt"));
+        assertEquals(2, run("--output-dir=" + directory, directory.resolve("none") + "/*.txt"));
+        assertEquals(1, run("--output-dir=" + directory.resolve("output"), "--temp-dir=" + directory.resolve("temp"),
+                "--summary=" + directory.resolve("summary.json"), directory.resolve("missing.txt").toString()));
+    }
+
+    private static int run(String... args) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        try (PrintStream outStream = new PrintStream(out, true, StandardCharsets.UTF_8);
+             PrintStream errStream = new PrintStream(err, true, StandardCharsets.UTF_8)) {
+            return new CommandLineRunner(outStream, errStream).run(args);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.oguzcam.searchanagram.index;
+
+import com.oguzcam.searchanagram.AnagramFixtures;
+import com.oguzcam.searchanagram.AnagramFixtures.CollectingSink;
+import com.oguzcam.searchanagram.algorithm.AnagramAlgorithmConfiguration;
+import com.oguzcam.searchanagram.algorithm.WordSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Index built, appended to and queried, and regenerated into the groups of all its words
+ *
+ * @author Oguz Cam
+ */
+class AnagramIndexTest {
+    // Few lines per bucket, so the index has many buckets
+    private static final AnagramAlgorithmConfiguration CONFIGURATION = new AnagramAlgorithmConfiguration(500, 2);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void regeneratesTheGroupsOfTheBuiltWords() throws Exception {
+        List<String> lines = AnagramFixtures.randomWords(1, 5_000);
+        AnagramIndex index = build(lines);
+
+        assertTrue(index.getBucketCount() > 1);
+        assertEquals(lines.size(), index.getNextOrdinal());
+        assertEquals(AnagramFixtures.expectedGroups(lines), regenerate(index));
+    }
+
+    @Test
+    void appendsWordsIntoTheLogsOfTheirBuckets() throws Exception {
+        List<String> lines = new ArrayList<>(AnagramFixtures.randomWords(2, 5_000));
+        lines.add("hello");
+        AnagramIndex index = build(lines);
+        List<String> appended = Arrays.asList("olleh", "hello", "zyx", "", "xyz");
+
+        CollectingSink changed = new CollectingSink();
+        append(AnagramIndex.open(index.getDirectory()), appended, changed);
+        assertEquals(Arrays.asList(Arrays.asList("hello", "olleh"), Arrays.asList("xyz", "zyx")), changed.getGroups());
+        assertTrue(listFiles().stream().anyMatch(name -> name.endsWith(".log")), listFiles().toString());
+
+        // Queried with the logs applied, before they are compacted
+        AnagramIndex reopened = AnagramIndex.open(index.getDirectory());
+        assertEquals(lines.size() + appended.size(), reopened.getNextOrdinal());
+        AnagramQueryService service = AnagramQueryService.load(reopened);
+        assertEquals(Collections.singletonList("olleh"), service.lookup("hello"));
+        assertEquals(Collections.singletonList("xyz"), service.lookup("zyx"));
+
+        List<String> all = new ArrayList<>(lines);
+        all.addAll(appended);
+        assertEquals(AnagramFixtures.expectedGroups(all), regenerate(reopened));
+        assertFalse(listFiles().stream().anyMatch(name -> name.endsWith(".log")), listFiles().toString());
+        assertEquals(AnagramFixtures.expectedGroups(all), regenerate(AnagramIndex.open(index.getDirectory())));
+    }
+
+    @Test
+    void compactsABucketWhoseLogOutgrowsIt() throws Exception {
+        List<String> lines = AnagramFixtures.randomWords(3, 2_000);
+        List<String> appended = AnagramFixtures.randomWords(4, 20_000);
+        AnagramIndex index = build(lines);
+
+        append(index, appended, new CollectingSink());
+        assertFalse(listFiles().stream().anyMatch(name -> name.endsWith(".log")), listFiles().toString());
+        assertEquals(index.getBucketCount(), listFiles().stream().filter(name -> name.endsWith(".idx")).count());
+
+        List<String> all = new ArrayList<>(lines);
+        all.addAll(appended);
+        assertEquals(AnagramFixtures.expectedGroups(all), regenerate(AnagramIndex.open(index.getDirectory())));
+    }
+
+    @Test
+    void ignoresTheLogRecordsOfAnAppendWhichHasNotBeenCommitted() throws Exception {
+        List<String> lines = AnagramFixtures.randomWords(5, 5_000);
+        AnagramIndex index = build(lines);
+        append(index, Collections.singletonList("abcdef"), new CollectingSink());
+
+        // An append which stopped before replacing the meta file
+        for (String name : listFiles()) {
+            if (name.endsWith(".log")) {
+                Files.write(directory.resolve("index").resolve(name), new byte[]{0, 0, 0, 0, 0, 0, 0, 1, 0},
+                        StandardOpenOption.APPEND);
+            }
+        }
+        List<String> all = new ArrayList<>(lines);
+        all.add("abcdef");
+        AnagramIndex reopened = AnagramIndex.open(index.getDirectory());
+        assertEquals(AnagramFixtures.expectedGroups(all).size(), loadGroupCount(reopened));
+
+        append(reopened, Collections.singletonList("fedcba"), new CollectingSink());
+        all.add("fedcba");
+        assertEquals(AnagramFixtures.expectedGroups(all), regenerate(AnagramIndex.open(index.getDirectory())));
+    }
+
+    @Test
+    void removesTheBucketsOfTheReplacedIndex() throws Exception {
+        AnagramIndex large = build(AnagramFixtures.randomWords(6, 10_000));
+        List<String> lines = AnagramFixtures.randomWords(7, 1_000);
+        AnagramIndex small = AnagramIndex.build(write(lines), directory.resolve("index"),
+                new AnagramAlgorithmConfiguration(100_000, 2));
+
+        assertTrue(large.getBucketCount() > small.getBucketCount());
+        assertEquals(Arrays.asList("bucket0.2.idx", "index.meta"), listFiles());
+        assertEquals(AnagramFixtures.expectedGroups(lines), regenerate(AnagramIndex.open(small.getDirectory())));
+    }
+
+    private AnagramIndex build(List<String> lines) throws Exception {
+        return AnagramIndex.build(write(lines), directory.resolve("index"), CONFIGURATION);
+    }
+
+    private Path write(List<String> lines) throws IOException {
+        Path input = Files.createTempFile(directory, "words", ".txt");
+        AnagramFixtures.write(input, lines, true);
+        return input;
+    }
+
+    private static void append(AnagramIndex index, List<String> words, CollectingSink changed) throws IOException {
+        try (WordSource source = WordSource.of(words.iterator())) {
+            index.append(source, changed);
+        }
+    }
+
+    private static List<List<String>> regenerate(AnagramIndex index) throws IOException {
+        CollectingSink sink = new CollectingSink();
+        index.regenerate(sink);
+        return sink.getGroups();
+    }
+
+    private static int loadGroupCount(AnagramIndex index) throws IOException {
+        final int[] groups = new int[1];
+        for (int bucket = 0; bucket < index.getBucketCount(); bucket++) {
+            index.readBucket(bucket, new AnagramIndex.GroupVisitor() {
+                @Override
+                public void visit(long ordinal, List<String> words) {
+                    if (words.size() > 1) {
+                        groups[0]++;
+                    }
+                }
+            });
+        }
+        return groups[0];
+    }
+
+    private List<String> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve("index"))) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.oguzcam.searchanagram.index;
+
+import com.oguzcam.searchanagram.AnagramFixtures;
+import com.oguzcam.searchanagram.algorithm.SignaturePolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Anagrams looked up in the compact table of the groups of an output file
+ *
+ * @author Oguz Cam
+ */
+class AnagramQueryServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void looksUpTheAnagramsOfEveryGroupedWord() throws Exception {
+        // Enough groups to grow and rehash the table
+        List<String> lines = AnagramFixtures.randomWords(8, 20_000);
+        List<List<String>> groups = AnagramFixtures.expectedGroups(lines);
+        AnagramQueryService service = AnagramQueryService.load(writeGroups(groups));
+
+        assertEquals(groups.size(), service.size());
+        for (List<String> group : groups) {
+            for (String word : group) {
+                List<String> anagrams = new ArrayList<>(group);
+                anagrams.remove(word);
+                assertEquals(anagrams, service.lookup(word));
+            }
+        }
+        assertEquals(Collections.emptyList(), service.lookup("\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9"));
+    }
+
+    @Test
+    void looksUpByThePolicyOfTheGroups() throws Exception {
+        List<List<String>> groups = Arrays.asList(Arrays.asList("Listen", "silent"),
+                Arrays.asList("R\u00e9sum\u00e9", "mesure"), Arrays.asList("how", "who"));
+        AnagramQueryService service = AnagramQueryService.load(writeGroups(groups),
+                SignaturePolicy.ACCENT_INSENSITIVE);
+
+        assertEquals(3, service.size());
+        assertEquals(Arrays.asList("Listen", "silent"), service.lookup("Enlist"));
+        assertEquals(Collections.singletonList("R\u00e9sum\u00e9"), service.lookup("mesure"));
+        assertEquals(Collections.singletonList("who"), service.lookup("how"));
+        assertEquals(Collections.emptyList(), service.lookup("tree"));
+    }
+
+    private Path writeGroups(List<List<String>> groups) throws Exception {
+        List<String> lines = new ArrayList<>(groups.size());
+        for (List<String> group : groups) {
+            lines.add(String.join(" ", group));
+        }
+        Path groupedFile = directory.resolve("groups.txt");
+        AnagramFixtures.write(groupedFile, lines, true);
+        return groupedFile;
+    }
+}
@@ -0,0 +1,67 @@
+package com.oguzcam.searchanagram.index;
+
+import com.oguzcam.searchanagram.AnagramFixtures;
+import com.oguzcam.searchanagram.algorithm.SignaturePolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Words of a rack and phrases of a phrase, searched directly and through the request protocol
+ *
+ * @author Oguz Cam
+ */
+class AnagramSearchEngineTest {
+    private static final String LS = System.lineSeparator();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsTheWordsOfARackTheLongestFirst() throws Exception {
+        AnagramSearchEngine engine = load("tea", "eat", "ate", "at", "ta", "a", "tee", "cat");
+
+        assertEquals(Arrays.asList("ate", "eat", "tea", "at", "ta", "a"), engine.findWords("teax", 100));
+        assertEquals(Arrays.asList("ate", "eat"), engine.findWords("eta", 2));
+        assertTrue(engine.findWords("", 100).isEmpty());
+    }
+
+    @Test
+    void limitsTheWordsOfAPhraseByTheRequest() throws Exception {
+        AnagramSearchEngine engine = load("a", "b", "c", "d", "ab", "cd");
+
+        assertEquals(Arrays.asList(Arrays.asList("ab", "cd")), engine.findPhrases("abcd", 2, 100));
+        assertEquals(3, engine.findPhrases("abcd", 3, 100).size());
+        assertEquals(4, engine.findPhrases("abcd", 4, 100).size());
+        // A count above the letters of the phrase finds the phrases of single letters
+        assertEquals(4, engine.findPhrases("abcd", 1_000_000, 100).size());
+
+        assertEquals("ab cd" + LS + LS, serve(engine, "phrases --words=2 abcd"));
+        assertEquals(3 + 1, serve(engine, "phrases abcd").split(LS, -1).length - 1);
+        assertEquals(4 + 1, serve(engine, "phrases --words=4 abcd").split(LS, -1).length - 1);
+        assertEquals("The count of --words must be a positive number" + LS + LS,
+                serve(engine, "phrases --words=none abcd"));
+    }
+
+    private AnagramSearchEngine load(String... words) throws Exception {
+        Path wordFile = directory.resolve("words.txt");
+        List<String> lines = Arrays.asList(words);
+        AnagramFixtures.write(wordFile, lines, true);
+        return AnagramSearchEngine.load(wordFile, SignaturePolicy.EXACT);
+    }
+
+    private static String serve(AnagramSearchEngine engine, String request) throws Exception {
+        StringWriter writer = new StringWriter();
+        engine.serve(new BufferedReader(new StringReader(request + "\n")), writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package com.oguzcam.searchanagram.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Counters, histograms, the listener and the JMX view of the metrics of a run
+ *
+ * @author Oguz Cam
+ */
+class AnagramMetricsTest {
+
+    @Test
+    void followsTheTemporaryBytesAndTheirHighWaterMark() {
+        AnagramMetrics metrics = new AnagramMetrics();
+        metrics.chunkWritten(100);
+        metrics.chunkWritten(50);
+        metrics.chunkConquered(100, System.nanoTime());
+        metrics.runWritten(80, 3);
+        metrics.chunkConquered(50, System.nanoTime());
+        metrics.runsMerged(80, System.nanoTime());
+
+        assertEquals(0, metrics.getTempBytes());
+        assertEquals(150, metrics.getTempBytesHighWaterMark());
+        assertEquals(2, metrics.getChunksWritten());
+        assertEquals(2, metrics.getChunksConquered());
+        assertEquals(150, metrics.getChunkBytesWritten());
+        assertEquals(150, metrics.getChunkBytesRead());
+        assertEquals(80, metrics.getRunBytesWritten());
+        assertEquals(80, metrics.getRunBytesRead());
+    }
+
+    @Test
+    void recordsPercentilesInPowerOfTwoBuckets() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean());
+        // 50 is in the bucket of the values from 32 to 63
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(99));
+        assertTrue(histogram.toJson().startsWith("{\"count\":100,\"mean\":50.5,"), histogram.toJson());
+    }
+
+    @Test
+    void tellsTheListenerAndShowsThroughJmxWhileTheRunLasts() throws Exception {
+        List<String> events = new ArrayList<>();
+        AnagramMetrics[] completed = new AnagramMetrics[1];
+        AnagramMetrics metrics = new AnagramMetrics(new AnagramMetricsListener() {
+            @Override
+            public void stageStarted(Stage stage) {
+                events.add("started " + stage);
+            }
+
+            @Override
+            public void stageCompleted(Stage stage, long milliseconds) {
+                events.add("completed " + stage);
+            }
+
+            @Override
+            public void progress(Stage stage, long done, long total) {
+                events.add(stage + " " + done + "/" + total);
+            }
+
+            @Override
+            public void runCompleted(AnagramMetrics runMetrics) {
+                completed[0] = runMetrics;
+            }
+        });
+        // An input size no other run of the tests has, to tell its bean
+        metrics.setInputBytes(1_000_003);
+        metrics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("com.oguzcam.searchanagram:type=AnagramMetrics,*");
+        Set<ObjectName> names = server.queryNames(pattern, null);
+        assertTrue(names.stream().anyMatch(name -> isRegistered(server, name, metrics)), names.toString());
+
+        metrics.stageStarted(Stage.DIVIDE);
+        metrics.rangeDivided(400, 40, System.nanoTime());
+        metrics.stageCompleted(Stage.DIVIDE);
+        metrics.groupEmitted(Arrays.asList("how", "who"));
+        metrics.runCompleted();
+
+        assertEquals(Arrays.asList("started DIVIDE", "DIVIDE 400/1000003", "completed DIVIDE"), events);
+        assertSame(metrics, completed[0]);
+        assertEquals(40, metrics.getLinesRead());
+        assertEquals(1, metrics.getGroups());
+        assertEquals(2, metrics.getGroupedWords());
+        assertTrue(server.queryNames(pattern, null).stream().noneMatch(name -> isRegistered(server, name, metrics)));
+        assertTrue(metrics.toJson().contains("\"linesRead\":40,"), metrics.toJson());
+    }
+
+    /**
+     * @return True if the bean of the name shows the input bytes of the metrics
+     */
+    private static boolean isRegistered(MBeanServer server, ObjectName name, AnagramMetrics metrics) {
+        try {
+            return server.getAttribute(name, "InputBytes").equals(metrics.getInputBytes());
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+}